@@ -6,11 +6,11 @@ import edu.tuberlin.dima.textmining.jedi.core.features.detector.TextAnnotationPi
 import edu.tuberlin.dima.textmining.jedi.core.index.FreebaseTypeService;
 import edu.tuberlin.dima.textmining.jedi.core.index.PatternIndexer;
 import edu.tuberlin.dima.textmining.jedi.core.model.RelationDetectionResults;
-import org.apache.uima.jcas.tcas.Annotation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 
@@ -38,15 +38,15 @@ public class JediService {
 		this.extractor = extractor;
 
 		// setup services
-		FreebaseTypeService freebaseTypeService = new FreebaseTypeService();
-		PatternIndexer patternIndexer = new PatternIndexer();
+		FreebaseTypeService freebaseTypeService = FreebaseTypeService.shared();
+		PatternIndexer patternIndexer = new PatternIndexer(true, new File("freepal-index"), freebaseTypeService);
 
 		this.service = new DetectorService(annotationPipeline, freebaseTypeService, patternIndexer);
 		this.service.init();
 
 	}
 
-	public RelationDetectionResults<Annotation> detectRelations(String text) throws InterruptedException, SAXException, ExecutionException, IOException {
+	public RelationDetectionResults<String> detectRelations(String text) throws InterruptedException, SAXException, ExecutionException, IOException {
 
 		return service.detectRelations(text, extractor, true);
 	}
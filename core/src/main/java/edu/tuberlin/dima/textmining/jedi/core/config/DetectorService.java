@@ -2,14 +2,19 @@ package edu.tuberlin.dima.textmining.jedi.core.config;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.*;
 import com.google.common.io.Resources;
 import com.google.common.primitives.Floats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import edu.tuberlin.dima.textmining.jedi.core.features.ConstraintSolver;
+import edu.tuberlin.dima.textmining.jedi.core.features.detector.AbstractPipeline;
 import edu.tuberlin.dima.textmining.jedi.core.features.detector.AbstractShortestPathFeatureExtractor;
+import edu.tuberlin.dima.textmining.jedi.core.features.detector.AnnotationLayer;
+import edu.tuberlin.dima.textmining.jedi.core.features.detector.AnnotationPipelinePool;
 import edu.tuberlin.dima.textmining.jedi.core.features.detector.DetectorType;
 import edu.tuberlin.dima.textmining.jedi.core.features.detector.TextAnnotationPipeline;
 import edu.tuberlin.dima.textmining.jedi.core.index.FreebaseTypeService;
@@ -31,11 +36,21 @@ import org.xml.sax.SAXException;
 
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * The Relation detection service.
@@ -63,7 +78,7 @@ public class DetectorService {
 	@Qualifier("AllPairsFeatureDetector")
 	AbstractShortestPathFeatureExtractor allPairsFeatureDetector;
 
-	TextAnnotationPipeline annotationPipeline;
+	AnnotationPipelinePool annotationPipelinePool;
 
 	PatternIndexer featureIndexer;
 
@@ -75,20 +90,55 @@ public class DetectorService {
 	@Value("${detector.blacklistEntitiesFile}")
 	URL blacklistEntitiesFile;
 
+	@Value("${detector.warmup:FALSE}")
+	boolean warmup;
+
 	private Set<String> blacklistEntities;
 
+	private volatile boolean warmedUp = false;
+
+	private final ThreadPoolExecutor parseExecutor;
+	private final ThreadPoolExecutor extractExecutor;
+	private final ThreadPoolExecutor lookupExecutor;
+	private final ThreadPoolExecutor solveExecutor;
+	private final ThreadPoolExecutor assembleExecutor;
+
 	private static final Logger LOG = LoggerFactory.getLogger(DetectorService.class);
 
 	@Autowired
-	public DetectorService(TextAnnotationPipeline annotationPipeline,
+	public DetectorService(AnnotationPipelinePool annotationPipelinePool,
 						   FreebaseTypeService freebaseTypeService,
 						   PatternIndexer featureIndexer) throws Exception {
 
-		this.annotationPipeline = annotationPipeline;
+		this.annotationPipelinePool = annotationPipelinePool;
 		this.featureIndexer = featureIndexer;
 		this.freebaseTypeService = freebaseTypeService;
 		this.blacklistEntitiesFile = Resources.getResource("freepal/non-entities.txt");
 		this.maxEntropy = 4;
+
+		// batch stages, the pool size bounds the documents in flight
+		final int documents = annotationPipelinePool.size();
+		final int cores = Runtime.getRuntime().availableProcessors();
+		this.parseExecutor = stageExecutor("parse", documents, documents);
+		this.extractExecutor = stageExecutor("extract", documents, documents);
+		this.lookupExecutor = stageExecutor("lookup", cores, documents);
+		this.solveExecutor = stageExecutor("solve", cores, documents);
+		this.assembleExecutor = stageExecutor("assemble", documents, documents);
+	}
+
+	/**
+	 * Creates a service that annotates one document at a time using the given pipeline.
+	 *
+	 * @param annotationPipeline  the parser to use
+	 * @param freebaseTypeService the type service
+	 * @param featureIndexer      the pattern index
+	 * @throws Exception in case of error
+	 */
+	public DetectorService(TextAnnotationPipeline annotationPipeline,
+						   FreebaseTypeService freebaseTypeService,
+						   PatternIndexer featureIndexer) throws Exception {
+		this(new AnnotationPipelinePool(Collections.singletonList(annotationPipeline), AnnotationPipelinePool.DEFAULT_MAX_WAIT_SECONDS, TimeUnit.SECONDS),
+			freebaseTypeService, featureIndexer);
 	}
 
 	@PostConstruct
@@ -101,6 +151,49 @@ public class DetectorService {
 			blacklistEntities.add(nonEntity.trim());
 		}
 
+		if (warmup) {
+			// load the models of all detectors in the background, see isReady()
+			Thread warmupThread = new Thread(() -> {
+				try {
+					warmup();
+				} catch (Exception e) {
+					LOG.error("Warmup failed", e);
+				}
+			}, "detector-warmup");
+			warmupThread.setDaemon(true);
+			warmupThread.start();
+		} else {
+			warmedUp = true;
+		}
+
+	}
+
+	/**
+	 * Warms up all pipelines with the annotation layers of the configured detectors.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws ExecutionException   if the warmup failed
+	 */
+	public void warmup() throws InterruptedException, ExecutionException {
+		Set<Set<AnnotationLayer>> layerSets = Sets.newLinkedHashSet();
+		for (AbstractShortestPathFeatureExtractor detector : Arrays.asList(namedEntityFeatureDetector, nounFeatureDetector,
+			NounPhraseFeatureDetector, nounPRFeatureDetector, allPairsFeatureDetector)) {
+			if (detector != null) {
+				layerSets.add(detector.getRequiredLayers());
+			}
+		}
+
+		Stopwatch stopwatch = new Stopwatch().start();
+		annotationPipelinePool.warmup(layerSets);
+		warmedUp = true;
+		LOG.info("Warmed up {} pipelines in {}", annotationPipelinePool.size(), stopwatch.stop());
+	}
+
+	/**
+	 * @return true once all models are loaded and requests are served without initialization delays
+	 */
+	public boolean isReady() {
+		return warmedUp && annotationPipelinePool.isReady();
 	}
 
 	private List<DetectedRelation<Annotation>> detectUsingMaximumLikelihood(List<PatternSearchResult<Annotation>> patternSearchResults) throws ExecutionException, InterruptedException {
@@ -265,57 +358,247 @@ public class DetectorService {
 		return "/" + StringUtils.lowerCase(StringUtils.substringAfterLast(namedEntity.getClass().getName(), "."), Locale.ENGLISH);
 	}
 
-	public RelationDetectionResults<Annotation> detectRelations(String text,
-																AbstractShortestPathFeatureExtractor detector,
-																boolean resolveConstraints) throws IOException, SAXException, InterruptedException, ExecutionException {
+	/**
+	 * Detects the relations in a text.
+	 * <p>
+	 * The text is annotated by one of the pooled pipelines, so this method can be called concurrently.
+	 * The annotations of the JCas are only valid while the pipeline is held, so the results are transformed into
+	 * their string representation before the pipeline is handed to the next request.
+	 *
+	 * @param text               the text to analyze
+	 * @param detector           the feature extractor
+	 * @param resolveConstraints use the constraint solver instead of the maximum likelihood assignment
+	 * @return the detected relations, null if the text could not be processed
+	 */
+	public RelationDetectionResults<String> detectRelations(String text,
+															AbstractShortestPathFeatureExtractor detector,
+															boolean resolveConstraints) throws IOException, SAXException, InterruptedException, ExecutionException {
+
+		final AbstractPipeline annotationPipeline = annotationPipelinePool.borrow();
+		try {
+			DetectionState state = parse(text, annotationPipeline, detector);
+			extract(state, detector, true);
+			lookup(state, true);
+			solve(state, resolveConstraints);
+			RelationDetectionResults<Annotation> detected = assemble(state, detector);
+			return detected != null ? detected.generateStringVersion() : null;
+		} finally {
+			annotationPipelinePool.release(annotationPipeline);
+		}
+	}
 
-		Stopwatch stopwatch = new Stopwatch().start();
-		final JCas jCas = annotationPipeline.exec(Lists.newArrayList(text, "id"));
-		LOG.info("Parsed Text in {}", stopwatch.stop().toString());
+	public RelationDetectionResults<String> detectRelations(String text, DetectorType detectorType, boolean resolveConstraints) throws IOException, SAXException, InterruptedException, ExecutionException {
 
-		final Map<String, AnnovisTransformerWriter.Annovis> annovisMap = AnnovisTransformerWriter.generateFormat(jCas);
+		return detectRelations(text, getDetector(detectorType), resolveConstraints);
 
-		List<FoundFeature<Annotation>> tuples = detector.exec(jCas);
+	}
 
-		LOG.info("Generated Features using " + detector);
+	/**
+	 * Detects the relations in an already annotated document, e.g. read by a
+	 * {@link edu.tuberlin.dima.textmining.jedi.core.util.ParsedCorpusReader}, skipping the annotation pipeline.
+	 * The document needs to contain the layers of {@link AbstractShortestPathFeatureExtractor#getRequiredLayers()}.
+	 *
+	 * @param jCas               the annotated document
+	 * @param detectorType       the feature extractor to use
+	 * @param resolveConstraints use the constraint solver instead of the maximum likelihood assignment
+	 * @return the detected relations, pointing into the given JCas
+	 */
+	public RelationDetectionResults<Annotation> detectRelations(JCas jCas, DetectorType detectorType, boolean resolveConstraints) throws IOException, InterruptedException, ExecutionException {
+
+		final AbstractShortestPathFeatureExtractor detector = getDetector(detectorType);
+		DetectionState state = new DetectionState(jCas);
+		extract(state, detector, true);
+		lookup(state, false);
+		solve(state, resolveConstraints);
+		return assemble(state, detector);
+	}
 
-		if (tuples == null) return null;
+	/**
+	 * Detects the relations in a batch of texts.
+	 * <p>
+	 * Every stage (parsing, feature extraction, index lookup, solving and assembling) runs on its own bounded executor,
+	 * so the parsing of one document overlaps with the lookups and the solving of the documents before it.
+	 * The number of documents in flight is limited by the size of the pipeline pool, as every document keeps its pipeline
+	 * until its results have been transformed into their string representation.
+	 *
+	 * @param texts              the texts to analyze
+	 * @param detectorType       the feature extractor to use
+	 * @param resolveConstraints use the constraint solver instead of the maximum likelihood assignment
+	 * <p>
+	 * Once the detection failed for a text, no further texts are started. The documents in flight are completed
+	 * before the first failure is thrown, so none of them still uses a pipeline.
+	 *
+	 * @return the detected relations in the order of the input, null for texts that could not be processed
+	 * @throws ExecutionException   if the detection failed for a text
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public List<RelationDetectionResults<String>> detectRelations(Iterable<String> texts, DetectorType detectorType, final boolean resolveConstraints) throws InterruptedException, ExecutionException {
+
+		final AbstractShortestPathFeatureExtractor detector = getDetector(detectorType);
+		Preconditions.checkState(!parseExecutor.isShutdown(), "The detector service has been shut down");
+
+		List<CompletableFuture<RelationDetectionResults<String>>> results = Lists.newArrayList();
+		final AtomicBoolean failed = new AtomicBoolean();
 
-		// now filter
-		Iterator<FoundFeature<Annotation>> iterator = tuples.iterator();
-		while (iterator.hasNext()) {
-			FoundFeature<Annotation> foundFeature = iterator.next();
-			if (blacklistEntities.contains(foundFeature.getEntity1().getCoveredText()) ||
-				blacklistEntities.contains(foundFeature.getEntity2().getCoveredText())) {
-				iterator.remove();
+		for (final String text : texts) {
+			// waits until one of the documents in flight has been assembled, however long the documents take
+			final AbstractPipeline annotationPipeline = annotationPipelinePool.take();
+			if (failed.get()) {
+				annotationPipelinePool.release(annotationPipeline);
+				break;
 			}
+
+			results.add(CompletableFuture.completedFuture(text)
+				.thenApplyAsync(unchecked((String input) -> parse(input, annotationPipeline, detector)), parseExecutor)
+				.thenApplyAsync(unchecked((DetectionState state) -> extract(state, detector, false)), extractExecutor)
+				.thenApplyAsync(unchecked((DetectionState state) -> lookup(state, false)), lookupExecutor)
+				.thenApplyAsync(unchecked((DetectionState state) -> solve(state, resolveConstraints)), solveExecutor)
+				.thenApplyAsync(unchecked((DetectionState state) -> {
+					// the annotations are only valid as long as we hold the pipeline
+					RelationDetectionResults<Annotation> detected = assemble(state, detector);
+					return detected != null ? detected.generateStringVersion() : null;
+				}), assembleExecutor)
+				.whenComplete((result, throwable) -> {
+					annotationPipelinePool.release(annotationPipeline);
+					if (throwable != null) {
+						failed.set(true);
+					}
+				}));
 		}
 
+		List<RelationDetectionResults<String>> detected = Lists.newArrayListWithCapacity(results.size());
+		ExecutionException failure = null;
+		for (CompletableFuture<RelationDetectionResults<String>> result : results) {
+			try {
+				detected.add(result.get());
+			} catch (ExecutionException e) {
+				// wait for the remaining documents before reporting
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
 
-		PrintCollector printCollector = new PrintCollector(false);
+		return detected;
+	}
 
-		// search in parallel
+	private AbstractShortestPathFeatureExtractor getDetector(DetectorType detectorType) {
+		switch (detectorType) {
+			case NAMED_ENTITIES:
+				return namedEntityFeatureDetector;
+			case NOUNS:
+				return nounFeatureDetector;
+			case NOUN_PHRASE:
+				return NounPhraseFeatureDetector;
+			case NOUN_PR:
+				return nounPRFeatureDetector;
+			case ALLPairs:
+				return allPairsFeatureDetector;
+			default:
+				throw new IllegalArgumentException(detectorType.name() + " not set");
+		}
+	}
+
+	private DetectionState parse(String text, AbstractPipeline annotationPipeline, AbstractShortestPathFeatureExtractor detector) throws IOException {
+
+		Stopwatch stopwatch = new Stopwatch().start();
+		// only run the annotators the detector needs
+		final JCas jCas = annotationPipeline.exec(Lists.newArrayList(text, "id"), detector.getRequiredLayers());
+		LOG.info("Parsed Text in {}", stopwatch.stop().toString());
+
+		return new DetectionState(jCas);
+	}
+
+	/**
+	 * The entities of the document are found and linked here, their paths are extracted sentence by sentence when the
+	 * stream is consumed, see {@link AbstractShortestPathFeatureExtractor#stream}.
+	 *
+	 * @param streaming extract while the lookup consumes the features, otherwise the features are extracted here
+	 */
+	private DetectionState extract(DetectionState state, AbstractShortestPathFeatureExtractor detector, boolean streaming) throws IOException {
+
+		state.annovisMap = AnnovisTransformerWriter.generateFormat(state.jCas);
+
+		Stream<FoundFeature<Annotation>> tuples = detector.stream(state.jCas)
+			.filter(foundFeature -> !blacklistEntities.contains(foundFeature.getEntity1().getCoveredText()) &&
+				!blacklistEntities.contains(foundFeature.getEntity2().getCoveredText()));
+
+		if (streaming) {
+			// the features are extracted sentence by sentence while the lookup consumes them
+			state.tuples = tuples;
+			LOG.info("Streaming Features using " + detector);
+		} else {
+			// the staged batch extracts on its own executor, the lookup executor only searches
+			state.tuples = tuples.collect(Collectors.toList()).stream();
+			LOG.info("Generated Features using " + detector);
+		}
 
-		List<PatternSearchResult<Annotation>> candidates = tuples.parallelStream()
-			.map(foundFeature -> new PatternSearchResult<>(foundFeature, featureIndexer.search(foundFeature.getPattern(), maxEntropy)))
+		return state;
+	}
+
+	/**
+	 * @param parallel search the patterns of the document in parallel, batches are already processed concurrently
+	 */
+	private DetectionState lookup(DetectionState state, boolean parallel) {
+
+		if (state.tuples == null) return state;
+
+		Stream<PatternSearchResult<Annotation>> searched;
+		if (parallel) {
+			// the extracted sentences are merged on this thread, the merge reads the JCas
+			// the searches of a sentence run while the next sentences are extracted
+			// the lookup executor runs the blocking searches, and this thread once its queue is full
+			List<CompletableFuture<PatternSearchResult<Annotation>>> searches = state.tuples
+				.map(foundFeature -> CompletableFuture.supplyAsync(() -> search(foundFeature), lookupExecutor))
+				.collect(Collectors.toList());
+			searched = searches.stream().map(CompletableFuture::join);
+		} else {
+			searched = state.tuples.map(this::search);
+		}
+
+		state.candidates = searched
 			.filter(input -> input != null && input.getPatternSearchResult() != null && input.getPatternSearchResult().getCounts() > 0)
 			.collect(Collectors.toList());
+		state.tuples = null;
+
+		return state;
+	}
+
+	private PatternSearchResult<Annotation> search(FoundFeature<Annotation> foundFeature) {
+		return new PatternSearchResult<>(foundFeature, featureIndexer.search(foundFeature.getPattern(), foundFeature.getPatternHash(), maxEntropy));
+	}
+
+	private DetectionState solve(DetectionState state, boolean resolveConstraints) throws ExecutionException, InterruptedException {
+
+		if (state.candidates == null) return state;
 
 		// what about equality ?
 		// [X] be [Y] [1-attr-2,1-nsubj-0] .. this indicated a missing link ?
 
 		// we now have for each entity pair a list of potential pattern
-		List<DetectedRelation<Annotation>> detectedRelationList;
 		if (resolveConstraints) {
 			LOG.info("Solving constraints ...");
-			List<DetectedRelation<Annotation>> detectedRelations = detectUsingConstraintSolving(candidates, printCollector);
-			detectedRelationList = consistencyCheck(detectedRelations);
+			List<DetectedRelation<Annotation>> detectedRelations = detectUsingConstraintSolving(state.candidates, state.printCollector);
+			state.detectedRelations = consistencyCheck(detectedRelations);
 		} else {
 			LOG.info("Using maximum likelihood approach ...");
-			List<DetectedRelation<Annotation>> detectedRelations = detectUsingMaximumLikelihood(candidates);
-			detectedRelationList = consistencyCheck(detectedRelations);
+			List<DetectedRelation<Annotation>> detectedRelations = detectUsingMaximumLikelihood(state.candidates);
+			state.detectedRelations = consistencyCheck(detectedRelations);
 		}
 
+		return state;
+	}
+
+	private RelationDetectionResults<Annotation> assemble(DetectionState state, AbstractShortestPathFeatureExtractor detector) {
+
+		if (state.candidates == null) return null;
+
+		final Map<String, AnnovisTransformerWriter.Annovis> annovisMap = state.annovisMap;
+		final List<DetectedRelation<Annotation>> detectedRelationList = state.detectedRelations;
+
 		// add solution to annovis
 		final AnnovisTransformerWriter.Annovis entities = new AnnovisTransformerWriter.Annovis(AnnovisTransformerWriter.AnnovisType.span);
 		final AnnovisTransformerWriter.Annovis relations = new AnnovisTransformerWriter.Annovis(AnnovisTransformerWriter.AnnovisType.link);
@@ -340,35 +623,59 @@ public class DetectorService {
 		annovisMap.put("layer-1", entities);
 		annovisMap.put("layer-2", relations);
 
-		return new RelationDetectionResults<>(candidates, detectedRelationList, detector.getName(), Graph.transform(detectedRelationList), printCollector.getOutput(), annovisMap);
+		return new RelationDetectionResults<>(state.candidates, detectedRelationList, detector.getName(), Graph.transform(detectedRelationList), state.printCollector.getOutput(), annovisMap);
 	}
 
-	public RelationDetectionResults<Annotation> detectRelations(String text, DetectorType detectorType, boolean resolveConstraints) throws IOException, SAXException, InterruptedException, ExecutionException {
+	@PreDestroy
+	public void shutdown() {
+		for (ExecutorService executor : Arrays.asList(parseExecutor, extractExecutor, lookupExecutor, solveExecutor, assembleExecutor)) {
+			executor.shutdown();
+		}
+	}
 
-		AbstractShortestPathFeatureExtractor detector;
+	/**
+	 * Creates the executor of a batch stage.
+	 * Tasks that do not fit into the queue are run by the submitting stage, which throttles the stages before.
+	 */
+	private static ThreadPoolExecutor stageExecutor(String stage, int threads, int queueSize) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(queueSize),
+			new ThreadFactoryBuilder().setNameFormat("detector-" + stage + "-%d").setDaemon(true).build(),
+			new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
 
-		switch (detectorType) {
-			case NAMED_ENTITIES:
-				detector = namedEntityFeatureDetector;
-				break;
-			case NOUNS:
-				detector = nounFeatureDetector;
-				break;
-			case NOUN_PHRASE:
-				detector = NounPhraseFeatureDetector;
-				break;
-			case NOUN_PR:
-				detector = nounPRFeatureDetector;
-				break;
-			case ALLPairs:
-				detector = allPairsFeatureDetector;
-				break;
-			default:
-				throw new IllegalArgumentException(detectorType.name() + " not set");
-		}
+	private interface Stage<I, O> {
+		O apply(I input) throws Exception;
+	}
 
-		return detectRelations(text, detector, resolveConstraints);
+	private static <I, O> Function<I, O> unchecked(Stage<I, O> stage) {
+		return input -> {
+			try {
+				return stage.apply(input);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		};
+	}
 
+	/**
+	 * The intermediate results of a document passing through the detection stages.
+	 */
+	private static class DetectionState {
+		final JCas jCas;
+		final PrintCollector printCollector = new PrintCollector(false);
+		Map<String, AnnovisTransformerWriter.Annovis> annovisMap;
+		Stream<FoundFeature<Annotation>> tuples;
+		List<PatternSearchResult<Annotation>> candidates;
+		List<DetectedRelation<Annotation>> detectedRelations;
+
+		DetectionState(JCas jCas) {
+			this.jCas = jCas;
+		}
 	}
 
 	/**
@@ -28,18 +28,44 @@ import java.util.Arrays;
 @Configuration
 public class JediConfig {
 
-	@Value("${detector.warmup:FALSE}")
-	public boolean warmup;
-
-	@Bean
-	public TextAnnotationPipeline createDetectorPipeline() throws Throwable {
-		return new TextAnnotationPipeline("-annotateCoreferences -lang en" + (warmup ? " -warmup" : ""));
+	/**
+	 * Number of annotation pipelines, values &lt; 1 use one per available core.
+	 */
+	@Value("${detector.pipelines:0}")
+	public int pipelines;
+
+	/**
+	 * Optional corpus parsed during the warmup, one document per line.
+	 */
+	@Value("${detector.warmupCorpus:}")
+	public String warmupCorpus;
+
+	/**
+	 * Optional directory of the persistent parse cache.
+	 */
+	@Value("${detector.parseCache:}")
+	public String parseCache;
+
+	/**
+	 * Extract the sentences of a document in parallel, see {@link AbstractShortestPathFeatureExtractor#stream}.
+	 */
+	@Value("${detector.parallel:true}")
+	public boolean parallel;
+
+	/**
+	 * The pipelines are warmed up in parallel by the {@link DetectorService}.
+	 */
+	@Bean(destroyMethod = "destroy")
+	public AnnotationPipelinePool createDetectorPipelinePool() throws Throwable {
+		return AnnotationPipelinePool.withOptions("-annotateCoreferences -lang en"
+			+ (warmupCorpus.isEmpty() ? "" : " -warmupCorpus " + warmupCorpus)
+			+ (parseCache.isEmpty() ? "" : " -parseCache " + parseCache), pipelines);
 	}
 
 	@Bean(name = "NamedEntityFeatureDetector")
 	public AbstractShortestPathFeatureExtractor createNamedEntityFeatureDetector() throws UIMAException {
 
-		return new FindShortestPathFeatureExtractor("-lemmatize -resolveCoreferences -collapseMentions -selectionType " + NamedEntity.class.getName(),
+		return new FindShortestPathFeatureExtractor("-lemmatize -resolveCoreferences -collapseMentions -selectionType " + NamedEntity.class.getName() + parallel(),
 					DetectorType.NAMED_ENTITIES);
 	}
 
@@ -47,29 +73,33 @@ public class JediConfig {
 	public AbstractShortestPathFeatureExtractor createNounFeatureDetector() throws UIMAException {
 
 		return new FindShortestPathFeatureExtractor(
-			"-lemmatize -resolveCoreferences  -pickupSimilar -selectionType " + N.class.getName() + " -additionalSelectionType " + PR.class.getName(),
+			"-lemmatize -resolveCoreferences  -pickupSimilar -selectionType " + N.class.getName() + " -additionalSelectionType " + PR.class.getName() + parallel(),
 			DetectorType.NOUNS);
 	}
 
 	@Bean(name = "NounPhraseFeatureDetector")
 	public AbstractShortestPathFeatureExtractor createNounPhraseFeatureDetector() throws UIMAException {
 
-		return new FindShortestPathFeatureExtractor("-lemmatize -resolveCoreferences -collapseMentions -pickupSimilar -selectionType " + NP.class.getName(),
+		return new FindShortestPathFeatureExtractor("-lemmatize -resolveCoreferences -collapseMentions -pickupSimilar -selectionType " + NP.class.getName() + parallel(),
 			DetectorType.NOUN_PHRASE);
 	}
 
 	@Bean(name = "NounPRFeatureDetector")
 	public AbstractShortestPathFeatureExtractor createNounPRFeatureDetector() throws UIMAException {
-		return new FindShortestPathFeatureExtractor("-lemmatize -collapseMentions -selectionType " + N.class.getName(),
+		return new FindShortestPathFeatureExtractor("-lemmatize -collapseMentions -selectionType " + N.class.getName() + parallel(),
 			DetectorType.NOUN_PR);
 	}
 
 	@Bean(name = "AllPairsFeatureDetector")
 	public AbstractShortestPathFeatureExtractor createAllPairDetector() throws UIMAException {
-		return new AllPairsShortestPathFeatureExtractor("-lemmatize -resolveCoreferences -selectionType " + N.class.getName() + " -additionalSelectionType " + ADJ.class.getName(),
+		return new AllPairsShortestPathFeatureExtractor("-lemmatize -resolveCoreferences -selectionType " + N.class.getName() + " -additionalSelectionType " + ADJ.class.getName() + parallel(),
 			DetectorType.ALLPairs);
 	}
 
+	private String parallel() {
+		return parallel ? " -parallel" : "";
+	}
+
 	@Bean
 	public JCas createJCas() throws UIMAException {
 		return JCasFactory.createJCas();
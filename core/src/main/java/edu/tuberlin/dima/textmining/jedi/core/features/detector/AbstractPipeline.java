@@ -4,12 +4,17 @@ import com.beust.jcommander.Parameter;
 import com.codahale.metrics.CsvReporter;
 import com.google.common.base.Charsets;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import edu.tuberlin.dima.textmining.jedi.core.util.CompressionHelper;
 import edu.tuberlin.dima.textmining.jedi.core.util.MetricsAggregator;
+import edu.tuberlin.dima.textmining.jedi.core.util.ParseCache;
 import edu.tuberlin.dima.textmining.jedi.core.util.UIMAXMLConverterHelper;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.LineIterator;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -17,15 +22,24 @@ import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.ProcessTrace;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Pipeline to annotate text.
+ * <p>
+ * An instance owns a single analysis engine and JCas and therefore annotates one document at a time.
+ * Use an {@link AnnotationPipelinePool} to process documents concurrently.
  */
 public class AbstractPipeline {
 	private static final Log LOG = LogFactory
@@ -53,6 +67,22 @@ public class AbstractPipeline {
 		description = "Parses a small sentence, to load the resources", required = false)
 	private boolean warmup = false;
 
+	@Parameter(names = {"-warmupCorpus"},
+		description = "File or classpath resource (optionally gzipped) with one document per line, parsed during the warmup", required = false)
+	private String warmupCorpus;
+
+	@Parameter(names = {"-parseCache"},
+		description = "Directory to keep the annotated documents in, disabled if not set", required = false)
+	private String parseCacheDirectory;
+
+	@Parameter(names = {"-parseCacheSize"},
+		description = "Maximal size of the parse cache in MB", required = false)
+	private long parseCacheSize = 1024;
+
+	private ParseCache parseCache;
+
+	private volatile boolean ready = false;
+
 	Collection<Token> tokens;
 	Collection<Sentence> sentences;
 
@@ -75,6 +105,9 @@ public class AbstractPipeline {
 
 			this.converterHelper = new UIMAXMLConverterHelper(prettyPrintXML);
 			this.jCas = JCasFactory.createJCas();
+			if (parseCacheDirectory != null) {
+				this.parseCache = ParseCache.forDirectory(new File(parseCacheDirectory), parseCacheSize * 1024 * 1024);
+			}
 			if (enableReporting) {
 
 				MetricsAggregator.reporter.start(10, TimeUnit.MINUTES);
@@ -86,13 +119,21 @@ public class AbstractPipeline {
 			}
 
 			if (warmup) {
-				warmup();
+				warmup(Collections.singleton(AnnotationLayer.all()));
 			}
+			ready = true;
 		}
 	}
 
 	/**
-	 * Execute the pipeline.
+	 * @return true once the pipeline is initialized and, if requested, warmed up
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Execute the pipeline producing all annotation layers.
 	 *
 	 * @param input 2 tuple, first the string, second an id, which can be null
 	 * @return the parsed JCas object
@@ -100,6 +141,19 @@ public class AbstractPipeline {
 	 */
 	public JCas exec(
 		List<String> input) throws IOException {
+		return exec(input, AnnotationLayer.all());
+	}
+
+	/**
+	 * Execute the pipeline.
+	 *
+	 * @param input  2 tuple, first the string, second an id, which can be null
+	 * @param layers the annotation layers needed by the caller
+	 * @return the parsed JCas object
+	 * @throws IOException in case of error
+	 */
+	public JCas exec(
+		List<String> input, Set<AnnotationLayer> layers) throws IOException {
 		tokens = null;
 		sentences = null;
 
@@ -124,7 +178,7 @@ public class AbstractPipeline {
 			Stopwatch serialize = new Stopwatch();
 
 			complete.start();
-			runPipeline(StringUtils.trim(document), documentID);
+			runPipeline(StringUtils.trim(document), documentID, layers);
 			serialize.start();
 
 			//String result = converterHelper.serialize( jCas );
@@ -155,11 +209,16 @@ public class AbstractPipeline {
 
 	/**
 	 * Triggers the pipeline, without reporting measurements - loads all classes = warmup.
+	 * <p>
+	 * Runs a sample text and the warmup corpus through the engines of the given layer sets,
+	 * so that all models are loaded and the hot paths are compiled before the first request.
+	 *
+	 * @param layerSets the layer sets that will be requested
+	 * @throws Exception in case of error
 	 */
-	private void warmup() {
+	public void warmup(Collection<Set<AnnotationLayer>> layerSets) throws Exception {
 
 		LOG.info("Triggering a warmup, with language set to " + defaultLanguage);
-		jCas.reset();
 
 		String sampleText;
 		switch (defaultLanguage) {
@@ -173,25 +232,94 @@ public class AbstractPipeline {
 				sampleText = "This is a not so super important sample warmup text to trigger the loading";
 		}
 
+		List<String> documents = Lists.newArrayList(sampleText);
+		documents.addAll(readWarmupCorpus());
+
+		for (Set<AnnotationLayer> layers : layerSets) {
+			Stopwatch stopwatch = new Stopwatch().start();
+			AnalysisEngine engine = getAnalysisEngine(layers);
 
-		jCas.setDocumentText(sampleText);
-		jCas.setDocumentLanguage(defaultLanguage);
+			for (String document : documents) {
+				jCas.reset();
+				jCas.setDocumentText(UIMAXMLConverterHelper.sanitizeString(document));
+				setLanguage();
+				engine.process(jCas);
+			}
+			LOG.info("Warmed up " + layers + " with " + documents.size() + " documents in " + stopwatch.stop());
+		}
 
 		// clear jcas again
 		jCas.reset();
 		LOG.info("Done with warmup test ...");
 	}
 
+	private List<String> readWarmupCorpus() throws IOException {
+		List<String> documents = Lists.newArrayList();
+		if (warmupCorpus == null) {
+			return documents;
+		}
+
+		File file = new File(warmupCorpus);
+		InputStream input = file.exists() ? new FileInputStream(file) : Resources.getResource(warmupCorpus).openStream();
+		try {
+			LineIterator lines = IOUtils.lineIterator(CompressionHelper.getDecompressionStream(input), Charsets.UTF_8);
+			while (lines.hasNext()) {
+				String line = StringUtils.trim(lines.nextLine());
+				if (StringUtils.isNotEmpty(line)) {
+					documents.add(line);
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(input);
+		}
+		return documents;
+	}
+
+	/**
+	 * Selects the analysis engine producing the requested layers.
+	 * The default implementation always uses the engine passed to {@link #init}.
+	 *
+	 * @param layers the requested annotation layers
+	 * @return the engine to use
+	 * @throws ResourceInitializationException if the engine can not be created
+	 */
+	protected AnalysisEngine getAnalysisEngine(Set<AnnotationLayer> layers) throws ResourceInitializationException {
+		return analysisEngine;
+	}
+
+	/**
+	 * Describes the configuration producing the given layers, documents annotated by pipelines
+	 * with the same fingerprint share their parse cache entries.
+	 *
+	 * @param layers the requested annotation layers
+	 * @return the fingerprint
+	 */
+	protected String getFingerprint(Set<AnnotationLayer> layers) {
+		return getClass().getName() + ":" + defaultLanguage + ":" + AnnotationLayer.withRequirements(layers);
+	}
+
 	/**
 	 * Performs the named entity recognition with the specified model.
 	 *
 	 * @param document   the document to be ne-tagged
 	 * @param documentID the document id - or null
+	 * @param layers     the requested annotation layers
 	 * @throws Exception in case of error
 	 */
 	private void
 	runPipeline(
-		String document, String documentID) throws Exception {
+		String document, String documentID, Set<AnnotationLayer> layers) throws Exception {
+
+		String cacheKey = null;
+		if (renderNewCas && parseCache != null) {
+			cacheKey = ParseCache.key(getFingerprint(layers), UIMAXMLConverterHelper.sanitizeString(document));
+			if (parseCache.restore(cacheKey, jCas)) {
+				restoredFromCache(documentID);
+				return;
+			}
+		}
+
+		AnalysisEngine analysisEngine = getAnalysisEngine(layers);
 
 		Stopwatch languageTimer = new Stopwatch();
 		if (renderNewCas) {
@@ -211,13 +339,20 @@ public class AbstractPipeline {
 
 		} else {
 
-			jCas = converterHelper.deserialize(
-				IOUtils.toInputStream(
-					document, Charsets.UTF_8.name()), jCas);
+			// XCAS or Base64 encoded binary CAS
+			jCas = converterHelper.deserialize(document, jCas);
 		}
 
 		ProcessTrace process = analysisEngine.process(jCas);
 
+		if (cacheKey != null) {
+			try {
+				parseCache.store(cacheKey, jCas);
+			} catch (IOException e) {
+				LOG.warn("Can't cache the parsed document", e);
+			}
+		}
+
 		if (enableReporting) {
 
 			sentences = JCasUtil.select(
@@ -236,6 +371,24 @@ public class AbstractPipeline {
 
 	}
 
+	/**
+	 * Points the restored document to the requested id and collects the statistics.
+	 */
+	private void restoredFromCache(String documentID) {
+		if (documentID != null) {
+			Collection<DocumentMetaData> metaData = JCasUtil.select(jCas, DocumentMetaData.class);
+			DocumentMetaData documentMetaData = metaData.isEmpty() ? DocumentMetaData.create(jCas) : metaData.iterator().next();
+			documentMetaData.setDocumentUri(documentID);
+		}
+
+		if (enableReporting) {
+			sentences = JCasUtil.select(
+				jCas, Sentence.class);
+			tokens = JCasUtil.select(
+				jCas, Token.class);
+		}
+	}
+
 	public void setLanguage()
 		throws IllegalArgumentException {
 		if (defaultLanguage != null) {
@@ -251,4 +404,13 @@ public class AbstractPipeline {
 			MetricsAggregator.reporter.report();
 		}
 	}
+
+	/**
+	 * Releases the analysis engine and the shared resources it holds.
+	 */
+	public void destroy() {
+		if (analysisEngine != null) {
+			analysisEngine.destroy();
+		}
+	}
 }
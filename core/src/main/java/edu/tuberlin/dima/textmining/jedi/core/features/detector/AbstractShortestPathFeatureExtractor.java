@@ -3,11 +3,11 @@ package edu.tuberlin.dima.textmining.jedi.core.features.detector;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
-import com.google.common.base.Optional;
-import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.O;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
@@ -17,16 +17,19 @@ import org.apache.uima.UIMAException;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
-import org.jgrapht.UndirectedGraph;
-import org.jgrapht.graph.SimpleGraph;
 
-import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  */
@@ -50,11 +53,12 @@ public abstract class AbstractShortestPathFeatureExtractor {
     @Parameter(names = {"-resolveCoreferences"}, description = "Resolve Co-references for a given token", required = false)
     private boolean resolveCoreferences = false;
 
-    private JCas jCas;
-
 	@Parameter(names = {"-name"}, description = "The name of the extractor", required = false)
 	private String name;
 
+    @Parameter(names = {"-parallel"}, description = "Extract the sentences of a document in parallel", required = false)
+    private boolean parallel = false;
+
     public AbstractShortestPathFeatureExtractor(String options) throws UIMAException {
 
         JCommander jCommander = new JCommander(this);
@@ -80,38 +84,234 @@ public abstract class AbstractShortestPathFeatureExtractor {
             return null;
         }
 
-        setjCas(xmlDocument);
+        if (parallel) {
+            return stream(xmlDocument).collect(Collectors.toList());
+        }
 
         // choose a feature extraction strategy
         // 1. insert dependencies into a graph and extract shortest path
-        UndirectedGraph<Token, DependencyEdge> graph = makeDependencyGraph();
-        if (graph == null || graph.vertexSet().size() == 0) {
+        CompactDependencyGraph graph = makeDependencyGraph(xmlDocument);
+        if (graph == null || graph.size() == 0) {
             return Lists.newArrayList();
         }
 
-        List<FoundFeature<Annotation>> shortestPaths = getShortestPaths(graph);
+        // all per document state lives in the context, the extractor itself is shared between threads
+        ExtractionContext context = new ExtractionContext(xmlDocument, graph);
 
-        return postProcess(shortestPaths, graph);
+        return extract(newExtraction(), Collections.singletonList(context), false).collect(Collectors.toList());
     }
 
     /**
-     * Implementation of the pattern finder.
+     * Extracts the features sentence by sentence, so consumers can work on the features of a sentence while the
+     * following ones are not extracted yet.
+     * <p>
+     * Coreferences and collapsed mentions link entities of different sentences, so the entities of all sentences are
+     * found and linked up front. The paths of a sentence are extracted when the stream reaches it, on the thread
+     * consuming the stream, or ahead of it on a pool shared by all parallel extractors. Either way the features are
+     * the same as those {@link #exec(JCas)} extracts from the whole document at once.
      *
-     * @param graph input graph
-     * @return list of features
+     * @param xmlDocument the document
+     * @return the features in the order of their sentences
      */
-    abstract public List<FoundFeature<Annotation>> getShortestPaths(final UndirectedGraph<Token, DependencyEdge> graph);
+    public final Stream<FoundFeature<Annotation>> stream(final JCas xmlDocument) throws IOException {
+        if (xmlDocument == null) {
+            return Stream.empty();
+        }
+
+        // the contexts read their annotations here, the pool only sees what they read
+        List<ExtractionContext> contexts = Lists.newArrayList();
+        for (Sentence sentence : JCasUtil.select(xmlDocument, Sentence.class)) {
+            ExtractionContext context = sentenceContext(xmlDocument, sentence);
+            if (context != null) {
+                contexts.add(context);
+            }
+        }
+        return extract(newExtraction(), contexts, parallel);
+    }
+
+    /**
+     * @return the context limited to the sentence, null if the sentence has nothing to extract
+     */
+    private ExtractionContext sentenceContext(JCas xmlDocument, Sentence sentence) {
+        List<Dependency> dependencies = Lists.newArrayList();
+        addDependencies(sentence, dependencies);
+        // the entities of a sentence without dependencies can still be linked to the other sentences
+        if (dependencies.isEmpty() && !resolveCoreferences) {
+            return null;
+        }
+
+        return new ExtractionContext(xmlDocument, new CompactDependencyGraph(dependencies), sentence, scopeTypes());
+    }
+
+    /**
+     * @return the annotation types the extractors select within a sentence
+     */
+    private List<Class<? extends Annotation>> scopeTypes() {
+        List<Class<? extends Annotation>> types = Lists.newArrayList(Token.class, POS.class, Sentence.class, selectionType);
+        if (additionalSelectionType != null) {
+            types.add(additionalSelectionType);
+        }
+        return types;
+    }
+
+    /**
+     * Extracts the sentences of parallel extractors, shared by all of them and limited to the number of cores.
+     */
+    private static final class ExtractionPool {
+        static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    private <P> Stream<FoundFeature<Annotation>> extract(final DocumentExtraction<P> extraction, List<ExtractionContext> contexts, boolean parallel) {
+        extraction.contexts = contexts;
+
+        // 1. find the entities of every part
+        List<P> parts = Lists.newArrayList();
+        if (parallel) {
+            List<ForkJoinTask<P>> found = Lists.newArrayList();
+            for (ExtractionContext context : contexts) {
+                found.add(ExtractionPool.POOL.submit(() -> extraction.find(context)));
+            }
+            for (ForkJoinTask<P> task : found) {
+                parts.add(task.join());
+            }
+        } else {
+            for (ExtractionContext context : contexts) {
+                parts.add(extraction.find(context));
+            }
+        }
+
+        // 2. link the entities across the parts, this creates their annotations
+        extraction.link(parts);
+
+        // 3. extract the paths of every part
+        Stream<List<FoundFeature<Annotation>>> extracted;
+        if (parallel) {
+            List<ForkJoinTask<List<FoundFeature<Annotation>>>> tasks = Lists.newArrayList();
+            for (P part : parts) {
+                tasks.add(ExtractionPool.POOL.submit(() -> extraction.getShortestPaths(part)));
+            }
+            extracted = tasks.stream().map(ForkJoinTask::join);
+        } else {
+            extracted = parts.stream().map(extraction::getShortestPaths);
+        }
+
+        // 4. merge the parts in order, as in a sequential run
+        final DocumentStep step = newDocumentStep();
+        return extracted.flatMap(features -> {
+            extraction.substitute(features);
+            step.apply(features);
+            return postProcess(features, extraction).stream();
+        });
+    }
+
+    /**
+     * The extraction of a single document, created by {@link #newExtraction()}.
+     * <p>
+     * A document is extracted in parts, its sentences or the whole document at once, each with its own
+     * {@link ExtractionContext}. The entities and the paths of the parts may be extracted on other threads, so
+     * {@link #find} and {@link #getShortestPaths} only use their context and neither create annotations nor read the
+     * CAS. The other methods run on the calling thread: {@link #link} sees the entities of all parts before any paths
+     * are extracted and creates their annotations, {@link #substitute} sees the features of the parts in order.
+     *
+     * @param <P> what is found in a part
+     */
+    protected abstract class DocumentExtraction<P> {
+
+        private List<ExtractionContext> contexts;
+
+        /**
+         * @return the entities of the part
+         */
+        protected abstract P find(ExtractionContext context);
+
+        /**
+         * Links the entities of the document, like coreferences, and creates their annotations.
+         *
+         * @param parts the parts in text order
+         */
+        protected abstract void link(List<P> parts);
+
+        /**
+         * Implementation of the pattern finder.
+         *
+         * @return the features of the part
+         */
+        protected abstract List<FoundFeature<Annotation>> getShortestPaths(P part);
+
+        /**
+         * Replaces the entities of the features by those they were linked to, the default does nothing.
+         */
+        protected void substitute(List<FoundFeature<Annotation>> features) {
+        }
+
+        /**
+         * @return the index of the part containing the annotation, -1 if there is none
+         */
+        protected final int indexOf(Annotation annotation) {
+            // the parts are the whole document, or sentences in text order
+            int low = 0;
+            int high = contexts.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                Annotation scope = contexts.get(middle).getScope();
+                if (scope == null) {
+                    return middle;
+                }
+                if (annotation.getBegin() < scope.getBegin()) {
+                    high = middle - 1;
+                } else if (annotation.getBegin() >= scope.getEnd()) {
+                    low = middle + 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the context of the part containing the annotation, null if there is none
+         */
+        protected final ExtractionContext contextOf(Annotation annotation) {
+            int index = indexOf(annotation);
+            return index < 0 ? null : contexts.get(index);
+        }
+    }
+
+    /**
+     * @return the extraction of a single document
+     */
+    protected abstract DocumentExtraction<?> newExtraction();
+
+    /**
+     * A step over the features of a document that may reach beyond a sentence, applied before the post processing.
+     * <p>
+     * A step sees all features of a document at once, or the features of every sentence in document order when
+     * the sentences are extracted on their own. Both have to give the same result.
+     */
+    protected interface DocumentStep {
+
+        void apply(List<FoundFeature<Annotation>> features);
+    }
+
+    /**
+     * @return a step for a single document, the default does nothing
+     */
+    protected DocumentStep newDocumentStep() {
+        return features -> {
+        };
+    }
 
     /**
      * Inserts all dependencies of an annotated sentence into a graph
      * with governor and dependent as vertices and dependency type as
      * edge.
      *
-     * @return UndirectedGraph of dependencies
+     * @param jCas the document
+     * @return the graph of dependencies
      */
-    public UndirectedGraph<Token, DependencyEdge> makeDependencyGraph() {
+    public CompactDependencyGraph makeDependencyGraph(JCas jCas) {
 
-        UndirectedGraph<Token, DependencyEdge> graph = new SimpleGraph<>(DependencyEdge.class);
+        List<Dependency> dependencies = Lists.newArrayList();
 
         // we can limit the graph a bit
         // as we are only interested in (selectionType) like NERs, we can skip sentences which have < 2 NERs.
@@ -119,35 +319,26 @@ public abstract class AbstractShortestPathFeatureExtractor {
         Iterator<Sentence> sentences = JCasUtil.iterator(jCas, Sentence.class);
 
         while (sentences.hasNext()) {
-            Sentence sentence = sentences.next();
-            // check the # of NERs
-            List<? extends Annotation> entities = JCasUtil.selectCovered(selectionType, sentence);
-            List<? extends Annotation> additional = Lists.newArrayList();
-            if(additionalSelectionType != null) {
-                additional = JCasUtil.selectCovered(additionalSelectionType, sentence);
-            }
-            if ((entities.size() + additional.size()) < 2 && !resolveCoreferences) {
-                continue;
-            }
-
-            // here we are interested in the deps
-            List<Dependency> dependencies = JCasUtil.selectCovered(Dependency.class, sentence);
-
-            for (Dependency dependency : dependencies) {
-                Token governor = dependency.getGovernor();
-                Token dependent = dependency.getDependent();
-                String dependencyType = dependency.getDependencyType();
+            addDependencies(sentences.next(), dependencies);
+        }
 
-                graph.addVertex(governor);
-                graph.addVertex(dependent);
-                graph.addEdge(governor, dependent, new DependencyEdge(governor, dependent, dependencyType));
 
-            }
+        return new CompactDependencyGraph(dependencies);
+    }
 
+    private void addDependencies(Sentence sentence, List<Dependency> dependencies) {
+        // check the # of NERs
+        List<? extends Annotation> entities = JCasUtil.selectCovered(selectionType, sentence);
+        List<? extends Annotation> additional = Lists.newArrayList();
+        if(additionalSelectionType != null) {
+            additional = JCasUtil.selectCovered(additionalSelectionType, sentence);
+        }
+        if ((entities.size() + additional.size()) < 2 && !resolveCoreferences) {
+            return;
         }
 
-
-        return graph;
+        // here we are interested in the deps
+        dependencies.addAll(JCasUtil.selectCovered(Dependency.class, sentence));
     }
 
 	public void setName(String name) {
@@ -158,14 +349,6 @@ public abstract class AbstractShortestPathFeatureExtractor {
 		return name;
 	}
 
-	public JCas getjCas() {
-        return jCas;
-    }
-
-    public void setjCas(JCas jCas) {
-        this.jCas = jCas;
-    }
-
     public Class<? extends Annotation> getSelectionType() {
         return selectionType;
     }
@@ -190,161 +373,110 @@ public abstract class AbstractShortestPathFeatureExtractor {
         return collapseMentions;
     }
 
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * The annotation layers the extractor works on, the pipeline can skip all others.
+     *
+     * @return the required layers
+     */
+    public Set<AnnotationLayer> getRequiredLayers() {
+        Set<AnnotationLayer> layers = EnumSet.of(AnnotationLayer.DEPENDENCIES);
+        if (isNamedEntity(selectionType) || isNamedEntity(additionalSelectionType)) {
+            layers.add(AnnotationLayer.NAMED_ENTITIES);
+        }
+        if (resolveCoreferences) {
+            layers.add(AnnotationLayer.COREFERENCE);
+        }
+        return AnnotationLayer.withRequirements(layers);
+    }
+
+    private static boolean isNamedEntity(Class<? extends Annotation> type) {
+        return type != null && NamedEntity.class.isAssignableFrom(type);
+    }
+
     /**
      * Extract the head of a named entity
      * - simplified head finding rule
      * - the token that is the
      *
      * @param namedEntity the named entity whose head to get
-     * @param graph       the dependency graph
+     * @param context     the extraction context
      * @return String head      the head of the named entity
      */
-    public Token getNamedEntityHead(Annotation namedEntity, UndirectedGraph<Token, DependencyEdge> graph) {
-
-
-        // get all tokens
-        List<Token> tokens = JCasUtil.selectCovered(Token.class, namedEntity);
-        if (tokens.size() == 0) {
-            tokens = JCasUtil.selectCovering(Token.class, namedEntity);
-        }
-
-        Token candidate = null;
-
-        for (Token token : tokens) {
-
-            if (!graph.containsVertex(token)) {
-                continue;
-            }
-
-            int inDegree = 0;
-            int outDegree = 0;
-
-            for (DependencyEdge dependencyEdge : graph.edgesOf(token)) {
-                // check if source of edge is in the token list
-                if (!tokens.contains(dependencyEdge.getFrom())) {
-                    // this links comes from "outside" so assume we are the head
-                    return token;
-                }
-
-                Token edgeSource = graph.getEdgeSource(dependencyEdge);
-                Token edgeTarget = graph.getEdgeTarget(dependencyEdge);
-
-                if(edgeSource.equals(token)) {
-                    outDegree++;
-                } else if(edgeTarget.equals(token)) {
-                    inDegree++;
-                }
-            }
-            // if ..
-            if(inDegree == 0 && outDegree > 0) {
-                candidate = token;
-            }
-
-        }
-
-        if(candidate == null) {
-            return Iterables.getFirst(tokens, null);
-        }
-
-        return candidate;
-
+    public Token getNamedEntityHead(Annotation namedEntity, ExtractionContext context) {
+        // computed once per span and document
+        return context.getEntities().get(namedEntity).getHead();
     }
 
-    protected final List<FoundFeature<Annotation>> postProcess(List<FoundFeature<Annotation>> dataBag, UndirectedGraph<Token, DependencyEdge> graph) {
+    protected final List<FoundFeature<Annotation>> postProcess(List<FoundFeature<Annotation>> dataBag, DocumentExtraction<?> extraction) {
 
         List<FoundFeature<Annotation>> additional = Lists.newArrayList();
         final Iterator<FoundFeature<Annotation>> postProcessor = dataBag.iterator();
         while (postProcessor.hasNext()) {
             final FoundFeature<Annotation> annotationFoundFeature = postProcessor.next();
-            String pattern = annotationFoundFeature.getPattern();
-
-            Matcher ageOfMatcher1 = ageOf.matcher(annotationFoundFeature.getEntity1().getCoveredText());
-            Matcher ageOfMatcher2 = ageOf.matcher(annotationFoundFeature.getEntity2().getCoveredText());
-
-            if(ageOfMatcher1.find() || ageOfMatcher2.find()) {
-                postProcessor.remove();
-                continue;
-            }
-
-            if(renamer.matcher(pattern).find()) {
-                annotationFoundFeature.setPattern("[X] die in [Y] [1-nsubj-0,1-prep-2,2-pobj-3]");
-                continue;
-            }
-            if(pattern.equals("[X] die on [Y] [1-nsubj-0,1-prep-2,2-pobj-3]")) {
-                postProcessor.remove();
-                continue;
-            } else if(pattern.equals("die on [X] in [Y] [0-prep-1,0-prep-3,1-pobj-2,3-pobj-4]")){
+            final PostProcessRules.Outcome outcome = postProcessRules.apply(annotationFoundFeature);
+            if (outcome == PostProcessRules.Outcome.DROP) {
                 postProcessor.remove();
                 continue;
-            }
-
-            final Matcher conjunctionAtTheEnd = this.conjunctionAtTheEnd.matcher(pattern);
-            if (conjunctionAtTheEnd.find()) {
-				pattern = conjunctionAtTheEnd.replaceFirst("[X]$1 [Y] [$3]");
-				annotationFoundFeature.setPattern(pattern);
-            }
-
-            if(dateMatcher.matcher(annotationFoundFeature.getEntity1().getCoveredText()).find()
-                    ||
-                    dateMatcher.matcher(annotationFoundFeature.getEntity2().getCoveredText()).find()) {
-                postProcessor.remove();
+            } else if (outcome == PostProcessRules.Outcome.REWRITTEN) {
                 continue;
             }
 
-            Matcher deathMatcher = deathMatcherPattern.matcher(pattern);
-            if(deathMatcher.find()) {
-                annotationFoundFeature.setPattern(deathMatcher.replaceFirst("[X] die $3 [Y] [1-nsubj-0,1-prep-2,2-pobj-3]"));
+            // the parataxis rules need the dependency graph, so they are checked here
+            // look at the pattern first, the tokens are only needed if it matches
+            final String pattern = annotationFoundFeature.getPattern();
+            final Matcher parataxisCheck1 = parataxisCheckPattern.matcher(pattern);
+            final boolean parataxis1 = parataxisCheck1.find();
+            if (!parataxis1 && !parataxisCheckPattern2.matcher(pattern).find()) {
                 continue;
             }
 
-            final Matcher matcher = birthMatcher.matcher(pattern);
-            if(matcher.find()) {
-                // [1-nsubjpass-0,1-prep-2,2-pobj-3]
-                annotationFoundFeature.setPattern(matcher.replaceFirst("[X] bear $3 [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]"));
+            // the post processing runs on the calling thread, the entities may belong to different sentences
+            final ExtractionContext context = extraction.contextOf(annotationFoundFeature.getEntity1());
+            if (context == null) {
                 continue;
             }
+            final CompactDependencyGraph graph = context.getGraph();
 
             // check if right next to Token is a bracket (parataxis) (problem in parsing)
             final Token nextToFirst = Iterables.getFirst(JCasUtil.selectFollowing(Token.class, annotationFoundFeature.getEntity1(), 1), null);
 
             if(nextToFirst != null && nextToFirst.getPos().getClass().equals(O.class)) {
-                final Token namedEntityHead = getNamedEntityHead(annotationFoundFeature.getEntity1(), graph);
-                if(namedEntityHead == null) {
+                final int namedEntityHead = context.getEntities().get(annotationFoundFeature.getEntity1()).getHeadVertex();
+                if(namedEntityHead < 0) {
                     continue;
                 }
-                final Set<DependencyEdge> dependencyEdges = graph.edgesOf(namedEntityHead);
 
-                Optional<DependencyEdge> dependencyEdge = Iterables.tryFind(dependencyEdges, new Predicate<DependencyEdge>() {
-                    @Override
-                    public boolean apply(@Nullable DependencyEdge input) {
-                        return input.getFrom().equals(namedEntityHead) && ("parataxis".equals(input.getDependency()) || ("punct".equals(input.getDependency()) && "(".equals(input.getTo().getCoveredText())));
+                int dependencyEdge = -1;
+                for (int i = graph.edgeStart(namedEntityHead); i < graph.edgeEnd(namedEntityHead) && dependencyEdge < 0; i++) {
+                    int edge = graph.edgeAt(i);
+                    if (graph.governor(edge) == namedEntityHead && ("parataxis".equals(graph.label(edge)) || ("punct".equals(graph.label(edge)) && "(".equals(graph.token(graph.dependent(edge)).getCoveredText())))) {
+                        dependencyEdge = edge;
                     }
-                });
+                }
 
-                if(dependencyEdge.isPresent()) {
+                if(dependencyEdge >= 0) {
                     // also make sure that that the dependency is not that far from the (
                     // should find the closing ) and check that it's in there ? -- but could be mixed with coref .. heuristic here
                     List<Token> inBetween = JCasUtil.selectBetween(Token.class, annotationFoundFeature.getEntity1(), annotationFoundFeature.getEntity2());
                     if(inBetween.size() > 6) {
                         continue;
                     }
-                    final Matcher parataxisCheck1 = parataxisCheckPattern.matcher(pattern);
-                    if(parataxisCheck1.find()) {
-                        String to = isLemmatize() ? dependencyEdge.get().getTo().getLemma().getValue():dependencyEdge.get().getTo().getCoveredText();
+                    if(parataxis1) {
+                        String to = isLemmatize() ? graph.lemma(graph.dependent(dependencyEdge)):graph.token(graph.dependent(dependencyEdge)).getCoveredText();
                         annotationFoundFeature.setPattern(parataxisCheck1.replaceFirst("[X] "+ to +" $2 [Y] [1-nsubj-0,1-prep-2,2-pobj-3]"));
-                        continue;
-                    }
-                    Matcher parataxisCheck2 = parataxisCheckPattern2.matcher(pattern);
-                    if(parataxisCheck2.find()) {
+                    } else {
                         // if we are linked directly via the "parataxtis" take the match
                         // otherwise look one token further
                         List<Token> following = JCasUtil.selectFollowing(Token.class, annotationFoundFeature.getEntity1(), 2);
                         // this assumes that there will always be as the first token after entity 1 a ( ...
-                        //int pos = "parataxis".equals(dependencyEdge.get().dependency) ? 1 : 1;
+                        //int pos = "parataxis".equals(graph.label(dependencyEdge)) ? 1 : 1;
                         Token afterBracket = following.get(1);
                         String to = isLemmatize() ? afterBracket.getLemma().getValue():afterBracket.getCoveredText();
                         annotationFoundFeature.setPattern("[X] "+ to +" in [Y] [1-npadvmod-0,1-prep-2,2-pobj-3]");
-                        continue;
                     }
                 }
 
@@ -363,18 +495,11 @@ public abstract class AbstractShortestPathFeatureExtractor {
 
     }
 
-    Pattern renamer = Pattern.compile("\\[X\\] die at age of \\d+ in \\[Y\\] \\[1-nsubj-0,1-prep-2,2-pobj-3,3-prep-4,4-pobj-5,5-prep-6,6-pobj-7\\]");
-    Pattern dateMatcher = Pattern.compile("(?i)^(-|\"|“|”|'|„|“|‘|’|«|»|‹|›|¡|¿||who|[\\d]+|year| years|post|life|age|January|February|March|April|May|June|July|August|September|October|November|December)$");
-    Pattern deathMatcherPattern = Pattern.compile("\\[X] die(,|\\s|on )+(January|February|March|April|May|June|July|August|September|October|November|December){0,1}[\\s\\d]* (in|at) \\[Y\\] \\[.*\\d+-prep-\\d+,\\d+-pobj-\\d+\\]");
-    static Pattern birthMatcher = Pattern.compile("\\[X\\] bear(,|\\s|on |in )+(January|February|March|April|May|June|July|August|September|October|November|December){0,1}[,\\s\\d]* (to|in|at) \\[Y\\] \\[(\\d)*-(\\w*)-(\\d)*.*\\d+-(\\w+)-\\d+\\]");
+    private final PostProcessRules postProcessRules = PostProcessRules.defaults();
 
     // Günter Theodor Netzer (born 14 September 1944 in Mönchengladbach)
     // Parataxis check
     static Pattern parataxisCheckPattern = Pattern.compile("\\[X\\] (January|February|March|April|May|June|July|August|September|October|November|December){0,1}[\\s\\d]* (in|at) \\[Y\\] \\[0-appos-1,1-prep-2,2-pobj-3\\]");
     static Pattern parataxisCheckPattern2 = Pattern.compile("\\[X\\] \\[Y\\] \\[0-appos-1\\]");
 
-    Pattern conjunctionAtTheEnd = Pattern.compile("\\[X\\]([\\w\\s]+) (\\w+) \\[Y\\] \\[(.*),\\d+-conj-\\d+\\]");
-
-    Pattern ageOf = Pattern.compile("age(d)*( of)* \\d+");
-
 }
@@ -1,7 +1,5 @@
 package edu.tuberlin.dima.textmining.jedi.core.features.detector;
 
-import com.google.common.base.Function;
-import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.*;
@@ -16,12 +14,9 @@ import edu.tuberlin.dima.textmining.jedi.core.model.FoundFeature;
 import org.apache.commons.lang.StringUtils;
 import org.apache.uima.UIMAException;
 import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.jgrapht.DirectedGraph;
-import org.jgrapht.GraphPath;
-import org.jgrapht.Graphs;
-import org.jgrapht.UndirectedGraph;
-import org.jgrapht.alg.DijkstraShortestPath;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.SimpleDirectedGraph;
 
@@ -42,299 +37,354 @@ public class AllPairsShortestPathFeatureExtractor extends AbstractShortestPathFe
 	}
 
 
-    @Override
-    public List<FoundFeature<Annotation>> getShortestPaths(UndirectedGraph<Token, DependencyEdge> graph) {
+    /**
+     * The candidate entities of a part of the document.
+     */
+    private static class Part {
 
-        List<FoundFeature<Annotation>> dataBag = Lists.newArrayList();
+        private final ExtractionContext context;
 
-        // pick up entities
-        List<Annotation> namedEntities = Lists.newArrayList(JCasUtil.select(getjCas(), getSelectionType()));
-        if(getAdditionalSelectionType() != null) {
-            // add additional selection types
-            namedEntities.addAll(JCasUtil.select(getjCas(), getAdditionalSelectionType()));
-        }
+        private final SubTreeIndex subTreeIndex;
 
-        // break
-        if (namedEntities == null || namedEntities.size() == 1) {
-            return dataBag;
+        private final List<CandidateEntity> candidates = Lists.newArrayList();
+
+        private Part(ExtractionContext context, SubTreeIndex subTreeIndex) {
+            this.context = context;
+            this.subTreeIndex = subTreeIndex;
         }
+    }
 
-        Set<CandidateEntity> candidateEntities = Sets.newHashSet();
+    @Override
+    protected DocumentExtraction<?> newExtraction() {
+        return new Extraction();
+    }
 
-        // now iterate over all entities and expand them
-        for (Annotation namedEntity : namedEntities) {
-            List<Token> subTree = getSubTree(namedEntity, graph);
-            Token head = getNamedEntityHead(namedEntity, graph);
-            if(graph.containsVertex(head)) {
-                candidateEntities.add(new CandidateEntity(head, subTree));
-            }
+    /**
+     * Expands the entities of a part to their subtrees, links them by the coreferences of the whole document and
+     * by appositions, and extracts the paths between all pairs of a part.
+     */
+    private class Extraction extends DocumentExtraction<Part> {
 
-        }
+        private final DirectedGraph<Annotation, DefaultEdge> coref = new SimpleDirectedGraph<>(DefaultEdge.class);
 
-        DirectedGraph<Annotation, DefaultEdge> coref = new SimpleDirectedGraph<>(DefaultEdge.class);
-        if (isResolveCoreferences()) {
+        /** set if the document has a single entity, which has no pair */
+        private boolean single;
 
-            for (CoreferenceChain coreferenceChain : JCasUtil.select(getjCas(), CoreferenceChain.class)) {
+        @Override
+        protected Part find(ExtractionContext context) {
 
-                final CoreferenceLink first = coreferenceChain.getFirst();
+            // pick up entities
+            List<Annotation> namedEntities = Lists.newArrayList(context.select(getSelectionType()));
+            if(getAdditionalSelectionType() != null) {
+                // add additional selection types
+                namedEntities.addAll(context.select(getAdditionalSelectionType()));
+            }
 
-                if(coreferenceChain.links().size() < 2) {
-                    continue;
+            // one depth first search per sentence, so subtrees are read off intervals
+            Part part = new Part(context, subTreeIndex(context));
+
+            // now iterate over all entities and expand them
+            for (Annotation namedEntity : namedEntities) {
+                EntityIndex.Entry entity = subTree(namedEntity, context, part.subTreeIndex);
+                if(entity.getHeadVertex() >= 0) {
+                    part.candidates.add(new CandidateEntity(context, entity.getHead(), entity));
                 }
 
-                // this is the token ...
-                final Token entityHead = getNamedEntityHead(first, graph);
+            }
+            return part;
+        }
 
-                // if we don't have the specific target annotation as a marker, just skip
-                // this will prevent linking to pronouns that we are for example not interested in
-                // check if we just have a number
-                if (entityHead == null || entityHead.getPos().getClass().equals(CARD.class) || entityHead.getPos().getClass().equals(PUNC.class)) {
-                    continue;
-                }
+        @Override
+        protected void link(List<Part> parts) {
+            if (parts.isEmpty()) {
+                return;
+            }
+            final JCas jCas = parts.get(0).context.getjCas();
 
-                // get the actual named entity, if it is already in the set - we don't want duplicates
-                final Optional<CandidateEntity> targetAnnotation = Iterables.tryFind(candidateEntities, new Predicate<CandidateEntity>() {
-                    @Override
-                    public boolean apply(@Nullable CandidateEntity input) {
-                        return entityHead != null && (input.head.getBegin() <= entityHead.getBegin() && input.head.getEnd() >= entityHead.getEnd());
-                    }
-                });
+            // break, a single entity in the whole document has no pair
+            int entities = JCasUtil.select(jCas, getSelectionType()).size();
+            if (getAdditionalSelectionType() != null) {
+                entities += JCasUtil.select(jCas, getAdditionalSelectionType()).size();
+            }
+            if (entities == 1) {
+                single = true;
+                return;
+            }
 
-                if(!targetAnnotation.isPresent()) {
-                    continue;
+            // the candidates of the whole document in text order, the coreferences pick the first match
+            List<CandidateEntity> candidateEntities = Lists.newArrayList();
+            for (Part part : parts) {
+                for (CandidateEntity candidate : part.candidates) {
+                    candidate.annotate(part.context);
+                    candidateEntities.add(candidate);
                 }
+            }
 
-                CandidateEntity left = targetAnnotation.get();
-
+            if (isResolveCoreferences()) {
 
-                if(first.getCoveredText().length() < left.namedEntity.getCoveredText().length()) {
-                    // check that the annotation is really covering the underlying named entity
-                    // we don't want to widen the scope if the mention is way shorter
-                    continue;
-                }
+                for (CoreferenceChain coreferenceChain : JCasUtil.select(jCas, CoreferenceChain.class)) {
 
-                CoreferenceLink last = first;
-                // traverse
-                while (last.getNext() != null) {
-                    last = last.getNext();
-                    if (first != last) {
+                    final CoreferenceLink first = coreferenceChain.getFirst();
 
+                    if(coreferenceChain.links().size() < 2) {
+                        continue;
+                    }
 
-                        // use the Token not the selection type when getting the underlying annotation
-                        final Token rightToken = getNamedEntityHead(last, graph);
-                        if(rightToken == null) {
-                            // ignore
-                            continue;
-                        }
+                    // this is the token ...
+                    final Token entityHead = head(first);
 
-                        // get the actual named entity, if it is already in the set - we don't want duplicates
-                        final Optional<CandidateEntity> targetRightAnnotation = Iterables.tryFind(candidateEntities, new Predicate<CandidateEntity>() {
-                            @Override
-                            public boolean apply(@Nullable CandidateEntity input) {
-                                return rightToken != null && (input.namedEntity.getBegin() <= rightToken.getBegin() && input.namedEntity.getEnd() >= rightToken.getEnd());
-                            }
-                        });
+                    // if we don't have the specific target annotation as a marker, just skip
+                    // this will prevent linking to pronouns that we are for example not interested in
+                    // check if we just have a number
+                    if (entityHead == null || entityHead.getPos().getClass().equals(CARD.class) || entityHead.getPos().getClass().equals(PUNC.class)) {
+                        continue;
+                    }
 
+                    // get the actual named entity, if it is already in the set - we don't want duplicates
+                    final Optional<CandidateEntity> targetAnnotation = Iterables.tryFind(candidateEntities, new Predicate<CandidateEntity>() {
+                        @Override
+                        public boolean apply(@Nullable CandidateEntity input) {
+                            return entityHead != null && (input.head.getBegin() <= entityHead.getBegin() && input.head.getEnd() >= entityHead.getEnd());
+                        }
+                    });
 
+                    if(!targetAnnotation.isPresent()) {
+                        continue;
+                    }
 
-                        final CandidateEntity right = targetRightAnnotation.or(new CandidateEntity(rightToken, getSubTree(rightToken, graph)));
+                    CandidateEntity left = targetAnnotation.get();
 
 
+                    if(first.getCoveredText().length() < left.namedEntity.getCoveredText().length()) {
                         // check that the annotation is really covering the underlying named entity
-                        // but we also allow "HE SHE ..."
-
-                        // we don't want
-                        // Mention is way longer than the underlying annotation
+                        // we don't want to widen the scope if the mention is way shorter
+                        continue;
+                    }
 
-                        if(last.getCoveredText().length() > right.namedEntity.getCoveredText().length() || right.namedEntity.getCoveredText().endsWith("degree")) {
-                            // we don't want to widen the scope if the mention is way shorter
-                            continue;
-                        }
+                    CoreferenceLink last = first;
+                    // traverse
+                    while (last.getNext() != null) {
+                        last = last.getNext();
+                        if (first != last) {
 
 
-                        if (left != right && left != null && (StringUtils.startsWithIgnoreCase(left.namedEntity.getCoveredText(), "mount") || !StringUtils.startsWithIgnoreCase(right.namedEntity.getCoveredText(), "mount"))) {
-                            coref.addVertex(left.namedEntity);
-                            coref.addVertex(right.namedEntity);
-                            coref.addEdge(left.namedEntity, right.namedEntity);
-
-                            // also add all token
-                            // now check all right annotations if they are maybe a named entity
-          /*                  for (Annotation namedEntity : namedEntities) {
-                                // last the ihe coref target
-                                if(namedEntity.getBegin() >= last.getBegin() && namedEntity.getEnd() <= last.getEnd()) {
-                                    coref.addVertex(namedEntity);
-                                    coref.addEdge(left, namedEntity);
-                                }
+                            // use the Token not the selection type when getting the underlying annotation
+                            final Token rightToken = head(last);
+                            if(rightToken == null) {
+                                // ignore
+                                continue;
                             }
 
-                            List<Token> tokens = JCasUtil.selectCovered(Token.class, last);
-                            for (Token token : tokens) {
-                                coref.addVertex(token);
-                                coref.addEdge(left, token);
-                            }
-             */
-                            // and add this now to the list of named entites if not already found
-                            // check if there is already an annotation that covers right
-                            // this is the case if an existing annotation begins before right and ends after right
-                            final boolean any = Iterables.any(candidateEntities, new Predicate<CandidateEntity>() {
+                            // get the actual named entity, if it is already in the set - we don't want duplicates
+                            final Optional<CandidateEntity> targetRightAnnotation = Iterables.tryFind(candidateEntities, new Predicate<CandidateEntity>() {
                                 @Override
-                                public boolean apply(@Nullable CandidateEntity existing) {
-                                    return existing.head.getBegin() <= right.head.getBegin() && existing.head.getEnd() >= right.head.getEnd();
+                                public boolean apply(@Nullable CandidateEntity input) {
+                                    return rightToken != null && (input.namedEntity.getBegin() <= rightToken.getBegin() && input.namedEntity.getEnd() >= rightToken.getEnd());
                                 }
                             });
 
-                            if(!any && !(right.head.getCoveredText().equals("his") || right.head.getCoveredText().equals("her")) ) {
-                                candidateEntities.add(right);
+                            final CandidateEntity right;
+                            final Part part;
+                            if (targetRightAnnotation.isPresent()) {
+                                right = targetRightAnnotation.get();
+                                part = null;
+                            } else {
+                                int index = indexOf(rightToken);
+                                if (index < 0) {
+                                    continue;
+                                }
+                                part = parts.get(index);
+                                right = new CandidateEntity(part.context, rightToken, subTree(rightToken, part.context, part.subTreeIndex));
+                                right.annotate(part.context);
                             }
-                        }
-                    }
-                }
-            }
-
-        }
 
 
-        // check if one entity is an apposition of another
-        // e.g. Bell, a telecommunication company,
+                            // check that the annotation is really covering the underlying named entity
+                            // but we also allow "HE SHE ..."
 
-        List<CandidateEntity> appositionCheckList = Lists.newArrayList(candidateEntities);
-        for (int i = 0; i < appositionCheckList.size(); i++) {
+                            // we don't want
+                            // Mention is way longer than the underlying annotation
 
-            CandidateEntity left = appositionCheckList.get(i);
+                            if(last.getCoveredText().length() > right.namedEntity.getCoveredText().length() || right.namedEntity.getCoveredText().endsWith("degree")) {
+                                // we don't want to widen the scope if the mention is way shorter
+                                continue;
+                            }
 
-            for (int j = i + 1; j < appositionCheckList.size(); j++) {
 
-                CandidateEntity right = appositionCheckList.get(j);
+                            if (left != right && left != null && (StringUtils.startsWithIgnoreCase(left.namedEntity.getCoveredText(), "mount") || !StringUtils.startsWithIgnoreCase(right.namedEntity.getCoveredText(), "mount"))) {
+                                coref.addVertex(left.namedEntity);
+                                coref.addVertex(right.namedEntity);
+                                coref.addEdge(left.namedEntity, right.namedEntity);
+
+                                // and add this now to the list of named entites if not already found
+                                // check if there is already an annotation that covers right
+                                // this is the case if an existing annotation begins before right and ends after right
+                                final boolean any = Iterables.any(candidateEntities, new Predicate<CandidateEntity>() {
+                                    @Override
+                                    public boolean apply(@Nullable CandidateEntity existing) {
+                                        return existing.head.getBegin() <= right.head.getBegin() && existing.head.getEnd() >= right.head.getEnd();
+                                    }
+                                });
+
+                                // a candidate found above covers itself, so only new ones are added
+                                if(!any && !(right.head.getCoveredText().equals("his") || right.head.getCoveredText().equals("her")) ) {
+                                    candidateEntities.add(right);
+                                    part.candidates.add(right);
+                                }
+                            }
+                        }
+                    }
+                }
 
-                DependencyEdge edge = graph.getEdge(left.head, right.head);
+            }
 
-                if(edge != null && edge.getDependency().equals("appos")) {
 
-                    // add coreference
+            // check if one entity is an apposition of another
+            // e.g. Bell, a telecommunication company,
+            // the dependency graph has no edges across sentences, so only the candidates of a part are checked
+            for (Part part : parts) {
+                final CompactDependencyGraph graph = part.context.getGraph();
+                List<CandidateEntity> appositionCheckList = part.candidates;
+                for (int i = 0; i < appositionCheckList.size(); i++) {
 
-                    if(coref.containsEdge(left.namedEntity, right.namedEntity) || coref.containsEdge(left.namedEntity, right.namedEntity)) {
-                        continue;
-                    }
-                    coref.addVertex(left.namedEntity);
-                    coref.addVertex(right.namedEntity);
+                    CandidateEntity left = appositionCheckList.get(i);
 
+                    for (int j = i + 1; j < appositionCheckList.size(); j++) {
 
-                    // adhere to the ordering of the dependency edge
-                    // the coref is basically flipped
-                    // but the coreference graph is yet again flipped :)
-                    if(edge.getFrom().equals(left.head)) {
-                        coref.addEdge(left.namedEntity, right.namedEntity);
-                    } else {
-                        coref.addEdge(right.namedEntity, left.namedEntity);
-                    }
+                        CandidateEntity right = appositionCheckList.get(j);
 
-                }
+                        // the heads of coreferences may not be part of the dependency graph
+                        int leftVertex = graph.indexOf(left.head);
+                        int rightVertex = graph.indexOf(right.head);
+                        if (leftVertex < 0 || rightVertex < 0) {
+                            continue;
+                        }
+                        int edge = graph.findEdge(leftVertex, rightVertex);
 
-            }
-        }
+                        if(edge >= 0 && graph.label(edge).equals("appos")) {
 
+                            // add coreference
 
-        // order candidate entities to make the search stable
+                            if(coref.containsEdge(left.namedEntity, right.namedEntity) || coref.containsEdge(left.namedEntity, right.namedEntity)) {
+                                continue;
+                            }
+                            coref.addVertex(left.namedEntity);
+                            coref.addVertex(right.namedEntity);
 
-        // get all pairs of entities omitting incestuous and duplicate pairs
-        List<EntityPair> entityPairs = Lists.newArrayList();
 
-        Iterator<CandidateEntity> iterator = candidateEntities.iterator();
-        while (iterator.hasNext()) {
-            CandidateEntity entity1 = iterator.next();
-            iterator.remove();
+                            // adhere to the ordering of the dependency edge
+                            // the coref is basically flipped
+                            // but the coreference graph is yet again flipped :)
+                            if(graph.token(graph.governor(edge)).equals(left.head)) {
+                                coref.addEdge(left.namedEntity, right.namedEntity);
+                            } else {
+                                coref.addEdge(right.namedEntity, left.namedEntity);
+                            }
 
-            for (CandidateEntity entity2 : candidateEntities) {
+                        }
 
-                // check that the annotation1 is not contained in entity2
-                if (!(entity2.list.contains(entity1.head) || entity1.list.contains(entity2.head))) {
-                    if ((entity1.head.getBegin() < entity2.head.getBegin())) {
-                        entityPairs.add(new EntityPair(entity1, entity2));
-                    } else {
-                        entityPairs.add(new EntityPair(entity2, entity1));
                     }
                 }
             }
         }
-        Collections.sort(entityPairs, Ordering.from(new Comparator<EntityPair>() {
-            @Override
-            public int compare(EntityPair o1, EntityPair o2) {
-                return ComparisonChain.start()
-                        .compare(o1.getEntity1().namedEntity.getBegin(), o2.getEntity1().namedEntity.getBegin())
-                        .compare(o1.getEntity2().namedEntity.getBegin(), o2.getEntity2().namedEntity.getBegin())
-                        .compare(o1.getEntity1().namedEntity.getEnd(), o2.getEntity1().namedEntity.getEnd())
-                        .compare(o1.getEntity2().namedEntity.getEnd(), o2.getEntity2().namedEntity.getEnd())
-                        .compare(o1.hashCode(), o2.hashCode())
-                        .result();
-            }
-        }));
-
 
-        //Table<Annotation, Annotation, Boolean> appositionCheck = HashBasedTable.create();
-
-        // pairs
+        /**
+         * @return the head of a mention of the document, null if it is not within a part
+         */
+        private Token head(Annotation mention) {
+            ExtractionContext context = contextOf(mention);
+            return context == null ? null : getNamedEntityHead(mention, context);
+        }
 
-        for (EntityPair entityPair : entityPairs) {
+        @Override
+        protected List<FoundFeature<Annotation>> getShortestPaths(Part part) {
 
-            final Token e1 = entityPair.entity1.head;
-            final Token e2 = entityPair.entity2.head;
+            final ExtractionContext context = part.context;
+            final CompactDependencyGraph graph = context.getGraph();
 
-            if (e1 == null || e2 == null) {
-                continue;
+            List<FoundFeature<Annotation>> dataBag = Lists.newArrayList();
+            if (single) {
+                return dataBag;
             }
 
+            // order candidate entities to make the search stable
 
-            DijkstraShortestPath<Token, DependencyEdge> shortestPaths = new DijkstraShortestPath<>(graph, e1, e2);
+            // get all pairs of entities omitting incestuous and duplicate pairs
+            List<EntityPair> entityPairs = Lists.newArrayList();
 
-            GraphPath<Token, DependencyEdge> shortestPath = shortestPaths.getPath();
-            if (shortestPath == null || shortestPath.getEdgeList().size() == 0) {
-                continue;
-            }
+            List<CandidateEntity> candidateEntities = part.candidates;
+            for (int i = 0; i < candidateEntities.size(); i++) {
+                CandidateEntity entity1 = candidateEntities.get(i);
 
-            // retrieve vertices on the shortest path
-            // the first and last entry are the start and end vertex -> dynamically encode as X and Y
-            final List<Token> vertices = Graphs.getPathVertexList(shortestPath);
-            List<DependencyEdge> edges = shortestPath.getEdgeList();
+                for (CandidateEntity entity2 : candidateEntities.subList(i + 1, candidateEntities.size())) {
 
-            Collections.sort(vertices, new Comparator<Token>() {
+                    // check that the annotation1 is not contained in entity2
+                    if (!(entity2.entity.inSubTree(entity1.head) || entity1.entity.inSubTree(entity2.head))) {
+                        if ((entity1.head.getBegin() < entity2.head.getBegin())) {
+                            entityPairs.add(new EntityPair(entity1, entity2));
+                        } else {
+                            entityPairs.add(new EntityPair(entity2, entity1));
+                        }
+                    }
+                }
+            }
+            Collections.sort(entityPairs, Ordering.from(new Comparator<EntityPair>() {
                 @Override
-                public int compare(Token o1, Token o2) {
-                    return Ints.compare(o1.getBegin(), o2.getBegin());
+                public int compare(EntityPair o1, EntityPair o2) {
+                    return ComparisonChain.start()
+                            .compare(o1.getEntity1().namedEntity.getBegin(), o2.getEntity1().namedEntity.getBegin())
+                            .compare(o1.getEntity2().namedEntity.getBegin(), o2.getEntity2().namedEntity.getBegin())
+                            .compare(o1.getEntity1().namedEntity.getEnd(), o2.getEntity1().namedEntity.getEnd())
+                            .compare(o1.getEntity2().namedEntity.getEnd(), o2.getEntity2().namedEntity.getEnd())
+                            .compare(o1.hashCode(), o2.hashCode())
+                            .result();
                 }
-            });
+            }));
 
-            String vertexLabels = Joiner.on(" ").skipNulls().join(Iterables.transform(vertices, new Function<Token, String>() {
 
-                @Override
-                public String apply(Token token) {
-                    if (e1.equals(token)) {
-                        return "[X]";
-                    } else if (e2.equals(token)) {
-                        return "[Y]";
-                    } else
-                        return (isLemmatize() ? token.getLemma().getValue() : token.getCoveredText().replaceAll("\n", " "));
+            //Table<Annotation, Annotation, Boolean> appositionCheck = HashBasedTable.create();
+
+            // pairs
+
+            for (EntityPair entityPair : entityPairs) {
+
+                final int e1 = graph.indexOf(entityPair.entity1.head);
+                final int e2 = graph.indexOf(entityPair.entity2.head);
+
+                if (e1 < 0 || e2 < 0) {
+                    continue;
                 }
-            }));
 
-            // retrieve edges /dependencies on the shortest path
 
-            Iterable<String> edgeListLables = Iterables.transform(edges, new Function<DependencyEdge, String>() {
-                @Override
-                public String apply(DependencyEdge edge) {
-                    return Joiner.on("-").join(vertices.indexOf(edge.getFrom()), edge.getDependency(), vertices.indexOf(edge.getTo()));
+                // the path through the lowest common ancestor of both heads
+                DependencyPath shortestPath = context.getPaths().getPath(e1, e2);
+                if (shortestPath == null) {
+                    continue;
                 }
-            });
 
+                // the first and last entry are the start and end vertex -> dynamically encode as X and Y
+                final PatternEncoder encoder = PatternEncoder.get();
+                final String pattern = encoder.encode(shortestPath, graph, e1, e2, isLemmatize());
+                final long patternHash = encoder.hash();
 
-            String edgeLabels = Joiner.on(",").skipNulls().join(Ordering.natural().sortedCopy(edgeListLables));
+                dataBag.add(new FoundFeature<>(entityPair.entity1.namedEntity, entityPair.entity2.namedEntity, pattern, patternHash));
+            }
 
-            // concatenate pattern parts
-            final String pattern = vertexLabels + " [" + edgeLabels + "]";
+            return dataBag;
+        }
 
-            Annotation ent1 = entityPair.entity1.namedEntity;
-            Annotation ent2 = entityPair.entity2.namedEntity;
+        @Override
+        protected void substitute(List<FoundFeature<Annotation>> features) {
+            if (!isResolveCoreferences()) {
+                return;
+            }
+            for (FoundFeature<Annotation> feature : features) {
+                final Annotation entity1 = feature.getEntity1();
+                final Annotation entity2 = feature.getEntity2();
+
+                Annotation ent1 = entity1;
+                Annotation ent2 = entity2;
 
-            if (isResolveCoreferences()) {
                 // check if annotation1 is actually at the end of a co-reference chain
 
                 // and also make sure we don't find a path between the same entities
@@ -342,10 +392,10 @@ public class AllPairsShortestPathFeatureExtractor extends AbstractShortestPathFe
                 // so we ask the graph
                 //noinspection ConstantConditions
                 boolean replace = false; // don't replace two instances
-                if (coref.containsVertex(entityPair.getEntity1().namedEntity) && coref.inDegreeOf(entityPair.getEntity1().namedEntity) > 0) {
-                    final DefaultEdge edge = Iterables.getFirst(coref.incomingEdgesOf(entityPair.getEntity1().namedEntity), null);
+                if (coref.containsVertex(entity1) && coref.inDegreeOf(entity1) > 0) {
+                    final DefaultEdge edge = Iterables.getFirst(coref.incomingEdgesOf(entity1), null);
                     final Annotation edgeSource = coref.getEdgeSource(edge);
-                    if (!edgeSource.equals(entityPair.getEntity2().namedEntity) &&
+                    if (!edgeSource.equals(entity2) &&
                         !edgeSource.getCoveredText().startsWith(ent2.getCoveredText())) {
                         ent1 = edgeSource; //+ " -corf of " + e1text;
                         replace= true;
@@ -353,23 +403,20 @@ public class AllPairsShortestPathFeatureExtractor extends AbstractShortestPathFe
                     }
                 }
                 // skip the replacement if we have already replace the first instance
-                if (!replace && coref.containsVertex(entityPair.getEntity2().namedEntity) && coref.inDegreeOf(entityPair.getEntity2().namedEntity) > 0) {
-                    final DefaultEdge edge = Iterables.getFirst(coref.incomingEdgesOf(entityPair.getEntity2().namedEntity), null);
+                if (!replace && coref.containsVertex(entity2) && coref.inDegreeOf(entity2) > 0) {
+                    final DefaultEdge edge = Iterables.getFirst(coref.incomingEdgesOf(entity2), null);
                     final Annotation edgeSource = coref.getEdgeSource(edge);
-                    if (!edgeSource.equals(entityPair.getEntity1().namedEntity) &&
+                    if (!edgeSource.equals(entity1) &&
                         !edgeSource.getCoveredText().startsWith(ent1.getCoveredText())) {
                         ent2 = edgeSource; // + " -corf of " + e2text;
                     }
                     //ent1 = Iterables.getFirst(coref.incomingEdgesOf(pair.getEntity2()), null).getSource();
                 }
 
-
+                feature.setEntity1(ent1);
+                feature.setEntity2(ent2);
             }
-
-            dataBag.add(new FoundFeature<>(ent1, ent2, pattern));
         }
-
-        return dataBag;
     }
 
     private static final Set<String> skips = ImmutableSet.of("partmod", "det", "rcmod", "appos", "nsubj", "conj", "cc");
@@ -380,15 +427,111 @@ public class AllPairsShortestPathFeatureExtractor extends AbstractShortestPathFe
      * Find the subtree for an annotation.
      *
      * @param annotation the candidate
-	 * @param graph the dependency graph graph
+	 * @param context the extraction context
 	 * @return List of tokens making up the subtree
      */
-    public List<Token> getSubTree(Annotation annotation, UndirectedGraph<Token, DependencyEdge> graph) {
-        // get all tokens
-        Set<Token> tokens = Sets.newHashSet(JCasUtil.selectCovered(Token.class, annotation));
-        if (tokens.size() == 0) {
-            tokens.addAll(JCasUtil.selectCovering(Token.class, annotation));
+    public List<Token> getSubTree(Annotation annotation, ExtractionContext context) {
+        return subTree(annotation, context, subTreeIndex(context)).getSubTree();
+    }
+
+    /**
+     * Numbers the dependency trees along the edges a subtree may follow.
+     */
+    private SubTreeIndex subTreeIndex(ExtractionContext context) {
+        final CompactDependencyGraph graph = context.getGraph();
+        final int[] positions = tokenPositions(context, graph);
+        return new SubTreeIndex(graph, edge -> follow(context, edge, positions));
+    }
+
+    /**
+     * @return the entry of the annotation, with the subtree computed once per document
+     */
+    private EntityIndex.Entry subTree(Annotation annotation, ExtractionContext context, SubTreeIndex index) {
+        EntityIndex.Entry entity = context.getEntities().get(annotation);
+        if (entity.getSubTree() == null) {
+            if (index.isForest()) {
+                readSubTree(entity, context, index);
+            } else {
+                entity.setSubTree(findSubTree(entity, context, index));
+            }
         }
+        return entity;
+    }
+
+    /**
+     * @return the position of every vertex among all tokens in the scope
+     */
+    private static int[] tokenPositions(ExtractionContext context, CompactDependencyGraph graph) {
+        int[] positions = new int[graph.size()];
+        int position = 0;
+        for (Token token : context.select(Token.class)) {
+            int vertex = graph.indexOf(token);
+            if (vertex >= 0) {
+                positions[vertex] = position;
+            }
+            position++;
+        }
+        return positions;
+    }
+
+    /**
+     * @return true if a subtree extends from the governor of the edge to its dependent
+     */
+    private static boolean follow(ExtractionContext context, int edge, int[] positions) {
+        CompactDependencyGraph graph = context.getGraph();
+        String dependency = graph.label(edge);
+        int governor = graph.governor(edge);
+        int dependent = graph.dependent(edge);
+
+        if (skips.contains(dependency)) {
+            return false;
+        }
+        if (dependency.equals("prep") && !allowed.contains(graph.lemma(dependent)) && !context.getCoveredText(graph.token(governor)).equals("degree")) {
+            return false;
+        }
+        if (dependency.equals("poss") && pronouns.contains(context.getCoveredText(graph.token(dependent)))) {
+            return false;
+        }
+
+        // must be x left or x right of edge source - no jumps
+        return Math.abs(positions[governor] - positions[dependent]) <= 4;
+    }
+
+    /**
+     * Collects the subtree from the intervals the tokens of the entity span in the index.
+     */
+    private void readSubTree(EntityIndex.Entry entity, ExtractionContext context, SubTreeIndex index) {
+
+        CompactDependencyGraph graph = context.getGraph();
+
+        List<Token> subtree = Lists.newArrayList();
+        int[] roots = new int[entity.getTokens().size()];
+        int count = 0;
+        for (Token token : entity.getTokens()) {
+            int vertex = graph.indexOf(token);
+            if (vertex >= 0) {
+                roots[count++] = vertex;
+            } else {
+                subtree.add(token);
+            }
+        }
+
+        int[] intervals = index.intervals(Arrays.copyOf(roots, count));
+        for (int i = 0; i < intervals.length; i += 2) {
+            for (int position = intervals[i]; position < intervals[i + 1]; position++) {
+                subtree.add(graph.token(index.vertexAt(position)));
+            }
+        }
+
+        entity.setSubTree(trim(subtree, context), index, intervals);
+    }
+
+    private List<Token> findSubTree(EntityIndex.Entry entity, ExtractionContext context, SubTreeIndex index) {
+
+        CompactDependencyGraph graph = context.getGraph();
+
+        // get all tokens
+        Set<Token> tokens = Sets.newHashSet(entity.getTokens());
 
         Queue<Token> v = Queues.newArrayDeque(tokens);
 
@@ -396,39 +539,34 @@ public class AllPairsShortestPathFeatureExtractor extends AbstractShortestPathFe
         while (!v.isEmpty()) {
             Token token = v.poll();
 
-            if(!graph.containsVertex(token)) {
+            int vertex = graph.indexOf(token);
+            if(vertex < 0) {
                 continue;
             }
 
-            Set<DependencyEdge> edges = graph.edgesOf(token);
             // filter the list of outwards edges
-            for (DependencyEdge edge : edges) {
-
-                if(edge.getFrom().equals(token) && !skips.contains(edge.getDependency()))  {
-                    if(edge.getDependency().equals("prep") && !allowed.contains(edge.getTo().getLemma().getValue()) && !edge.getFrom().getCoveredText().equals("degree")) {
-                        continue;
-                    }
-                    if(edge.getDependency().equals("poss") && pronouns.contains(edge.getTo().getCoveredText())) {
-                        continue;
-                    }
-
-                    // must be x left or x right of edge source - no jumps
-                    List<Token> before = JCasUtil.selectPreceding(Token.class, edge.getFrom(), 4);
-                    List<Token> after = JCasUtil.selectFollowing(Token.class, edge.getFrom(), 4);
-
-                    if(before.contains(edge.getTo()) || after.contains(edge.getTo())) {
-                        // we are going down that path
-                        tokens.add(edge.getTo());
-                        v.add(edge.getTo());
+            for (int i = graph.edgeStart(vertex); i < graph.edgeEnd(vertex); i++) {
+                int edge = graph.edgeAt(i);
+
+                if(graph.governor(edge) == vertex && index.follows(edge)) {
+                    Token to = graph.token(graph.dependent(edge));
+                    // we are going down that path
+                    if(tokens.add(to)) {
+                        v.add(to);
                     }
-
                 }
             }
         }
 
-        // order tokens by
+        return trim(Lists.newArrayList(tokens), context);
+    }
+
+    /**
+     * Orders the tokens of a subtree and removes the trailing punctuation.
+     */
+    private static List<Token> trim(List<Token> subtree, ExtractionContext context) {
 
-        List<Token> subtree = Lists.newArrayList(tokens);
+        // order tokens by
         Collections.sort(subtree, new Comparator<Token>() {
             @Override
             public int compare(Token o1, Token o2) {
@@ -439,7 +577,7 @@ public class AllPairsShortestPathFeatureExtractor extends AbstractShortestPathFe
         // remove all PUNCs at the end and also the Possessive
         if(subtree.size() > 1) {
             Token last = Iterables.getLast(subtree, null);
-            while (subtree.size() > 1 && last != null && (O.class.equals(last.getPos().getClass()) || PUNC.class.equals(last.getPos().getClass()) || allowed.contains(last.getCoveredText()))) {
+            while (subtree.size() > 1 && last != null && (O.class.equals(context.getPosType(last)) || PUNC.class.equals(context.getPosType(last)) || allowed.contains(context.getCoveredText(last)))) {
                 subtree.remove(last);
                 last = Iterables.getLast(subtree, null);
             }
@@ -448,21 +586,28 @@ public class AllPairsShortestPathFeatureExtractor extends AbstractShortestPathFe
 
     }
 
-    private class CandidateEntity {
+    private static class CandidateEntity {
         Token head;
         List<Token> list;
+        EntityIndex.Entry entity;
+        EntitySpan span;
+        /** set once the candidate is annotated */
         Annotation namedEntity;
 
-        public CandidateEntity(Token head, List<Token> list) {
+        public CandidateEntity(ExtractionContext context, Token head, EntityIndex.Entry entity) {
             this.head = head;
-            this.list = list;
+            this.list = entity.getSubTree();
+            this.entity = entity;
 
             Token first = Iterables.getFirst(list, null);
             Token last = Iterables.getLast(list);
 
-            namedEntity = new Annotation(getjCas() , first.getBegin(), last.getEnd());
-
+            span = context.newSpan(first.getBegin(), last.getEnd());
+            namedEntity = span.getAnnotation();
+        }
 
+        void annotate(ExtractionContext context) {
+            namedEntity = context.annotate(span);
         }
     }
 
@@ -0,0 +1,94 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Annotation layers a feature extractor can request from the annotation pipeline.
+ */
+public enum AnnotationLayer {
+
+	SEGMENTATION("tokenize, ssplit"),
+	POS("pos"),
+	LEMMA("lemma"),
+	NAMED_ENTITIES("ner"),
+	DEPENDENCIES(null),
+	COREFERENCE("dcoref");
+
+	private final String stanfordAnnotators;
+
+	AnnotationLayer(String stanfordAnnotators) {
+		this.stanfordAnnotators = stanfordAnnotators;
+	}
+
+	/**
+	 * @return the layers required by this layer, including the layer itself
+	 */
+	public Set<AnnotationLayer> withRequirements() {
+		switch (this) {
+			case SEGMENTATION:
+				return EnumSet.of(SEGMENTATION);
+			case POS:
+				return EnumSet.of(SEGMENTATION, POS);
+			case LEMMA:
+			case DEPENDENCIES:
+				return EnumSet.of(SEGMENTATION, POS, LEMMA, this);
+			case NAMED_ENTITIES:
+				return EnumSet.of(SEGMENTATION, POS, LEMMA, NAMED_ENTITIES);
+			case COREFERENCE:
+				return EnumSet.of(SEGMENTATION, POS, LEMMA, NAMED_ENTITIES, COREFERENCE);
+			default:
+				throw new IllegalArgumentException(this + " not set");
+		}
+	}
+
+	/**
+	 * Adds all layers the given layers depend on.
+	 *
+	 * @param layers the requested layers
+	 * @return the requested layers and their requirements
+	 */
+	public static Set<AnnotationLayer> withRequirements(Collection<AnnotationLayer> layers) {
+		Set<AnnotationLayer> closure = EnumSet.noneOf(AnnotationLayer.class);
+		for (AnnotationLayer layer : layers) {
+			closure.addAll(layer.withRequirements());
+		}
+		return closure;
+	}
+
+	/**
+	 * @return all layers
+	 */
+	public static Set<AnnotationLayer> all() {
+		return EnumSet.allOf(AnnotationLayer.class);
+	}
+
+	/**
+	 * Creates the annotators property for a Stanford CoreNLP pipeline producing the given layers.
+	 * The Stanford parser runs if it produces the dependencies, or if co-references are requested, as dcoref works on constituency trees.
+	 *
+	 * @param layers           the layers including their requirements
+	 * @param dependencySource the parser producing the dependencies
+	 * @return comma separated annotator names in execution order
+	 */
+	public static String stanfordAnnotators(Set<AnnotationLayer> layers, DependencySource dependencySource) {
+		boolean parse = layers.contains(COREFERENCE)
+			|| (layers.contains(DEPENDENCIES) && dependencySource == DependencySource.STANFORD);
+
+		List<String> annotators = Lists.newArrayList();
+		for (AnnotationLayer layer : values()) {
+			if (layer == DEPENDENCIES && parse) {
+				annotators.add("parse");
+			}
+			if (layers.contains(layer) && layer.stanfordAnnotators != null) {
+				annotators.add(layer.stanfordAnnotators);
+			}
+		}
+		return Joiner.on(", ").join(annotators);
+	}
+}
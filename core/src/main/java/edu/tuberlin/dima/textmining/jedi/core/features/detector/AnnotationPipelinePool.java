@@ -0,0 +1,245 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed size pool of annotation pipelines.
+ * <p>
+ * Each pooled pipeline owns its own analysis engine and JCas, so a borrowed pipeline can annotate
+ * a document without interfering with documents processed by other threads.
+ * A borrowed pipeline, and every annotation taken from the JCas it returned, must only be used
+ * by the borrowing thread until it is handed back via {@link #release(AbstractPipeline)}.
+ */
+public class AnnotationPipelinePool {
+
+	private static final Log LOG = LogFactory.getLog(AnnotationPipelinePool.class);
+
+	/**
+	 * Default time to wait for a free pipeline.
+	 */
+	public static final long DEFAULT_MAX_WAIT_SECONDS = 120;
+
+	private final List<AbstractPipeline> pipelines;
+
+	private final BlockingQueue<AbstractPipeline> available;
+
+	private final long maxWait;
+
+	private final TimeUnit maxWaitUnit;
+
+	private volatile boolean warmingUp = false;
+
+	/**
+	 * Creates a pool over already initialized pipelines.
+	 *
+	 * @param pipelines   the pipelines to hand out, each must own its own analysis engine and JCas
+	 * @param maxWait     how long {@link #borrow()} waits for a free pipeline
+	 * @param maxWaitUnit the unit of maxWait
+	 */
+	public AnnotationPipelinePool(List<? extends AbstractPipeline> pipelines, long maxWait, TimeUnit maxWaitUnit) {
+		Preconditions.checkArgument(!pipelines.isEmpty(), "The pool needs at least one pipeline");
+
+		this.pipelines = ImmutableList.copyOf(pipelines);
+		this.available = new ArrayBlockingQueue<>(this.pipelines.size(), true, this.pipelines);
+		this.maxWait = maxWait;
+		this.maxWaitUnit = maxWaitUnit;
+	}
+
+	/**
+	 * Creates a pool of text annotation pipelines, one per available core.
+	 *
+	 * @param options the options passed to every {@link TextAnnotationPipeline}
+	 * @return an initialized pool
+	 * @throws Throwable in case of errors
+	 */
+	public static AnnotationPipelinePool withOptions(String options) throws Throwable {
+		return withOptions(options, 0);
+	}
+
+	/**
+	 * Creates a pool of text annotation pipelines.
+	 *
+	 * @param options the options passed to every {@link TextAnnotationPipeline}
+	 * @param size    the number of pipelines, values &lt; 1 size the pool to the number of available cores
+	 * @return an initialized pool
+	 * @throws Throwable in case of errors
+	 */
+	public static AnnotationPipelinePool withOptions(String options, int size) throws Throwable {
+		int poolSize = size > 0 ? size : Runtime.getRuntime().availableProcessors();
+
+		LOG.info("Creating " + poolSize + " annotation pipelines with options '" + options + "'");
+
+		// the pipelines share their models, which are loaded only once by the first pipeline requesting them
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize,
+			new ThreadFactoryBuilder().setNameFormat("pipeline-init-%d").setDaemon(true).build());
+		try {
+			List<Future<TextAnnotationPipeline>> created = Lists.newArrayList();
+			for (int i = 0; i < poolSize; i++) {
+				created.add(executor.submit(() -> {
+					try {
+						return new TextAnnotationPipeline(options);
+					} catch (Throwable e) {
+						throw new IllegalStateException("Can't create annotation pipeline", e);
+					}
+				}));
+			}
+
+			ImmutableList.Builder<TextAnnotationPipeline> pipelines = ImmutableList.builder();
+			for (Future<TextAnnotationPipeline> pipeline : created) {
+				try {
+					pipelines.add(pipeline.get());
+				} catch (ExecutionException e) {
+					throw e.getCause();
+				}
+			}
+
+			return new AnnotationPipelinePool(pipelines.build(), DEFAULT_MAX_WAIT_SECONDS, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Takes a pipeline out of the pool, waiting at most the configured time for one to become free.
+	 *
+	 * @return a pipeline exclusively owned by the caller until released
+	 * @throws InterruptedException  if interrupted while waiting
+	 * @throws IllegalStateException if no pipeline became available in time
+	 */
+	public AbstractPipeline borrow() throws InterruptedException {
+		AbstractPipeline pipeline = available.poll(maxWait, maxWaitUnit);
+		if (pipeline == null) {
+			throw new IllegalStateException("No annotation pipeline became available within " + maxWait + " " + maxWaitUnit);
+		}
+		return pipeline;
+	}
+
+	/**
+	 * Takes a pipeline out of the pool, waiting as long as it takes for one to become free.
+	 * Meant for batches that only wait for their own documents, see {@link #borrow()} for requests.
+	 *
+	 * @return a pipeline exclusively owned by the caller until released
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public AbstractPipeline take() throws InterruptedException {
+		return available.take();
+	}
+
+	/**
+	 * Hands a borrowed pipeline back to the pool.
+	 * The JCas last returned by the pipeline must not be used anymore afterwards.
+	 *
+	 * @param pipeline the pipeline previously obtained by {@link #borrow()}
+	 */
+	public void release(AbstractPipeline pipeline) {
+		Preconditions.checkArgument(pipelines.contains(pipeline), "The pipeline does not belong to this pool");
+		Preconditions.checkState(!available.contains(pipeline), "The pipeline has already been released");
+		available.offer(pipeline);
+	}
+
+	/**
+	 * Warms up all pipelines in parallel, see {@link AbstractPipeline#warmup(Collection)}.
+	 * <p>
+	 * The pool first takes all pipelines, waiting for borrowed ones to be released, so every pipeline is warmed up
+	 * exactly once and {@link #borrow()} waits meanwhile. A pipeline is handed back as soon as it is warm.
+	 *
+	 * @param layerSets the layer sets that will be requested
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws ExecutionException   if the warmup of a pipeline failed
+	 */
+	public void warmup(final Collection<Set<AnnotationLayer>> layerSets) throws InterruptedException, ExecutionException {
+		warmingUp = true;
+		List<AbstractPipeline> taken = Lists.newArrayList();
+		ExecutorService executor = Executors.newFixedThreadPool(pipelines.size(),
+			new ThreadFactoryBuilder().setNameFormat("pipeline-warmup-%d").setDaemon(true).build());
+		try {
+			while (taken.size() < pipelines.size()) {
+				taken.add(borrow());
+			}
+
+			List<Future<Void>> warmups = Lists.newArrayList();
+			for (final AbstractPipeline pipeline : taken) {
+				warmups.add(executor.submit(() -> {
+					try {
+						pipeline.warmup(layerSets);
+					} finally {
+						release(pipeline);
+					}
+					return null;
+				}));
+			}
+			// the tasks release their pipelines from now on
+			taken.clear();
+
+			for (Future<Void> warmup : warmups) {
+				warmup.get();
+			}
+		} finally {
+			for (AbstractPipeline pipeline : taken) {
+				release(pipeline);
+			}
+			executor.shutdown();
+			warmingUp = false;
+		}
+	}
+
+	/**
+	 * @return true if all pipelines are ready and no warmup is running
+	 */
+	public boolean isReady() {
+		if (warmingUp) {
+			return false;
+		}
+		for (AbstractPipeline pipeline : pipelines) {
+			if (!pipeline.isReady()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of pipelines owned by the pool
+	 */
+	public int size() {
+		return pipelines.size();
+	}
+
+	/**
+	 * @return the number of pipelines currently not borrowed
+	 */
+	public int available() {
+		return available.size();
+	}
+
+	public void finish() {
+		for (AbstractPipeline pipeline : pipelines) {
+			pipeline.finish();
+		}
+	}
+
+	/**
+	 * Destroys all pipelines, releasing the shared models once no other pool uses them.
+	 */
+	public void destroy() {
+		for (AbstractPipeline pipeline : pipelines) {
+			pipeline.destroy();
+		}
+	}
+}
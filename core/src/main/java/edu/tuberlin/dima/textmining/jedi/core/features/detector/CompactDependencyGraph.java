@@ -0,0 +1,293 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The dependency graph of a document, stored in primitive arrays.
+ * <p>
+ * Vertices are the tokens taking part in a dependency, numbered in text order, so comparing vertex ids compares the
+ * token positions. Edges connect governor and dependent; like an undirected simple graph, there is at most one edge
+ * between two tokens and no loops. The edges of a vertex are stored consecutively and are iterated by position:
+ * <pre>
+ * for (int i = graph.edgeStart(v); i &lt; graph.edgeEnd(v); i++) {
+ *     int edge = graph.edgeAt(i);
+ * }
+ * </pre>
+ * Dependency labels and lemmas are interned, so they can be compared by id. The graph is read off the CAS when it is
+ * built, so it can be shared by the threads extracting the sentences of a document.
+ */
+public class CompactDependencyGraph {
+
+	private static final Comparator<Token> BY_POSITION = new Comparator<Token>() {
+		@Override
+		public int compare(Token o1, Token o2) {
+			int compare = Integer.compare(o1.getBegin(), o2.getBegin());
+			return compare != 0 ? compare : Integer.compare(o1.getEnd(), o2.getEnd());
+		}
+	};
+
+	private final Token[] tokens;
+	private final String text;
+	private final int[] begin;
+	private final int[] end;
+	private final int[] head;
+	private final int[] lemma;
+
+	private final int[] governor;
+	private final int[] dependent;
+	private final int[] label;
+
+	private final int[] edgeOffsets;
+	private final int[] adjacentEdges;
+
+	private final List<String> labels = Lists.newArrayList();
+	private final Map<String, Integer> labelIds = Maps.newHashMap();
+	private final List<String> lemmas = Lists.newArrayList();
+	private final Map<String, Integer> lemmaIds = Maps.newHashMap();
+
+	/**
+	 * Builds the graph in one pass over the dependencies.
+	 *
+	 * @param dependencies the dependencies to include
+	 */
+	public CompactDependencyGraph(Collection<Dependency> dependencies) {
+
+		List<Token> vertices = Lists.newArrayListWithCapacity(dependencies.size() * 2);
+		for (Dependency dependency : dependencies) {
+			vertices.add(dependency.getGovernor());
+			vertices.add(dependency.getDependent());
+		}
+		vertices.sort(BY_POSITION);
+
+		// remove the duplicates, which are neighbours now
+		int size = 0;
+		for (Token token : vertices) {
+			if (size == 0 || !vertices.get(size - 1).equals(token)) {
+				vertices.set(size++, token);
+			}
+		}
+
+		tokens = vertices.subList(0, size).toArray(new Token[size]);
+		text = size > 0 ? tokens[0].getCAS().getDocumentText() : null;
+		begin = new int[size];
+		end = new int[size];
+		head = new int[size];
+		lemma = new int[size];
+		for (int v = 0; v < size; v++) {
+			begin[v] = tokens[v].getBegin();
+			end[v] = tokens[v].getEnd();
+			Lemma tokenLemma = tokens[v].getLemma();
+			lemma[v] = tokenLemma != null && tokenLemma.getValue() != null ? intern(tokenLemma.getValue(), lemmas, lemmaIds) : -1;
+		}
+		Arrays.fill(head, -1);
+
+		int[] governors = new int[dependencies.size()];
+		int[] dependents = new int[dependencies.size()];
+		int[] edgeLabels = new int[dependencies.size()];
+		int[] degree = new int[size];
+		Set<Long> pairs = Sets.newHashSetWithExpectedSize(dependencies.size());
+
+		int edges = 0;
+		for (Dependency dependency : dependencies) {
+			int from = indexOf(dependency.getGovernor());
+			int to = indexOf(dependency.getDependent());
+			if (from == to || !pairs.add(((long) Math.min(from, to) << 32) | Math.max(from, to))) {
+				continue;
+			}
+			governors[edges] = from;
+			dependents[edges] = to;
+			edgeLabels[edges] = intern(dependency.getDependencyType(), labels, labelIds);
+			if (head[to] < 0) {
+				head[to] = from;
+			}
+			degree[from]++;
+			degree[to]++;
+			edges++;
+		}
+
+		governor = Arrays.copyOf(governors, edges);
+		dependent = Arrays.copyOf(dependents, edges);
+		label = Arrays.copyOf(edgeLabels, edges);
+
+		edgeOffsets = new int[size + 1];
+		for (int v = 0; v < size; v++) {
+			edgeOffsets[v + 1] = edgeOffsets[v] + degree[v];
+		}
+		adjacentEdges = new int[edgeOffsets[size]];
+		int[] fill = Arrays.copyOf(edgeOffsets, size);
+		for (int e = 0; e < edges; e++) {
+			adjacentEdges[fill[governor[e]]++] = e;
+			adjacentEdges[fill[dependent[e]]++] = e;
+		}
+	}
+
+	/**
+	 * @return the text of the document the offsets of the vertices refer to, null if the graph is empty
+	 */
+	public String getDocumentText() {
+		return text;
+	}
+
+	private static int intern(String value, List<String> values, Map<String, Integer> ids) {
+		Integer id = ids.get(value);
+		if (id == null) {
+			id = values.size();
+			values.add(value);
+			ids.put(value, id);
+		}
+		return id;
+	}
+
+	/**
+	 * @return the number of vertices
+	 */
+	public int size() {
+		return tokens.length;
+	}
+
+	/**
+	 * @return the number of edges
+	 */
+	public int edgeCount() {
+		return governor.length;
+	}
+
+	/**
+	 * @param token a token
+	 * @return the vertex of the token, -1 if it is not part of the graph
+	 */
+	public int indexOf(Token token) {
+		if (token == null) {
+			return -1;
+		}
+		int position = Arrays.binarySearch(begin, token.getBegin());
+		if (position < 0) {
+			return -1;
+		}
+		// tokens starting at the same offset are rare, but possible
+		while (position > 0 && begin[position - 1] == begin[position]) {
+			position--;
+		}
+		for (; position < begin.length && begin[position] == token.getBegin(); position++) {
+			if (tokens[position].equals(token)) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	public boolean contains(Token token) {
+		return indexOf(token) >= 0;
+	}
+
+	public Token token(int vertex) {
+		return tokens[vertex];
+	}
+
+	public int begin(int vertex) {
+		return begin[vertex];
+	}
+
+	public int end(int vertex) {
+		return end[vertex];
+	}
+
+	/**
+	 * @return the governor of the vertex, -1 for roots
+	 */
+	public int head(int vertex) {
+		return head[vertex];
+	}
+
+	/**
+	 * @return the lemma of the vertex, null if not annotated
+	 */
+	public String lemma(int vertex) {
+		return lemma[vertex] >= 0 ? lemmas.get(lemma[vertex]) : null;
+	}
+
+	public int lemmaId(int vertex) {
+		return lemma[vertex];
+	}
+
+	/**
+	 * @return the first position of the edges of the vertex
+	 */
+	public int edgeStart(int vertex) {
+		return edgeOffsets[vertex];
+	}
+
+	/**
+	 * @return the position after the last edge of the vertex
+	 */
+	public int edgeEnd(int vertex) {
+		return edgeOffsets[vertex + 1];
+	}
+
+	/**
+	 * @return the edge at a position between {@link #edgeStart(int)} and {@link #edgeEnd(int)}
+	 */
+	public int edgeAt(int position) {
+		return adjacentEdges[position];
+	}
+
+	public int degree(int vertex) {
+		return edgeOffsets[vertex + 1] - edgeOffsets[vertex];
+	}
+
+	public int governor(int edge) {
+		return governor[edge];
+	}
+
+	public int dependent(int edge) {
+		return dependent[edge];
+	}
+
+	/**
+	 * @return the vertex at the other end of the edge
+	 */
+	public int opposite(int edge, int vertex) {
+		return governor[edge] == vertex ? dependent[edge] : governor[edge];
+	}
+
+	public String label(int edge) {
+		return labels.get(label[edge]);
+	}
+
+	public int labelId(int edge) {
+		return label[edge];
+	}
+
+	/**
+	 * @return the id of a dependency label, -1 if no edge carries it
+	 */
+	public int labelId(String dependencyType) {
+		Integer id = labelIds.get(dependencyType);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * @return the edge between two vertices in either direction, -1 if there is none
+	 */
+	public int findEdge(int u, int v) {
+		for (int i = edgeOffsets[u]; i < edgeOffsets[u + 1]; i++) {
+			int edge = adjacentEdges[i];
+			if (opposite(edge, u) == v) {
+				return edge;
+			}
+		}
+		return -1;
+	}
+}
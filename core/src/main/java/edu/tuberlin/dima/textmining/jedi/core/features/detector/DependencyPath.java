@@ -0,0 +1,30 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+/**
+ * A path between two vertices of a {@link CompactDependencyGraph}.
+ */
+public class DependencyPath {
+
+	private final int[] vertices;
+
+	private final int[] edges;
+
+	public DependencyPath(int[] vertices, int[] edges) {
+		this.vertices = vertices;
+		this.edges = edges;
+	}
+
+	/**
+	 * @return the vertices from the start to the end of the path
+	 */
+	public int[] getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * @return the edges in path order
+	 */
+	public int[] getEdges() {
+		return edges;
+	}
+}
@@ -0,0 +1,190 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Booleans;
+import com.google.common.primitives.Ints;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the paths between tokens of a document's dependency graph.
+ * <p>
+ * The dependency graph of a sentence is a tree, so every connected component is rooted once per document and each
+ * vertex gets its parent and depth. The path of a pair then runs through their lowest common ancestor and is found in
+ * time proportional to its length. Components that are not trees fall back to a breadth first search.
+ */
+public class DependencyPaths {
+
+	private final CompactDependencyGraph graph;
+
+	private final int[] parent;
+
+	private final int[] parentEdge;
+
+	private final int[] depth;
+
+	private final int[] component;
+
+	private final boolean[] isTree;
+
+	public DependencyPaths(CompactDependencyGraph graph) {
+		this.graph = graph;
+
+		int size = graph.size();
+		parent = new int[size];
+		parentEdge = new int[size];
+		depth = new int[size];
+		component = new int[size];
+		Arrays.fill(component, -1);
+
+		List<Boolean> trees = Lists.newArrayList();
+		int[] queue = new int[size];
+		for (int root = 0; root < size; root++) {
+			if (component[root] >= 0) {
+				continue;
+			}
+
+			int id = trees.size();
+			int edges = 0;
+			int head = 0;
+			int tail = 0;
+
+			component[root] = id;
+			parent[root] = -1;
+			parentEdge[root] = -1;
+			queue[tail++] = root;
+			while (head < tail) {
+				int current = queue[head++];
+				edges += graph.degree(current);
+				for (int i = graph.edgeStart(current); i < graph.edgeEnd(current); i++) {
+					int edge = graph.edgeAt(i);
+					int next = graph.opposite(edge, current);
+					if (component[next] < 0) {
+						component[next] = id;
+						parent[next] = current;
+						parentEdge[next] = edge;
+						depth[next] = depth[current] + 1;
+						queue[tail++] = next;
+					}
+				}
+			}
+			// every edge was counted from both ends, tail is the number of vertices
+			trees.add(edges / 2 == tail - 1);
+		}
+
+		isTree = Booleans.toArray(trees);
+	}
+
+	/**
+	 * Finds the shortest path between two tokens.
+	 *
+	 * @param from the start
+	 * @param to   the end
+	 * @return the path, null if the tokens are the same, not part of the graph or not connected
+	 */
+	public DependencyPath getPath(Token from, Token to) {
+		return getPath(graph.indexOf(from), graph.indexOf(to));
+	}
+
+	/**
+	 * Finds the shortest path between two vertices.
+	 *
+	 * @param start the first vertex
+	 * @param end   the last vertex
+	 * @return the path, null if the vertices are the same, -1 or not connected
+	 */
+	public DependencyPath getPath(int start, int end) {
+		if (start < 0 || end < 0 || start == end || component[start] != component[end]) {
+			return null;
+		}
+
+		if (!isTree[component[start]]) {
+			return breadthFirst(start, end);
+		}
+
+		// walk up from both ends until they meet in the lowest common ancestor
+		int u = start;
+		int v = end;
+		int up = 0;
+		int down = 0;
+		while (depth[u] > depth[v]) {
+			u = parent[u];
+			up++;
+		}
+		while (depth[v] > depth[u]) {
+			v = parent[v];
+			down++;
+		}
+		while (u != v) {
+			u = parent[u];
+			v = parent[v];
+			up++;
+			down++;
+		}
+
+		int[] vertices = new int[up + down + 1];
+		int[] edges = new int[up + down];
+		u = start;
+		for (int i = 0; i < up; i++) {
+			vertices[i] = u;
+			edges[i] = parentEdge[u];
+			u = parent[u];
+		}
+		vertices[up] = u;
+		v = end;
+		for (int i = 0; i < down; i++) {
+			vertices[up + down - i] = v;
+			edges[up + down - 1 - i] = parentEdge[v];
+			v = parent[v];
+		}
+
+		return new DependencyPath(vertices, edges);
+	}
+
+	private DependencyPath breadthFirst(int start, int end) {
+		int[] previousEdge = new int[graph.size()];
+		Arrays.fill(previousEdge, -2);
+		previousEdge[start] = -1;
+
+		int[] queue = new int[graph.size()];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start;
+		while (head < tail && previousEdge[end] == -2) {
+			int current = queue[head++];
+			for (int i = graph.edgeStart(current); i < graph.edgeEnd(current); i++) {
+				int edge = graph.edgeAt(i);
+				int next = graph.opposite(edge, current);
+				if (previousEdge[next] == -2) {
+					previousEdge[next] = edge;
+					queue[tail++] = next;
+				}
+			}
+		}
+
+		List<Integer> vertices = Lists.newArrayList();
+		List<Integer> edges = Lists.newArrayList();
+		for (int v = end; v != start; v = graph.opposite(previousEdge[v], v)) {
+			vertices.add(v);
+			edges.add(previousEdge[v]);
+		}
+		vertices.add(start);
+
+		int[] path = Ints.toArray(vertices);
+		int[] pathEdges = Ints.toArray(edges);
+		// collected from the end
+		reverse(path);
+		reverse(pathEdges);
+		return new DependencyPath(path, pathEdges);
+	}
+
+	private static void reverse(int[] values) {
+		for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+			int swap = values[i];
+			values[i] = values[j];
+			values[j] = swap;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+/**
+ * The parser producing the dependency annotations.
+ */
+public enum DependencySource {
+
+	/**
+	 * Basic dependencies of the Stanford parser, converted by the {@link StanfordUIMAAnnotator}.
+	 */
+	STANFORD,
+
+	/**
+	 * The ClearNLP dependency parser.
+	 */
+	CLEARNLP
+
+}
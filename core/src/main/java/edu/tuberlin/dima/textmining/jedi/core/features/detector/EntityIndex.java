@@ -0,0 +1,224 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import com.google.common.collect.Maps;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per document memo of what the extractors know about an entity: its tokens, its head and its subtree.
+ * <p>
+ * All of them only depend on the span of the entity, so entities are looked up by begin and end and annotations of
+ * different types share their entry. The annotations of the context are queried once per span.
+ * <p>
+ * The post processing may look up an entity on the calling thread while the sentence is still extracted, so the
+ * lookups are synchronized.
+ */
+public class EntityIndex {
+
+	private final ExtractionContext context;
+
+	private final CompactDependencyGraph graph;
+
+	private final Map<Long, Entry> entries = Maps.newHashMap();
+
+	public EntityIndex(ExtractionContext context) {
+		this.context = context;
+		this.graph = context.getGraph();
+	}
+
+	/**
+	 * What is known about a span.
+	 */
+	public class Entry {
+
+		private final List<Token> tokens;
+
+		/** begin of the first and end of the last token */
+		private final int begin;
+		private final int end;
+
+		private final Token head;
+		private final int headVertex;
+
+		private List<Token> subTree;
+		private BitSet subTreeVertices;
+
+		private SubTreeIndex subTreeIndex;
+		private int[] subTreeIntervals;
+		private int subTreeLastBegin;
+
+		private Entry(EntitySpan span) {
+			List<Token> covered = context.selectCovered(Token.class, span);
+			if (covered.isEmpty()) {
+				covered = context.selectCovering(Token.class, span);
+			}
+			this.tokens = covered;
+
+			int tokenBegin = Integer.MAX_VALUE;
+			int tokenEnd = Integer.MIN_VALUE;
+			for (Token token : tokens) {
+				tokenBegin = Math.min(tokenBegin, token.getBegin());
+				tokenEnd = Math.max(tokenEnd, token.getEnd());
+			}
+			this.begin = tokenBegin;
+			this.end = tokenEnd;
+
+			this.head = findHead();
+			this.headVertex = graph.indexOf(head);
+		}
+
+		/**
+		 * Simplified head finding rule: the first token with an edge from outside of the span, or else the token
+		 * that only governs others.
+		 */
+		private Token findHead() {
+			Token candidate = null;
+
+			for (Token token : tokens) {
+
+				int vertex = graph.indexOf(token);
+				if (vertex < 0) {
+					continue;
+				}
+
+				int inDegree = 0;
+				int outDegree = 0;
+
+				for (int i = graph.edgeStart(vertex); i < graph.edgeEnd(vertex); i++) {
+					int edge = graph.edgeAt(i);
+					// check if source of edge is in the token list
+					if (!covers(graph.governor(edge))) {
+						// this links comes from "outside" so assume we are the head
+						return token;
+					}
+
+					if (graph.governor(edge) == vertex) {
+						outDegree++;
+					} else {
+						inDegree++;
+					}
+				}
+				if (inDegree == 0 && outDegree > 0) {
+					candidate = token;
+				}
+			}
+
+			if (candidate == null) {
+				return tokens.isEmpty() ? null : tokens.get(0);
+			}
+			return candidate;
+		}
+
+		/**
+		 * @return the tokens covered by the span, or the tokens covering it if there are none
+		 */
+		public List<Token> getTokens() {
+			return tokens;
+		}
+
+		/**
+		 * @return the head token, null if the span has no tokens
+		 */
+		public Token getHead() {
+			return head;
+		}
+
+		/**
+		 * @return the vertex of the head, -1 if it is not part of the dependency graph
+		 */
+		public int getHeadVertex() {
+			return headVertex;
+		}
+
+		/**
+		 * @return true if the vertex is one of the tokens of the span
+		 */
+		public boolean covers(int vertex) {
+			return graph.begin(vertex) >= begin && graph.end(vertex) <= end;
+		}
+
+		/**
+		 * @return the subtree set by {@link #setSubTree(List)}, null if it has not been computed yet
+		 */
+		public List<Token> getSubTree() {
+			return subTree;
+		}
+
+		public void setSubTree(List<Token> subTree) {
+			this.subTree = subTree;
+			this.subTreeVertices = new BitSet(graph.size());
+			for (Token token : subTree) {
+				int vertex = graph.indexOf(token);
+				if (vertex >= 0) {
+					subTreeVertices.set(vertex);
+				}
+			}
+		}
+
+		/**
+		 * Sets a subtree that was read off a {@link SubTreeIndex}.
+		 *
+		 * @param subTree   the tokens of the subtree ordered by begin, possibly cut at the end
+		 * @param index     the index the subtree was read from
+		 * @param intervals the intervals of the index covering the subtree before it was cut
+		 */
+		public void setSubTree(List<Token> subTree, SubTreeIndex index, int[] intervals) {
+			this.subTree = subTree;
+			this.subTreeIndex = index;
+			this.subTreeIntervals = intervals;
+			this.subTreeLastBegin = subTree.isEmpty() ? Integer.MIN_VALUE : subTree.get(subTree.size() - 1).getBegin();
+		}
+
+		/**
+		 * @return true if the token is part of the subtree
+		 */
+		public boolean inSubTree(Token token) {
+			int vertex = graph.indexOf(token);
+			if (vertex < 0) {
+				// tokens without dependencies can only be found in the list
+				return subTree.contains(token);
+			}
+			if (subTreeIndex != null) {
+				// tokens cut from the end of the subtree are still within the intervals
+				return graph.begin(vertex) <= subTreeLastBegin && subTreeIndex.contains(subTreeIntervals, vertex);
+			}
+			return subTreeVertices.get(vertex);
+		}
+	}
+
+	/**
+	 * @param annotation an annotation of the document
+	 * @return the entry of its span
+	 */
+	public synchronized Entry get(Annotation annotation) {
+		long key = key(annotation.getBegin(), annotation.getEnd());
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(new EntitySpan(annotation));
+			entries.put(key, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * @param span an entity, possibly without an annotation yet
+	 * @return the entry of its span
+	 */
+	public synchronized Entry get(EntitySpan span) {
+		long key = key(span.getBegin(), span.getEnd());
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(span);
+			entries.put(key, entry);
+		}
+		return entry;
+	}
+
+	private static long key(int begin, int end) {
+		return ((long) begin << 32) | (end & 0xffffffffL);
+	}
+}
@@ -0,0 +1,55 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import com.google.common.base.Preconditions;
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * An entity found by an extractor, an annotation or just the offsets of one that is yet to be created.
+ * <p>
+ * The sentences of a document may be extracted on other threads, which must not create annotations. They find their
+ * entities as spans and the annotations are created on the calling thread, see {@link ExtractionContext#annotate}.
+ */
+public class EntitySpan {
+
+	private final int begin;
+
+	private final int end;
+
+	private Annotation annotation;
+
+	public EntitySpan(Annotation annotation) {
+		this.begin = annotation.getBegin();
+		this.end = annotation.getEnd();
+		this.annotation = annotation;
+	}
+
+	public EntitySpan(int begin, int end) {
+		this.begin = begin;
+		this.end = end;
+	}
+
+	public int getBegin() {
+		return begin;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return the annotation of the span, null if it has not been created yet
+	 */
+	public Annotation getAnnotation() {
+		return annotation;
+	}
+
+	void setAnnotation(Annotation annotation) {
+		Preconditions.checkArgument(annotation.getBegin() == begin && annotation.getEnd() == end, "The annotation does not match the span");
+		this.annotation = annotation;
+	}
+
+	@Override
+	public String toString() {
+		return "EntitySpan[" + begin + ", " + end + "]";
+	}
+}
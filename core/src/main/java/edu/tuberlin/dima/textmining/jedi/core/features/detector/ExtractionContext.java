@@ -0,0 +1,346 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per document state of a single feature extraction run.
+ * <p>
+ * A context is created for every call to {@link AbstractShortestPathFeatureExtractor#exec(JCas)} and passed
+ * through the extraction methods, so a single extractor instance can be shared between threads. A context can be
+ * limited to a scope like a sentence, then the extractors only see the annotations within it.
+ * <p>
+ * The extractors query the annotations through the context. A limited context reads the annotations of its scope
+ * up front, so the scopes of a document can be extracted in parallel without reading the indexes of the CAS. The
+ * covered text and the part of speech of its tokens are read up front as well, as they are feature structures of the
+ * CAS too. Annotations are only created on the calling thread, see {@link #annotate(EntitySpan)}.
+ */
+public class ExtractionContext {
+
+	private final JCas jCas;
+
+	private final CompactDependencyGraph graph;
+
+	private final DependencyPaths paths;
+
+	private final EntityIndex entities;
+
+	private final Annotation scope;
+
+	private final String text;
+
+	/** the most annotations after the scope {@link #selectFollowing(Class, Annotation, int)} can reach */
+	static final int FOLLOWING = 3;
+
+	/** the annotations within the scope and the first ones after it, by type */
+	private final Map<Class<? extends Annotation>, List<Annotation>> covered = Maps.newHashMap();
+	private final Map<Class<? extends Annotation>, List<Annotation>> following = Maps.newHashMap();
+
+	/** the part of speech of the tokens read, by their span */
+	private final Map<Long, POS> partOfSpeech = Maps.newHashMap();
+
+	/**
+	 * Creates the context of a whole document, the annotations are selected from the CAS.
+	 */
+	public ExtractionContext(JCas jCas, CompactDependencyGraph graph) {
+		this.jCas = jCas;
+		this.scope = null;
+		this.text = jCas.getDocumentText();
+		this.graph = graph;
+		this.paths = new DependencyPaths(graph);
+		this.entities = new EntityIndex(this);
+	}
+
+	/**
+	 * Creates a context limited to a part of the document and reads the annotations of the given types within it.
+	 *
+	 * @param scope the part of the document to extract from
+	 * @param types the annotation types the extraction selects
+	 */
+	public ExtractionContext(JCas jCas, CompactDependencyGraph graph, Annotation scope, Collection<Class<? extends Annotation>> types) {
+		this.jCas = jCas;
+		this.scope = Preconditions.checkNotNull(scope);
+		this.text = jCas.getDocumentText();
+		this.graph = graph;
+		this.paths = new DependencyPaths(graph);
+		this.entities = new EntityIndex(this);
+
+		for (Class<? extends Annotation> type : types) {
+			covered.put(type, Lists.<Annotation>newArrayList(JCasUtil.selectCovered(type, scope)));
+			following.put(type, Lists.<Annotation>newArrayList(JCasUtil.selectFollowing(type, scope, FOLLOWING)));
+		}
+		if (covered.containsKey(Token.class)) {
+			for (Token token : Iterables.concat(read(Token.class, covered), read(Token.class, following))) {
+				if (token.getPos() != null) {
+					partOfSpeech.put(key(token.getBegin(), token.getEnd()), token.getPos());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the document under analysis
+	 */
+	public JCas getjCas() {
+		return jCas;
+	}
+
+	/**
+	 * @return the dependency graph of the document
+	 */
+	public CompactDependencyGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the paths between the tokens of the dependency graph
+	 */
+	public DependencyPaths getPaths() {
+		return paths;
+	}
+
+	/**
+	 * @return the tokens, heads and subtrees of the entities seen so far
+	 */
+	public EntityIndex getEntities() {
+		return entities;
+	}
+
+	/**
+	 * @return the annotation the extraction is limited to, null for the whole document
+	 */
+	public Annotation getScope() {
+		return scope;
+	}
+
+	/**
+	 * @param type the annotation type
+	 * @return the annotations of the type within the scope
+	 */
+	public <T extends Annotation> Collection<T> select(Class<T> type) {
+		return scope == null ? JCasUtil.select(jCas, type) : read(type, covered);
+	}
+
+	/**
+	 * @return the annotations of the type within the annotation, as {@link JCasUtil#selectCovered}
+	 */
+	public <T extends Annotation> List<T> selectCovered(Class<T> type, Annotation annotation) {
+		if (scope == null) {
+			return JCasUtil.selectCovered(type, annotation);
+		}
+		return covered(type, annotation.getBegin(), annotation.getEnd(), annotation);
+	}
+
+	/**
+	 * @return the annotations of the type within the span, as {@link #selectCovered(Class, Annotation)}
+	 */
+	public <T extends Annotation> List<T> selectCovered(Class<T> type, EntitySpan span) {
+		if (span.getAnnotation() != null) {
+			return selectCovered(type, span.getAnnotation());
+		}
+		return covered(type, span.getBegin(), span.getEnd(), null);
+	}
+
+	private <T extends Annotation> List<T> covered(Class<T> type, int begin, int end, Annotation annotation) {
+		List<T> selected = Lists.newArrayList();
+		for (T candidate : read(type, covered)) {
+			if (candidate.getBegin() > end) {
+				break;
+			}
+			if (candidate.getBegin() >= begin && candidate.getEnd() <= end && !candidate.equals(annotation)) {
+				selected.add(candidate);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @return the annotations of the type covering the annotation, as {@link JCasUtil#selectCovering}
+	 */
+	public <T extends Annotation> List<T> selectCovering(Class<T> type, Annotation annotation) {
+		if (scope == null) {
+			return JCasUtil.selectCovering(type, annotation);
+		}
+		// like JCasUtil, an annotation of the type covers itself
+		return covering(type, annotation.getBegin(), annotation.getEnd());
+	}
+
+	/**
+	 * @return the annotations of the type covering the span, as {@link #selectCovering(Class, Annotation)}
+	 */
+	public <T extends Annotation> List<T> selectCovering(Class<T> type, EntitySpan span) {
+		if (span.getAnnotation() != null) {
+			return selectCovering(type, span.getAnnotation());
+		}
+		return covering(type, span.getBegin(), span.getEnd());
+	}
+
+	private <T extends Annotation> List<T> covering(Class<T> type, int begin, int end) {
+		List<T> selected = Lists.newArrayList();
+		for (T candidate : read(type, covered)) {
+			if (candidate.getBegin() > begin) {
+				break;
+			}
+			if (candidate.getEnd() >= end) {
+				selected.add(candidate);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @param count the number of annotations, at most {@link #FOLLOWING} in a limited context
+	 * @return the annotations of the type after the annotation, as {@link JCasUtil#selectFollowing}
+	 */
+	public <T extends Annotation> List<T> selectFollowing(Class<T> type, Annotation annotation, int count) {
+		if (scope == null) {
+			return JCasUtil.selectFollowing(type, annotation, count);
+		}
+		return following(type, annotation.getEnd(), annotation, count);
+	}
+
+	/**
+	 * @return the annotations of the type after the span, as {@link #selectFollowing(Class, Annotation, int)}
+	 */
+	public <T extends Annotation> List<T> selectFollowing(Class<T> type, EntitySpan span, int count) {
+		if (span.getAnnotation() != null) {
+			return selectFollowing(type, span.getAnnotation(), count);
+		}
+		return following(type, span.getEnd(), null, count);
+	}
+
+	private <T extends Annotation> List<T> following(Class<T> type, int end, Annotation annotation, int count) {
+		Preconditions.checkArgument(count <= FOLLOWING, "Only %s annotations after the scope are read", FOLLOWING);
+		List<T> selected = Lists.newArrayList();
+		for (T candidate : Iterables.concat(read(type, covered), read(type, following))) {
+			if (selected.size() == count) {
+				break;
+			}
+			if (candidate.getBegin() >= end && !candidate.equals(annotation)) {
+				selected.add(candidate);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @return the annotations of the type between the two annotations, as {@link JCasUtil#selectBetween}
+	 */
+	public <T extends Annotation> List<T> selectBetween(Class<T> type, Annotation annotation1, Annotation annotation2) {
+		if (scope == null) {
+			return JCasUtil.selectBetween(type, annotation1, annotation2);
+		}
+		// the order of the two annotations does not matter
+		Annotation left = annotation1.getEnd() > annotation2.getBegin() ? annotation2 : annotation1;
+		Annotation right = left == annotation1 ? annotation2 : annotation1;
+
+		List<T> selected = Lists.newArrayList();
+		for (T candidate : read(type, covered)) {
+			if (candidate.getBegin() > right.getBegin()) {
+				break;
+			}
+			if (candidate.getBegin() >= left.getEnd() && candidate.getEnd() <= right.getBegin()) {
+				selected.add(candidate);
+			}
+		}
+		return selected;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends Annotation> List<T> read(Class<T> type, Map<Class<? extends Annotation>, List<Annotation>> annotations) {
+		List<Annotation> read = annotations.get(type);
+		Preconditions.checkArgument(read != null, "%s was not read for the scope", type.getName());
+		return (List<T>) read;
+	}
+
+	/**
+	 * @return the text covered by the annotation, without reading the CAS
+	 */
+	public String getCoveredText(Annotation annotation) {
+		return text.substring(annotation.getBegin(), annotation.getEnd());
+	}
+
+	/**
+	 * @return the text covered by the span
+	 */
+	public String getCoveredText(EntitySpan span) {
+		return text.substring(span.getBegin(), span.getEnd());
+	}
+
+	/**
+	 * @param annotation a token or the part of speech annotated on it
+	 * @return the type of the part of speech, null if the token has none
+	 */
+	public Class<? extends POS> getPosType(Annotation annotation) {
+		POS pos = getPos(annotation);
+		return pos == null ? null : pos.getClass();
+	}
+
+	/**
+	 * @param annotation a token or the part of speech annotated on it
+	 * @return the value of the part of speech, null if the token has none
+	 */
+	public String getPosValue(Annotation annotation) {
+		POS pos = getPos(annotation);
+		return pos == null ? null : pos.getPosValue();
+	}
+
+	private POS getPos(Annotation annotation) {
+		if (scope != null) {
+			// the tokens of a limited context were read up front
+			return partOfSpeech.get(key(annotation.getBegin(), annotation.getEnd()));
+		}
+		if (annotation instanceof POS) {
+			return (POS) annotation;
+		}
+		return annotation instanceof Token ? ((Token) annotation).getPos() : null;
+	}
+
+	private static long key(int begin, int end) {
+		return ((long) begin << 32) | (end & 0xffffffffL);
+	}
+
+	/**
+	 * Creates an annotation that is not added to the indexes.
+	 * <p>
+	 * Creating an annotation writes to the CAS, so it must only be called on the thread the document is extracted on.
+	 */
+	public Annotation newAnnotation(int begin, int end) {
+		return new Annotation(jCas, begin, end);
+	}
+
+	/**
+	 * Creates a span for an entity found by an extractor. The entities of a whole document are annotated right away,
+	 * those of a limited context once they are passed to {@link #annotate(EntitySpan)}.
+	 */
+	public EntitySpan newSpan(int begin, int end) {
+		if (scope == null) {
+			return new EntitySpan(newAnnotation(begin, end));
+		}
+		return new EntitySpan(begin, end);
+	}
+
+	/**
+	 * Creates the annotation of the span, unless it already has one. Like {@link #newAnnotation(int, int)}, it must
+	 * only be called on the thread the document is extracted on.
+	 *
+	 * @return the annotation of the span
+	 */
+	public Annotation annotate(EntitySpan span) {
+		if (span.getAnnotation() == null) {
+			span.setAnnotation(newAnnotation(span.getBegin(), span.getEnd()));
+		}
+		return span.getAnnotation();
+	}
+}
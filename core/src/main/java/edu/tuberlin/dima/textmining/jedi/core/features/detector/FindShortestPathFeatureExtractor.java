@@ -5,23 +5,20 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.*;
-import com.google.common.primitives.Ints;
 import de.tudarmstadt.ukp.dkpro.core.api.coref.type.CoreferenceChain;
 import de.tudarmstadt.ukp.dkpro.core.api.coref.type.CoreferenceLink;
 import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.*;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import edu.tuberlin.dima.textmining.jedi.core.model.FoundFeature;
-import edu.tuberlin.dima.textmining.jedi.core.util.StringComparision;
+import edu.tuberlin.dima.textmining.jedi.core.util.SimilarMentionIndex;
 import org.apache.commons.lang.StringUtils;
 import org.apache.uima.UIMAException;
 import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.jgrapht.DirectedGraph;
-import org.jgrapht.GraphPath;
-import org.jgrapht.Graphs;
-import org.jgrapht.UndirectedGraph;
-import org.jgrapht.alg.DijkstraShortestPath;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.SimpleDirectedGraph;
 
@@ -67,213 +64,229 @@ public class FindShortestPathFeatureExtractor extends AbstractShortestPathFeatur
 		}
 	}
 
+	private static final Comparator<EntitySpan> BY_SPAN = new Comparator<EntitySpan>() {
+		@Override
+		public int compare(EntitySpan o1, EntitySpan o2) {
+			return ComparisonChain.start().compare(o1.getBegin(), o2.getBegin()).compare(o1.getEnd(), o2.getEnd()).result();
+		}
+	};
+
 	/**
-	 * Extract the shortest paths along the dependency parse
-	 * between every two named entities recognized.
-	 *
-	 * @param graph the dependency graph
-	 * @return list of found features with entity_pair and pattern
-	 * with the shortest path as pattern
+	 * The entities found in a part of the document.
 	 */
-	@Override
-	public List<FoundFeature<Annotation>> getShortestPaths(final UndirectedGraph<Token, DependencyEdge> graph) {
+	private static class Part {
 
-		List<FoundFeature<Annotation>> dataBag = Lists.newArrayList();
+		private final ExtractionContext context;
 
-		List<Annotation> namedEntities = Lists.newArrayList(JCasUtil.select(getjCas(), getSelectionType()));
-		if (getAdditionalSelectionType() != null) {
-			// add additional selection types
-			namedEntities.addAll(JCasUtil.select(getjCas(), getAdditionalSelectionType()));
-		}
-		// remove NNS  & PRP
-		final Iterator<Annotation> iterator = namedEntities.iterator();
-		while (iterator.hasNext()) {
-			final Annotation next = iterator.next();
-			if (next instanceof NN) {
-				NN c = (NN) next;
-				if (c.getPosValue().equals("NNS")) {
-					iterator.remove();
-				}
-			} else if (next instanceof PR) {
-				PR pr = (PR) next;
-				// only proper pronouns he she it ...
-				if (pr.getPosValue().equals("PRP$")) {
-					iterator.remove();
-				}
+		/** the entities of the selection type, or the entities of both types expanded by similar tokens */
+		private final List<EntitySpan> entities = Lists.newArrayList();
+		/** the entities of the additional selection type */
+		private final List<EntitySpan> additional = Lists.newArrayList();
+		/** the entities split at a break of their part of speech */
+		private final List<EntitySpan> splits = Lists.newArrayList();
 
-			}
-		}
-		if (namedEntities == null || namedEntities.size() == 1) {
-			return dataBag;
+		/** the entities including those linked by coreferences, ordered by their begin once the parts are linked */
+		private List<Annotation> namedEntities;
+
+		private Part(ExtractionContext context) {
+			this.context = context;
 		}
+	}
 
-		if (isPickupSimilar()) {
+	@Override
+	protected DocumentExtraction<?> newExtraction() {
+		return new Extraction();
+	}
+
+	/**
+	 * Extract the shortest paths along the dependency parse
+	 * between every two named entities recognized.
+	 * <p>
+	 * The entities are found per part, then linked by the coreferences and similar mentions of the whole document.
+	 * The paths are extracted per part again and a linked entity replaces its mention in the features.
+	 */
+	private class Extraction extends DocumentExtraction<Part> {
 
-			Set<String> linkDependencyTypes = Sets.newHashSet("nn", "amod");
-			Set<String> connectingWords = Sets.newHashSet("of", "de");
-			Set<String> skipWords = Sets.newHashSet("son", "AP");
+		private final DirectedGraph<Annotation, DefaultEdge> coref = new SimpleDirectedGraph<>(DefaultEdge.class);
 
-			// get all tokens
-			Comparator<Annotation> c = new Comparator<Annotation>() {
-				@Override
-				public int compare(Annotation o1, Annotation o2) {
-					return ComparisonChain.start().compare(o1.getBegin(), o2.getBegin()).compare(o1.getEnd(), o2.getEnd()).result();
+		/** set if the document has a single entity, which has no pair */
+		private boolean single;
+
+		@Override
+		protected Part find(final ExtractionContext context) {
+
+			final CompactDependencyGraph graph = context.getGraph();
+
+			final Part part = new Part(context);
+			for (Annotation entity : context.select(getSelectionType())) {
+				if (!isExcluded(entity, context.getPosValue(entity))) {
+					part.entities.add(new EntitySpan(entity));
+				}
+			}
+			if (getAdditionalSelectionType() != null) {
+				// add additional selection types
+				for (Annotation entity : context.select(getAdditionalSelectionType())) {
+					if (!isExcluded(entity, context.getPosValue(entity))) {
+						part.additional.add(new EntitySpan(entity));
+					}
 				}
-			};
-			Set<Annotation> newNamedEntities = Sets.newHashSet();
-			// expand ?
+			}
+
+			if (isPickupSimilar()) {
 
-			for (Annotation namedEntity : namedEntities) {
+				Set<String> linkDependencyTypes = Sets.newHashSet("nn", "amod");
+				Set<String> connectingWords = Sets.newHashSet("of", "de");
+				Set<String> skipWords = Sets.newHashSet("son", "AP");
 
 				// get all tokens
-				List<Token> tokens = JCasUtil.selectCovered(Token.class, namedEntity);
-				if (tokens.size() == 0) {
-					tokens = JCasUtil.selectCovering(Token.class, namedEntity);
-				}
+				Comparator<Annotation> c = new Comparator<Annotation>() {
+					@Override
+					public int compare(Annotation o1, Annotation o2) {
+						return ComparisonChain.start().compare(o1.getBegin(), o2.getBegin()).compare(o1.getEnd(), o2.getEnd()).result();
+					}
+				};
+				List<EntitySpan> newNamedEntities = Lists.newArrayList();
+				// expand ?
 
-				List<Token> newTokens = Lists.newArrayList(tokens);
+				for (EntitySpan namedEntity : Iterables.concat(part.entities, part.additional)) {
 
-				boolean change;
+					// expand the tokens of the entity breadth first, every token is visited once
+					final List<Token> tokens = Lists.newArrayList(context.getEntities().get(namedEntity).getTokens());
+					final Set<Token> members = Sets.newHashSet(tokens);
 
-				do {
-					change = false;
-					tokens = Lists.newArrayList(newTokens);
-					for (Token token : tokens) {
+					for (int next = 0; next < tokens.size(); next++) {
+						final Token token = tokens.get(next);
 
-						if (!graph.containsVertex(token)) {
+						final int vertex = graph.indexOf(token);
+						if (vertex < 0) {
 							continue;
 						}
 
-						if (skipWords.contains(token.getCoveredText())) {
+						if (skipWords.contains(context.getCoveredText(token))) {
 							continue;
 						}
 
-						for (final DependencyEdge dependencyEdge : graph.edgesOf(token)) {
+						for (int i = graph.edgeStart(vertex); i < graph.edgeEnd(vertex); i++) {
+							final int dependencyEdge = graph.edgeAt(i);
+							final Token from = graph.token(graph.governor(dependencyEdge));
+							final Token to = graph.token(graph.dependent(dependencyEdge));
+							final String dependency = graph.label(dependencyEdge);
 							// check if source of edge is in the token list
 
-							if (dependencyEdge.getTo().equals(token)) {
+							if (to.equals(token)) {
 								// the token is the target
 								// check the source
 								// get the dependency for that token
-								if (linkDependencyTypes.contains(dependencyEdge.getDependency())) {
+								if (linkDependencyTypes.contains(dependency)) {
 									// this belong in the ring as well
-									if (!newTokens.contains(dependencyEdge.getFrom())
-										&& getSelectionType().isAssignableFrom(dependencyEdge.getFrom().getPos().getClass())
-										&& !dependencyEdge.getTo().getPos().getClass().equals(PR.class)
-										&& !dependencyEdge.getFrom().getPos().getPosValue().equals("NNS")
-										&& !"AP".equals(dependencyEdge.getFrom().getCoveredText())) {
-										newTokens.add(dependencyEdge.getFrom());
-										change = true;
+									if (!members.contains(from)
+										&& getSelectionType().isAssignableFrom(context.getPosType(from))
+										&& !context.getPosType(to).equals(PR.class)
+										&& !context.getPosValue(from).equals("NNS")
+										&& !"AP".equals(context.getCoveredText(from))) {
+										add(tokens, members, from);
 									}
 								}
 
-/*                                if (dependencyEdge.dependency.equals("pobj")) {
-									if (!newTokens.contains(dependencyEdge.getFrom()) && PP.class.isAssignableFrom(dependencyEdge.getFrom().getPos().getClass()) && ("of".equals(dependencyEdge.getFrom().getCoveredText()) || "de".equals(dependencyEdge.getFrom().getCoveredText()))) {
-
-                                        // now the
-                                        // incoming arch from the dependency
-                                        final Set<DependencyEdge> dependencyEdges = graph.edgesOf(dependencyEdge.getFrom());
-
-                                        final Optional<DependencyEdge> dependencyEdgeOptional = Iterables.tryFind(dependencyEdges, new Predicate<DependencyEdge>() {
-                                            @Override
-                                            public boolean apply(@Nullable DependencyEdge input) {
-                                                return !input.equals(dependencyEdge);
-                                            }
-                                        });
-                                        // now the next incoming needs to be NNP not just NOUN to make any sense .. heuristic
-                                        final boolean assignableFromNP = NP.class.isAssignableFrom(dependencyEdgeOptional.get().from.getPos().getClass());
-                                        final boolean assignableFromNN = NN.class.isAssignableFrom(dependencyEdgeOptional.get().from.getPos().getClass());
-
-                                        if(dependencyEdgeOptional.isPresent() && (assignableFromNP || assignableFromNN) && !dependencyEdgeOptional.get().from.getCoveredText().equalsIgnoreCase("graduate")) {
-                                            newTokens.add(dependencyEdge.getFrom());
-                                            newTokens.add(dependencyEdgeOptional.get().from);
-                                            change = true;
-                                        }
-                                    }
-                                }
-                                */
-							} else if (dependencyEdge.getFrom().equals(token)) {
-								if (linkDependencyTypes.contains(dependencyEdge.getDependency())) {
+	/*                                if (dependencyEdge.dependency.equals("pobj")) {
+									if (!newTokens.contains(from) && PP.class.isAssignableFrom(context.getPosType(from)) && ("of".equals(context.getCoveredText(from)) || "de".equals(context.getCoveredText(from)))) {
+
+	                                        // now the
+	                                        // incoming arch from the dependency
+	                                        final Set<DependencyEdge> dependencyEdges = graph.edgesOf(from);
+
+	                                        final Optional<DependencyEdge> dependencyEdgeOptional = Iterables.tryFind(dependencyEdges, new Predicate<DependencyEdge>() {
+	                                            @Override
+	                                            public boolean apply(@Nullable DependencyEdge input) {
+	                                                return !input.equals(dependencyEdge);
+	                                            }
+	                                        });
+	                                        // now the next incoming needs to be NNP not just NOUN to make any sense .. heuristic
+	                                        final boolean assignableFromNP = NP.class.isAssignableFrom(dependencyEdgeOptional.get().context.getPosType(from));
+	                                        final boolean assignableFromNN = NN.class.isAssignableFrom(dependencyEdgeOptional.get().context.getPosType(from));
+
+	                                        if(dependencyEdgeOptional.isPresent() && (assignableFromNP || assignableFromNN) && !dependencyEdgeOptional.get().context.getCoveredText(from).equalsIgnoreCase("graduate")) {
+	                                            newTokens.add(from);
+	                                            newTokens.add(dependencyEdgeOptional.get().from);
+	                                            change = true;
+	                                        }
+	                                    }
+	                                }
+	                                */
+							} else if (from.equals(token)) {
+								if (linkDependencyTypes.contains(dependency)) {
 									// this belong in the ring as well
-									if (!newTokens.contains(dependencyEdge.getTo())
-										&& getSelectionType().isAssignableFrom(dependencyEdge.getTo().getPos().getClass())
-										&& !dependencyEdge.getTo().getPos().getPosValue().equals("NNS")
-										&& !"AP".equals(dependencyEdge.getTo().getCoveredText())) {
-										newTokens.add(dependencyEdge.getTo());
-										change = true;
+									if (!members.contains(to)
+										&& getSelectionType().isAssignableFrom(context.getPosType(to))
+										&& !context.getPosValue(to).equals("NNS")
+										&& !"AP".equals(context.getCoveredText(to))) {
+										add(tokens, members, to);
 									}
 								}
-								if ("appos".equals(dependencyEdge.getDependency()) && !newTokens.contains(dependencyEdge.getTo()) && getSelectionType().isAssignableFrom(dependencyEdge.getTo().getPos().getClass())) {
+								if ("appos".equals(dependency) && !members.contains(to) && getSelectionType().isAssignableFrom(context.getPosType(to))) {
 									// check: He was born in Birmingham, Alabama, USA.
 									// NNP , NNP
-									List<Token> following = JCasUtil.selectFollowing(Token.class, token, 3);
-									Token to = dependencyEdge.getTo();
-									Token from = dependencyEdge.getFrom();
-									if (",".equals(following.get(0).getCoveredText()) && (to.equals(following.get(1)) || to.equals(following.get(2))) && to.getPos().getPosValue().equals("NNP") && from.getPos().getPosValue().equals("NNP")) {
-										newTokens.add(dependencyEdge.getTo());
-										change = true;
+									List<Token> following = context.selectFollowing(Token.class, token, 3);
+									if (",".equals(context.getCoveredText(following.get(0))) && (to.equals(following.get(1)) || to.equals(following.get(2))) && context.getPosValue(to).equals("NNP") && context.getPosValue(from).equals("NNP")) {
+										add(tokens, members, to);
 									}
 								}
 
-								if ("conj".equals(dependencyEdge.getDependency()) && !newTokens.contains(dependencyEdge.getTo()) && getSelectionType().isAssignableFrom(dependencyEdge.getTo().getPos().getClass())) {
+								if ("conj".equals(dependency) && !members.contains(to) && getSelectionType().isAssignableFrom(context.getPosType(to))) {
 									// check: Niculiţă studied at the Faculty of History, University of Chişinău,
 									// NNP , University
-									List<Token> following = JCasUtil.selectFollowing(Token.class, token, 2);
-									if (",".equals(following.get(0).getCoveredText()) && dependencyEdge.getTo().equals(following.get(1)) && "University".equals(dependencyEdge.getTo().getCoveredText())) {
-										newTokens.add(dependencyEdge.getTo());
-										change = true;
+									List<Token> following = context.selectFollowing(Token.class, token, 2);
+									if (",".equals(context.getCoveredText(following.get(0))) && to.equals(following.get(1)) && "University".equals(context.getCoveredText(to))) {
+										add(tokens, members, to);
 										// Black & Decker
-									} else if ("&".equals(following.get(0).getCoveredText()) && dependencyEdge.getTo().equals(following.get(1))) {
-										newTokens.add(dependencyEdge.getTo());
-										change = true;
+									} else if ("&".equals(context.getCoveredText(following.get(0))) && to.equals(following.get(1))) {
+										add(tokens, members, to);
 									}
 								}
 
 								// now check if there is something like this
 								// University of Pennsylvania
 								// but accept only "of" not anything else ...
-								if ("prep".equals(dependencyEdge.getDependency())) {
+								if ("prep".equals(dependency)) {
 									// University of Pennsylvania
-									List<Token> following = JCasUtil.selectFollowing(Token.class, token, 1);
-									if (connectingWords.contains(following.get(0).getCoveredText()) && dependencyEdge.getTo().equals(following.get(0)) && !newTokens.contains(dependencyEdge.getTo())) {
+									List<Token> following = context.selectFollowing(Token.class, token, 1);
+									if (connectingWords.contains(context.getCoveredText(following.get(0))) && to.equals(following.get(0)) && !members.contains(to)) {
 
 										// now demand that the next ones are linked via pobj
 
 										// now the
 										// incoming arch from the dependency
-										final Set<DependencyEdge> dependencyEdges = graph.edgesOf(dependencyEdge.getTo());
-
-										final Optional<DependencyEdge> dependencyEdgeOptional = Iterables.tryFind(dependencyEdges, new Predicate<DependencyEdge>() {
-											@Override
-											public boolean apply(@Nullable DependencyEdge input) {
-												return !input.equals(dependencyEdge);
+										final int preposition = graph.dependent(dependencyEdge);
+										int edge = -1;
+										for (int j = graph.edgeStart(preposition); j < graph.edgeEnd(preposition) && edge < 0; j++) {
+											if (graph.edgeAt(j) != dependencyEdge) {
+												edge = graph.edgeAt(j);
 											}
-										});
+										}
 
-										if (!dependencyEdgeOptional.isPresent()) {
+										if (edge < 0) {
 											continue;
 										}
-										DependencyEdge edge = dependencyEdgeOptional.get();
+										final Token edgeFrom = graph.token(graph.governor(edge));
+										final Token edgeTo = graph.token(graph.dependent(edge));
 
 										// now the next incoming needs to be NNP not just NOUN to make any sense .. heuristic
 										// let the pos agree
-										final boolean posAgrees = edge.getTo().getPos().getPosValue().equals(dependencyEdge.getFrom().getPos().getPosValue());
-										final boolean posAgreesSlighty = edge.getTo().getPos().getPosValue().equals("NN") && dependencyEdge.getFrom().getPos().getPosValue().equals("NNS");
-										final boolean posAgreesSlighty2 = edge.getTo().getPos().getPosValue().equals("NNS") && dependencyEdge.getFrom().getPos().getPosValue().equals("NN");
-										final boolean posAgreesSlighty3 = edge.getTo().getPos().getPosValue().equals("NNS") && dependencyEdge.getFrom().getPos().getPosValue().equals("NNP");
-
-										boolean invalid = Iterables.any(graph.edgesOf(edge.getTo()), new Predicate<DependencyEdge>() {
-											@Override
-											public boolean apply(@Nullable DependencyEdge input) {
-												// allow conjunctions and also prepositions of the form of .. of
-												return !StringUtils.startsWithAny(input.getDependency(), new String[]{"pobj", "nn", "conj", "cc", "prep"});
-											}
-										});
+										final boolean posAgrees = context.getPosValue(edgeTo).equals(context.getPosValue(from));
+										final boolean posAgreesSlighty = context.getPosValue(edgeTo).equals("NN") && context.getPosValue(from).equals("NNS");
+										final boolean posAgreesSlighty2 = context.getPosValue(edgeTo).equals("NNS") && context.getPosValue(from).equals("NN");
+										final boolean posAgreesSlighty3 = context.getPosValue(edgeTo).equals("NNS") && context.getPosValue(from).equals("NNP");
+
+										boolean invalid = false;
+										final int object = graph.dependent(edge);
+										for (int j = graph.edgeStart(object); j < graph.edgeEnd(object) && !invalid; j++) {
+											// allow conjunctions and also prepositions of the form of .. of
+											invalid = !StringUtils.startsWithAny(graph.label(graph.edgeAt(j)), new String[]{"pobj", "nn", "conj", "cc", "prep"});
+										}
 
-										if (!invalid && "pobj".equals(edge.getDependency()) && following.get(0).equals(edge.getFrom()) && (posAgrees || posAgreesSlighty || posAgreesSlighty2 || posAgreesSlighty3)) {
-											newTokens.add(following.get(0));
-											newTokens.add(edge.getTo());
-											change = true;
+										if (!invalid && "pobj".equals(graph.label(edge)) && following.get(0).equals(edgeFrom) && (posAgrees || posAgreesSlighty || posAgreesSlighty2 || posAgreesSlighty3)) {
+											add(tokens, members, following.get(0));
+											add(tokens, members, edgeTo);
 										}
 
 
@@ -286,384 +299,405 @@ public class FindShortestPathFeatureExtractor extends AbstractShortestPathFeatur
 						}
 
 					}
-				} while (change);
 
-				// now we have a new named entity
-				Collections.sort(tokens, c);
+					// now we have a new named entity
+					Collections.sort(tokens, c);
 
-				final Token first = Iterables.getFirst(tokens, null);
-				final Token last = Iterables.getLast(tokens);
+					final Token first = Iterables.getFirst(tokens, null);
+					final Token last = Iterables.getLast(tokens);
 
-				final boolean any = Iterables.any(newNamedEntities, new Predicate<Annotation>() {
-					@Override
-					public boolean apply(@Nullable Annotation input) {
-						return (input.getBegin() == first.getBegin()) && (input.getEnd() == last.getEnd());
+					final boolean any = Iterables.any(newNamedEntities, new Predicate<EntitySpan>() {
+						@Override
+						public boolean apply(@Nullable EntitySpan input) {
+							return (input.getBegin() == first.getBegin()) && (input.getEnd() == last.getEnd());
+						}
+					});
+					if (!any) {
+						newNamedEntities.add(context.newSpan(first.getBegin(), last.getEnd()));
 					}
-				});
-				if (!any) {
-					newNamedEntities.add(new Annotation(getjCas(), first.getBegin(), last.getEnd()));
-				}
 
-			}
-			// now retain only the largest "spans"
-			namedEntities = Lists.newArrayList(newNamedEntities);
-			Collections.sort(namedEntities, c);
-			for (Iterator<? extends Annotation> it = namedEntities.iterator(); it.hasNext(); ) {
-				// now see if this element is contained in the following
-				final Annotation next = it.next();
-				boolean toDelete = false;
-				for (Annotation namedEntity : namedEntities) {
-					if (namedEntity != next) {
-						if (next.getBegin() >= namedEntity.getBegin() &&
-							next.getEnd() <= namedEntity.getEnd()) {
-							toDelete = true;
-							break;
+				}
+				// now retain only the largest "spans"
+				Collections.sort(newNamedEntities, BY_SPAN);
+				for (Iterator<EntitySpan> it = newNamedEntities.iterator(); it.hasNext(); ) {
+					// now see if this element is contained in the following
+					final EntitySpan next = it.next();
+					boolean toDelete = false;
+					for (EntitySpan namedEntity : newNamedEntities) {
+						if (namedEntity != next) {
+							if (next.getBegin() >= namedEntity.getBegin() &&
+								next.getEnd() <= namedEntity.getEnd()) {
+								toDelete = true;
+								break;
+							}
 						}
 					}
+					if (toDelete) {
+						it.remove();
+					}
 				}
-				if (toDelete) {
-					it.remove();
-				}
+				// the expanded entities replace those of both selection types
+				part.entities.clear();
+				part.additional.clear();
+				part.entities.addAll(newNamedEntities);
 			}
-		}
 
-		// now check that none of the entities are an appos of another ..
-		// this should void examples such as "A, a New York City group" .. to treat A new York city group
-		List<Annotation> splittedAnnotations = Lists.newArrayList();
-		for (Iterator<? extends Annotation> it = namedEntities.iterator(); it.hasNext(); ) {
+			// now check that none of the entities are an appos of another ..
+			// this should void examples such as "A, a New York City group" .. to treat A new York city group
+			for (Iterator<EntitySpan> it = Iterables.concat(part.entities, part.additional).iterator(); it.hasNext(); ) {
 
-			Annotation entity = it.next();
-			// get the head
-			final Token namedEntityHead = getNamedEntityHead(entity, graph);
+				EntitySpan entity = it.next();
+				// get the head
+				final int namedEntityHead = context.getEntities().get(entity).getHeadVertex();
 
-			if (!graph.containsVertex(namedEntityHead)) {
-				continue;
-			}
+				if (namedEntityHead < 0) {
+					continue;
+				}
 
-			// now check if the incoming edge is of type appos
-			final Optional<DependencyEdge> appos = Iterables.tryFind(graph.edgesOf(namedEntityHead), new Predicate<DependencyEdge>() {
-				@Override
-				public boolean apply(@Nullable DependencyEdge input) {
-					// allow conjunctions and also prepositions of the form of .. of
-					return input.getDependency().equals("appos") && input.getTo().equals(namedEntityHead);
+				// now check if the incoming edge is of type appos
+				int appos = -1;
+				for (int i = graph.edgeStart(namedEntityHead); i < graph.edgeEnd(namedEntityHead) && appos < 0; i++) {
+					int edge = graph.edgeAt(i);
+					if ("appos".equals(graph.label(edge)) && graph.dependent(edge) == namedEntityHead) {
+						appos = edge;
+					}
 				}
-			});
 
-			if (appos.isPresent()) {
-				// check if the source of the edge is actually part of a named entity that we know
-				final Token source = appos.get().getFrom();
-				boolean any = Iterables.any(namedEntities, new Predicate<Annotation>() {
-					@Override
-					public boolean apply(@Nullable Annotation input) {
-
-						final Token nextToFirst = Iterables.getFirst(JCasUtil.selectFollowing(Token.class, input, 1), null);
-						if (nextToFirst != null && nextToFirst.getPos().getClass().equals(O.class)) {
-							// quite likely something like Vanessa Chinitor (born 13 October 1976, Dendermonde)
-							return false;
-						} else {
-							return source.getBegin() >= input.getBegin() && source.getEnd() <= input.getEnd();
+				if (appos >= 0) {
+					// check if the source of the edge is actually part of a named entity that we know
+					final Token source = graph.token(graph.governor(appos));
+					boolean any = Iterables.any(Iterables.concat(part.entities, part.additional), new Predicate<EntitySpan>() {
+						@Override
+						public boolean apply(@Nullable EntitySpan input) {
+
+							final Token nextToFirst = Iterables.getFirst(context.selectFollowing(Token.class, input, 1), null);
+							if (nextToFirst != null && context.getPosType(nextToFirst).equals(O.class)) {
+								// quite likely something like Vanessa Chinitor (born 13 October 1976, Dendermonde)
+								return false;
+							} else {
+								return source.getBegin() >= input.getBegin() && source.getEnd() <= input.getEnd();
+							}
 						}
+					});
+
+					if (any) {
+						// remove the annotation
+						//it.remove();
+						continue;
 					}
-				});
+				}
+
+				// now check if the annotation has a break
+				List<POS> posList = context.selectCovered(POS.class, entity);
+				POS first = Iterables.getFirst(posList, null);
+				POS last = first;
+				Set<String> candidates = Sets.newHashSet("NNP", "NN");
 
-				if (any) {
-					// remove the annotation
-					//it.remove();
+				// count nnp and nn
+				Multiset<String> posCounts = HashMultiset.create();
+				for (POS pos : posList) {
+					posCounts.add(context.getPosValue(pos));
+				}
+				// do this only for longer chains
+				if (!(((posCounts.count("NNP") > 2) && posCounts.count("NN") >= 1) || ((posCounts.count("NNP") >= 1) && posCounts.count("NN") > 2))) {
 					continue;
 				}
-			}
 
-			// now check if the annotation has a break
-			List<POS> posList = JCasUtil.selectCovered(POS.class, entity);
-			POS first = Iterables.getFirst(posList, null);
-			POS last = first;
-			Set<String> candidates = Sets.newHashSet("NNP", "NN");
-
-			// count nnp and nn
-			Multiset<String> posCounts = HashMultiset.create();
-			for (POS pos : posList) {
-				posCounts.add(pos.getPosValue());
+				for (POS pos : posList) {
+					if (!context.getPosValue(first).equals(context.getPosValue(pos)) && candidates.contains(context.getPosValue(pos))) {
+						// potential break?
+						// we need to split the annotation into two
+						it.remove();
+						part.splits.add(context.newSpan(entity.getBegin(), last.getEnd()));
+						part.splits.add(context.newSpan(pos.getBegin(), entity.getEnd()));
+						break; // exit loop - don't split twice
+					}
+					last = pos;
+				}
 			}
-			// do this only for longer chains
-			if (!(((posCounts.count("NNP") > 2) && posCounts.count("NN") >= 1) || ((posCounts.count("NNP") >= 1) && posCounts.count("NN") > 2))) {
-				continue;
+			return part;
+		}
+
+		@Override
+		protected void link(final List<Part> parts) {
+			if (parts.isEmpty()) {
+				return;
 			}
+			final JCas jCas = parts.get(0).context.getjCas();
 
-			for (POS pos : posList) {
-				if (!first.getPosValue().equals(pos.getPosValue()) && candidates.contains(pos.getPosValue())) {
-					// potential break?
-					// we need to split the annotation into two
-					it.remove();
-					splittedAnnotations.add(new Annotation(getjCas(), entity.getBegin(), last.getEnd()));
-					splittedAnnotations.add(new Annotation(getjCas(), pos.getBegin(), entity.getEnd()));
-					break; // exit loop - don't split twice
+			// a single entity in the whole document has no pair
+			int entities = 0;
+			for (Annotation entity : Iterables.concat(selectAll(jCas, getSelectionType()), selectAll(jCas, getAdditionalSelectionType()))) {
+				if (!isExcluded(entity, entity instanceof POS ? ((POS) entity).getPosValue() : null)) {
+					entities++;
 				}
-				last = pos;
 			}
-		}
-		// re-add splitted
-		namedEntities.addAll(splittedAnnotations);
-
-		DirectedGraph<Annotation, DefaultEdge> coref = new SimpleDirectedGraph<>(DefaultEdge.class);
+			if (entities == 1) {
+				single = true;
+				return;
+			}
 
-		// check for co-reference links?
+			// the entities of the whole document in the order they are found in it, the coreferences pick the first match
+			final List<Annotation> namedEntities = Lists.newArrayList();
+			for (Part part : parts) {
+				part.namedEntities = Lists.newArrayList();
+				annotate(part, part.entities, namedEntities);
+			}
+			for (Part part : parts) {
+				annotate(part, part.additional, namedEntities);
+			}
+			for (Part part : parts) {
+				annotate(part, part.splits, namedEntities);
+			}
 
-		if (isResolveCoreferences()) {
+			// check for co-reference links?
 
-			for (CoreferenceChain coreferenceChain : JCasUtil.select(getjCas(), CoreferenceChain.class)) {
+			if (isResolveCoreferences()) {
 
-				final CoreferenceLink first = coreferenceChain.getFirst();
+				for (CoreferenceChain coreferenceChain : JCasUtil.select(jCas, CoreferenceChain.class)) {
 
-				// this is the token ...
-				final Token entityHead = getNamedEntityHead(first, graph);
-				// final Annotation sourceleft = Iterables.getFirst(annotations, null);
+					final CoreferenceLink first = coreferenceChain.getFirst();
 
-				// if we don't have the specific target annotation as a marker, just skip
-				// this will prevent linking to pronouns that we are for example not interested in
-				// check if we just have a number
-				if (entityHead == null || entityHead.getPos().getClass().equals(CARD.class) || entityHead.getPos().getClass().equals(PUNC.class)) {
-					continue;
-				}
+					// this is the token ...
+					final Token entityHead = head(first);
+					// final Annotation sourceleft = Iterables.getFirst(annotations, null);
 
-				// get the actual named entity, if it is already in the set - we don't want duplicates
-				final Optional<Annotation> targetAnnotation = Iterables.tryFind(namedEntities, new Predicate<Annotation>() {
-					@Override
-					public boolean apply(@Nullable Annotation input) {
-						return entityHead != null && (input.getBegin() <= entityHead.getBegin() && input.getEnd() >= entityHead.getEnd());
+					// if we don't have the specific target annotation as a marker, just skip
+					// this will prevent linking to pronouns that we are for example not interested in
+					// check if we just have a number
+					if (entityHead == null || entityHead.getPos().getClass().equals(CARD.class) || entityHead.getPos().getClass().equals(PUNC.class)) {
+						continue;
 					}
-				});
 
-				final Annotation left = targetAnnotation.or(entityHead);
+					// get the actual named entity, if it is already in the set - we don't want duplicates
+					final Optional<Annotation> targetAnnotation = Iterables.tryFind(namedEntities, new Predicate<Annotation>() {
+						@Override
+						public boolean apply(@Nullable Annotation input) {
+							return entityHead != null && (input.getBegin() <= entityHead.getBegin() && input.getEnd() >= entityHead.getEnd());
+						}
+					});
 
+					final Annotation left = targetAnnotation.or(entityHead);
 
-				if (first.getCoveredText().length() < left.getCoveredText().length()) {
-					// check that the annotation is really covering the underlying named entity
-					// we don't want to widen the scope if the mention is way shorter
-					continue;
-				}
 
-				CoreferenceLink last = first;
-				// traverse
-				while (last.getNext() != null) {
-					last = last.getNext();
-					if (first != last) {
+					if (first.getCoveredText().length() < left.getCoveredText().length()) {
+						// check that the annotation is really covering the underlying named entity
+						// we don't want to widen the scope if the mention is way shorter
+						continue;
+					}
 
+					CoreferenceLink last = first;
+					// traverse
+					while (last.getNext() != null) {
+						last = last.getNext();
+						if (first != last) {
 
-						// use the Token not the selection type when getting the underlying annotation
-						final Token rightToken = getNamedEntityHead(last, graph);
-						if (rightToken == null) {
-							// ignore
-							continue;
-						}
 
-						// get the actual named entity, if it is already in the set - we don't want duplicates
-						final Optional<Annotation> targetRightAnnotation = Iterables.tryFind(namedEntities, new Predicate<Annotation>() {
-							@Override
-							public boolean apply(@Nullable Annotation input) {
-								return rightToken != null && (input.getBegin() <= rightToken.getBegin() && input.getEnd() >= rightToken.getEnd());
+							// use the Token not the selection type when getting the underlying annotation
+							final Token rightToken = head(last);
+							if (rightToken == null) {
+								// ignore
+								continue;
 							}
-						});
 
-						final Annotation right = targetRightAnnotation.or(rightToken);
+							// get the actual named entity, if it is already in the set - we don't want duplicates
+							final Optional<Annotation> targetRightAnnotation = Iterables.tryFind(namedEntities, new Predicate<Annotation>() {
+								@Override
+								public boolean apply(@Nullable Annotation input) {
+									return rightToken != null && (input.getBegin() <= rightToken.getBegin() && input.getEnd() >= rightToken.getEnd());
+								}
+							});
+
+							final Annotation right = targetRightAnnotation.or(rightToken);
 
 
-						// check that the annotation is really covering the underlying named entity
-						// but we also allow "HE SHE ..."
+							// check that the annotation is really covering the underlying named entity
+							// but we also allow "HE SHE ..."
 
-						// we don't want
-						// Mention is way longer than the underlying annotation
+							// we don't want
+							// Mention is way longer than the underlying annotation
 
-						if (last.getCoveredText().length() > right.getCoveredText().length() || right.getCoveredText().endsWith("degree")) {
-							// we don't want to widen the scope if the mention is way shorter
-							continue;
-						}
+							if (last.getCoveredText().length() > right.getCoveredText().length() || right.getCoveredText().endsWith("degree")) {
+								// we don't want to widen the scope if the mention is way shorter
+								continue;
+							}
 
 
-						if (left != right && left != null && (StringUtils.startsWithIgnoreCase(left.getCoveredText(), "mount") || !StringUtils.startsWithIgnoreCase(right.getCoveredText(), "mount"))) {
-							coref.addVertex(left);
-							coref.addVertex(right);
-							coref.addEdge(left, right);
-
-							// also add all token
-							// now check all right annotations if they are maybe a named entity
-		  /*                  for (Annotation namedEntity : namedEntities) {
-                                // last the ihe coref target
-                                if(namedEntity.getBegin() >= last.getBegin() && namedEntity.getEnd() <= last.getEnd()) {
-                                    coref.addVertex(namedEntity);
-                                    coref.addEdge(left, namedEntity);
-                                }
-                            }
-
-                            List<Token> tokens = JCasUtil.selectCovered(Token.class, last);
-                            for (Token token : tokens) {
-                                coref.addVertex(token);
-                                coref.addEdge(left, token);
-                            }
-             */
-							// and add this now to the list of named entites if not already found
-							// check if there is already an annotation that covers right
-							// this is the case if an existing annotation begins before right and ends after right
-							final boolean any = Iterables.any(namedEntities, new Predicate<Annotation>() {
-								@Override
-								public boolean apply(@Nullable Annotation existing) {
-									return existing.getBegin() <= right.getBegin() && existing.getEnd() >= right.getEnd();
-								}
-							});
+							if (left != right && left != null && (StringUtils.startsWithIgnoreCase(left.getCoveredText(), "mount") || !StringUtils.startsWithIgnoreCase(right.getCoveredText(), "mount"))) {
+								coref.addVertex(left);
+								coref.addVertex(right);
+								coref.addEdge(left, right);
+
+								// also add all token
+								// now check all right annotations if they are maybe a named entity
+			  /*                  for (Annotation namedEntity : namedEntities) {
+	                                // last the ihe coref target
+	                                if(namedEntity.getBegin() >= last.getBegin() && namedEntity.getEnd() <= last.getEnd()) {
+	                                    coref.addVertex(namedEntity);
+	                                    coref.addEdge(left, namedEntity);
+	                                }
+	                            }
+
+	                            List<Token> tokens = JCasUtil.selectCovered(Token.class, last);
+	                            for (Token token : tokens) {
+	                                coref.addVertex(token);
+	                                coref.addEdge(left, token);
+	                            }
+	             */
+								// and add this now to the list of named entites if not already found
+								// check if there is already an annotation that covers right
+								// this is the case if an existing annotation begins before right and ends after right
+								final boolean any = Iterables.any(namedEntities, new Predicate<Annotation>() {
+									@Override
+									public boolean apply(@Nullable Annotation existing) {
+										return existing.getBegin() <= right.getBegin() && existing.getEnd() >= right.getEnd();
+									}
+								});
 
-							if (!any && !(right.getCoveredText().equals("his") || right.getCoveredText().equals("her"))) {
-								namedEntities.add(right);
+								if (!any && !(right.getCoveredText().equals("his") || right.getCoveredText().equals("her"))) {
+									namedEntities.add(right);
+									int index = indexOf(right);
+									if (index >= 0) {
+										parts.get(index).namedEntities.add(right);
+									}
+								}
 							}
 						}
 					}
 				}
-			}
-
-		}
 
+			}
 
-    /*  // Output the coref graph for checking
-        for (DefaultEdge co : coref.edgeSet()) {
-            Annotation edgeSource = coref.getEdgeSource(co);
-            Annotation edgeTarget = coref.getEdgeTarget(co);
-            System.out.println(
-                    Joiner.on(" ").join(edgeSource.getCoveredText(), edgeSource.getBegin(), edgeSource.getEnd()) + "   ->  " +
-                            Joiner.on(" ").join(edgeTarget.getCoveredText(),edgeTarget.getBegin(), edgeTarget.hashCode()));
-        }
-        */
-
-		// sort the named entities based on their appearance on the text
-		Collections.sort(namedEntities, Ordering.from(new Comparator<Annotation>() {
-			@Override
-			public int compare(Annotation o1, Annotation o2) {
-				return Integer.compare(o1.getBegin(), o2.getBegin());
+			// sort the named entities based on their appearance on the text
+			for (Part part : parts) {
+				Collections.sort(part.namedEntities, Ordering.from(new Comparator<Annotation>() {
+					@Override
+					public int compare(Annotation o1, Annotation o2) {
+						return Integer.compare(o1.getBegin(), o2.getBegin());
+					}
+				}));
 			}
-		}));
-
-		// get all pairs of entities omitting incestuous and duplicate pairs
-		List<EntityPair> entityPairs = Lists.newArrayList();
-		for (int i = 0; i < namedEntities.size(); i++) {
-			for (int j = i + 1; j < namedEntities.size(); j++) {
-
-				// check that the entities do not overlap each other
-				final Annotation annotation = namedEntities.get(i);
-				final Annotation annotation2 = namedEntities.get(j);
-				if (annotation2.getBegin() > annotation.getEnd()) {
-					entityPairs.add(new EntityPair(annotation, annotation2));
+
+			if (isCollapseMentions()) {
+				// only mentions sharing a blocking key are compared
+				List<Annotation> sorted = Lists.newArrayList();
+				for (Part part : parts) {
+					sorted.addAll(part.namedEntities);
+				}
+				List<String> mentions = Lists.newArrayListWithCapacity(sorted.size());
+				for (Annotation namedEntity : sorted) {
+					mentions.add(namedEntity.getCoveredText());
+				}
+				for (int[] similar : new SimilarMentionIndex(mentions).findSimilar()) {
+					final Annotation left = sorted.get(similar[0]);
+					final Annotation right = sorted.get(similar[1]);
+
+					// add a co-ref link withOptions right -> left
+					coref.addVertex(left);
+					coref.addVertex(right);
+					coref.addEdge(left, right);
 				}
 			}
 		}
 
-
-		if (isCollapseMentions()) {
-			for (int i = 0; i < namedEntities.size(); i++) {
-				final Annotation left = namedEntities.get(i);
-				for (int j = i + 1; j < namedEntities.size(); j++) {
-					final Annotation right = namedEntities.get(j);
-
-					if (StringComparision.determineSimilar(left.getCoveredText(), right.getCoveredText())) {
-						// add a co-ref link withOptions right -> left
-						coref.addVertex(left);
-						coref.addVertex(right);
-						coref.addEdge(left, right);
-					}
-
-				}
+		private void annotate(Part part, List<EntitySpan> found, List<Annotation> namedEntities) {
+			for (EntitySpan entity : found) {
+				Annotation annotation = part.context.annotate(entity);
+				part.namedEntities.add(annotation);
+				namedEntities.add(annotation);
 			}
 		}
 
-		// extract the shortest path between every two entities
-		for (EntityPair pair : entityPairs) {
+		/**
+		 * @return the head of a mention of the document, null if it is not within a part
+		 */
+		private Token head(Annotation mention) {
+			ExtractionContext context = contextOf(mention);
+			return context == null ? null : getNamedEntityHead(mention, context);
+		}
 
-			final Token e1 = getNamedEntityHead(pair.getEntity1(), graph);
-			final Token e2 = getNamedEntityHead(pair.getEntity2(), graph);
+		@Override
+		protected List<FoundFeature<Annotation>> getShortestPaths(Part part) {
 
-			try {
+			final ExtractionContext context = part.context;
+			final CompactDependencyGraph graph = context.getGraph();
 
-				// if e1 or e2 is NULL we might not have information about the dependencies in the sentence
-				// which contains the NER
-				// this is not a real error and can happen, as we are searching for links in the whole document, not just sentence wise, but
-				// the feature extractor is limited to sentences at the moment
-				if (e1 == null || e2 == null) {
-					continue;
-				}
+			List<FoundFeature<Annotation>> dataBag = Lists.newArrayList();
+			if (single) {
+				return dataBag;
+			}
 
-				if (!(graph.containsVertex(e1) && graph.containsVertex(e2))) {
-					continue;
-				}
-				// check if the entities are in the same sentence?
-				// get sentence for #1
-         /*       Sentence sentences1 = Iterables.getFirst(JCasUtil.selectCovering(jCas, Sentence.class, e1.getBegin(), e1.getEnd()), null);
-                // for #2
-                Sentence sentences2 = Iterables.getFirst(JCasUtil.selectCovering(jCas, Sentence.class, e2.getBegin(), e2.getEnd()), null);
-
-                // test equivalence
-                if (sentences1 != sentences2) {
-                    // not in the same sentence
-                    continue;
-                }*/
-
-				DijkstraShortestPath<Token, DependencyEdge> shortestPaths = new DijkstraShortestPath<>(graph, e1, e2);
-
-				GraphPath<Token, DependencyEdge> shortestPath = shortestPaths.getPath();
-				if (shortestPath == null || shortestPath.getEdgeList().size() == 0) {
-					continue;
-				}
+			// get all pairs of entities within a sentence omitting incestuous and duplicate pairs
+			// the dependency graph has no edges across sentences, so no path could connect a pair of different sentences
+			// coreferences still reach across, as the chain source replaces the mention of a pair afterwards
+			final List<Annotation> namedEntities = part.namedEntities;
+			final int[] sentences = sentenceOf(namedEntities, context);
+			List<EntityPair> entityPairs = Lists.newArrayList();
+			for (int i = 0; i < namedEntities.size(); i++) {
+				for (int j = i + 1; j < namedEntities.size() && sentences[j] == sentences[i]; j++) {
 
-				// retrieve vertices on the shortest path
-				// the first and last entry are the start and end vertex -> dynamically encode as X and Y
-				final List<Token> vertices = Graphs.getPathVertexList(shortestPath);
-				List<DependencyEdge> edges = shortestPath.getEdgeList();
-
-/*                boolean firstEdgeConjunction = "conj".equals(edges.get(0).dependency);
-                if(firstEdgeConjunction) {
-                    // remove
-                    if(vertices.size() >= 2) {
-                        vertices.remove(1);
-                    }
-                    edges.remove(0);
-                    if(edges.size() == 0) {
-                        // empty path .. pointless
-                        continue;
-                    }
-                }*/
-
-				Collections.sort(vertices, new Comparator<Token>() {
-					@Override
-					public int compare(Token o1, Token o2) {
-						return Ints.compare(o1.getBegin(), o2.getBegin());
+					// check that the entities do not overlap each other
+					final Annotation annotation = namedEntities.get(i);
+					final Annotation annotation2 = namedEntities.get(j);
+					if (annotation2.getBegin() > annotation.getEnd()) {
+						entityPairs.add(new EntityPair(annotation, annotation2));
 					}
-				});
+				}
+			}
 
+			// extract the shortest path between every two entities
+			for (EntityPair pair : entityPairs) {
 
-				String vertexLabels = Joiner.on(" ").skipNulls().join(Iterables.transform(vertices, new Function<Token, String>() {
+				// heads are looked up once per entity, not once per pair
+				final int e1 = context.getEntities().get(pair.getEntity1()).getHeadVertex();
+				final int e2 = context.getEntities().get(pair.getEntity2()).getHeadVertex();
 
-					@Override
-					public String apply(Token token) {
-						if (e1.equals(token)) {
-							return "[X]";
-						} else if (e2.equals(token)) {
-							return "[Y]";
-						} else
-							return (isLemmatize() ? token.getLemma().getValue() : token.getCoveredText().replaceAll("\n", " "));
-					}
-				}));
+				try {
 
-				// retrieve edges /dependencies on the shortest path
-
-				Iterable<String> edgeListLables = Iterables.transform(edges, new Function<DependencyEdge, String>() {
-					@Override
-					public String apply(DependencyEdge edge) {
-						return Joiner.on("-").join(vertices.indexOf(edge.getFrom()), edge.getDependency(), vertices.indexOf(edge.getTo()));
+					// if e1 or e2 is not a vertex we might not have information about the dependencies in the sentence
+					// which contains the NER
+					// this is not a real error and can happen, as we are searching for links in the whole document, not just sentence wise, but
+					// the feature extractor is limited to sentences at the moment
+					if (e1 < 0 || e2 < 0) {
+						continue;
+					}
+					// check if the entities are in the same sentence?
+					// get sentence for #1
+	         /*       Sentence sentences1 = Iterables.getFirst(JCasUtil.selectCovering(jCas, Sentence.class, e1.getBegin(), e1.getEnd()), null);
+	                // for #2
+	                Sentence sentences2 = Iterables.getFirst(JCasUtil.selectCovering(jCas, Sentence.class, e2.getBegin(), e2.getEnd()), null);
+
+	                // test equivalence
+	                if (sentences1 != sentences2) {
+	                    // not in the same sentence
+	                    continue;
+	                }*/
+
+					// the path through the lowest common ancestor of both heads
+					DependencyPath shortestPath = context.getPaths().getPath(e1, e2);
+					if (shortestPath == null) {
+						continue;
 					}
-				});
 
+					// the first and last entry are the start and end vertex -> dynamically encode as X and Y
+					final PatternEncoder encoder = PatternEncoder.get();
+					final String pattern = encoder.encode(shortestPath, graph, e1, e2, isLemmatize());
+					final long patternHash = encoder.hash();
 
-				String edgeLabels = Joiner.on(",").skipNulls().join(Ordering.natural().sortedCopy(edgeListLables));
+					dataBag.add(new FoundFeature<>(pair.entity1, pair.entity2, pattern, patternHash));
 
-				// concatenate pattern parts
-				final String pattern;
+				} catch (ArrayIndexOutOfBoundsException e) {
+					e.printStackTrace();
+				}
+			}
 
-				pattern = vertexLabels + " [" + edgeLabels + "]";
+			return dataBag;
+		}
+
+		@Override
+		protected void substitute(List<FoundFeature<Annotation>> features) {
+			for (FoundFeature<Annotation> feature : features) {
+				final EntityPair pair = new EntityPair(feature.getEntity1(), feature.getEntity2());
 
 				Annotation ent1 = pair.entity1;
 				Annotation ent2 = pair.entity2;
@@ -730,26 +764,67 @@ public class FindShortestPathFeatureExtractor extends AbstractShortestPathFeatur
 
 				}
 
-				dataBag.add(new FoundFeature<>(ent1, ent2, pattern));
-
-			} catch (ArrayIndexOutOfBoundsException e) {
-				e.printStackTrace();
+				feature.setEntity1(ent1);
+				feature.setEntity2(ent2);
 			}
 		}
+	}
+
+	/**
+	 * @return true for plural nouns and possessive pronouns, which are no entities
+	 */
+	private static boolean isExcluded(Annotation entity, String posValue) {
+		// remove NNS  & PRP
+		if (entity instanceof NN) {
+			return "NNS".equals(posValue);
+		}
+		// only proper pronouns he she it ...
+		return entity instanceof PR && "PRP$".equals(posValue);
+	}
+
+	private static Collection<? extends Annotation> selectAll(JCas jCas, Class<? extends Annotation> type) {
+		return type == null ? Collections.<Annotation>emptyList() : JCasUtil.select(jCas, type);
+	}
+
+	@Override
+	protected DocumentStep newDocumentStep() {
+		return new Equivalence();
+	}
+
+	private static final Set<String> PRONOUNS = ImmutableSet.of("them", "their", "he", "she");
+
+	/**
+	 * Takes the first [X] be [Y] [1-attr-2,1-nsubj-0] of a document as an equivalence and replaces the later mention
+	 * with the earlier one as the first entity of the other features.
+	 * <p>
+	 * When the sentences are passed one after another, the equivalence is taken from the first sentence that has one
+	 * and applied to it and all following sentences. Coreferences only replace a mention by an earlier one, so the
+	 * features of the sentences before do not contain the later mention.
+	 */
+	private static class Equivalence implements DocumentStep {
+
+		private Annotation first;
 
-		// here we could check if we have [X] be [Y] [1-attr-2,1-nsubj-0]   and "just" store X == Y -> replace the second mention according to the text with the first in the text
-		final Set<String> pronouns = Sets.newHashSet("them", "their", "he", "she");
-		final Optional<FoundFeature<Annotation>> potentialEquivalence = Iterables.tryFind(dataBag, new Predicate<FoundFeature<Annotation>>() {
-			@Override
-			public boolean apply(@Nullable FoundFeature<Annotation> input) {
-				return "[X] be [Y] [1-attr-2,1-nsubj-0]".equals(input.getPattern()) && !pronouns.contains(input.getEntity1().getCoveredText());
+		private Annotation second;
+
+		@Override
+		public void apply(List<FoundFeature<Annotation>> dataBag) {
+			if (first == null) {
+				// here we could check if we have [X] be [Y] [1-attr-2,1-nsubj-0]   and "just" store X == Y -> replace the second mention according to the text with the first in the text
+				final Optional<FoundFeature<Annotation>> potentialEquivalence = Iterables.tryFind(dataBag, new Predicate<FoundFeature<Annotation>>() {
+					@Override
+					public boolean apply(@Nullable FoundFeature<Annotation> input) {
+						return "[X] be [Y] [1-attr-2,1-nsubj-0]".equals(input.getPattern()) && !PRONOUNS.contains(input.getEntity1().getCoveredText());
+					}
+				});
+				if (!potentialEquivalence.isPresent()) {
+					return;
+				}
+				final FoundFeature<Annotation> equivalenceClass = potentialEquivalence.get();
+				first = equivalenceClass.getEntity1().getBegin() < equivalenceClass.getEntity2().getBegin() ? equivalenceClass.getEntity1() : equivalenceClass.getEntity2();
+				second = equivalenceClass.getEntity1().getBegin() < equivalenceClass.getEntity2().getBegin() ? equivalenceClass.getEntity2() : equivalenceClass.getEntity1();
+				dataBag.remove(equivalenceClass);
 			}
-		});
-		if (potentialEquivalence.isPresent()) {
-			final FoundFeature<Annotation> equivalenceClass = potentialEquivalence.get();
-			Annotation first = equivalenceClass.getEntity1().getBegin() < equivalenceClass.getEntity2().getBegin() ? equivalenceClass.getEntity1() : equivalenceClass.getEntity2();
-			Annotation second = equivalenceClass.getEntity1().getBegin() < equivalenceClass.getEntity2().getBegin() ? equivalenceClass.getEntity2() : equivalenceClass.getEntity1();
-			dataBag.remove(equivalenceClass);
 
 			for (FoundFeature<Annotation> foundFeature : dataBag) {
 				// now replace X or Y with the equivalence
@@ -758,16 +833,36 @@ public class FindShortestPathFeatureExtractor extends AbstractShortestPathFeatur
 				}
 			}
 		}
-		// Postprocessing
-
-		// now clean the pattern .. if it contains something like
-		// sentence.replaceAll("at the age of \\d*", "");
-		// [X] die at age of 82 in [Y] [1-nsubj-0,1-prep-2,2-pobj-3,3-prep-4,4-pobj-5,5-prep-6,6-pobj-7]
-		// this is what we want [X] die in [Y] [1-nsubj-0,1-prep-2,2-pobj-3]
-
+	}
 
-		return dataBag;
+	private static void add(List<Token> tokens, Set<Token> members, Token token) {
+		if (members.add(token)) {
+			tokens.add(token);
+		}
+	}
 
+	/**
+	 * Numbers the sentences of the annotations.
+	 *
+	 * @param annotations annotations sorted by their begin
+	 * @param context     the extraction context
+	 * @return for every annotation the index of the sentence it begins in
+	 */
+	private static int[] sentenceOf(List<Annotation> annotations, ExtractionContext context) {
+		int[] sentences = new int[annotations.size()];
+
+		Iterator<Sentence> iterator = context.select(Sentence.class).iterator();
+		Sentence sentence = iterator.hasNext() ? iterator.next() : null;
+		int index = 0;
+		for (int i = 0; i < annotations.size(); i++) {
+			// annotations after the end of the sentence belong to one of the next
+			while (sentence != null && annotations.get(i).getBegin() >= sentence.getEnd() && iterator.hasNext()) {
+				sentence = iterator.next();
+				index++;
+			}
+			sentences[i] = index;
+		}
+		return sentences;
 	}
 
 	private Set<String> getConcepts(String concepts) {
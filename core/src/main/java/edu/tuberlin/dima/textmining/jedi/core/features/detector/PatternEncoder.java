@@ -0,0 +1,172 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import edu.tuberlin.dima.textmining.jedi.core.util.PatternHash;
+
+import java.util.Arrays;
+
+/**
+ * Writes the canonical pattern of a dependency path, e.g. {@code [X] bear in [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]}.
+ * <p>
+ * The pattern lists the tokens of the path in text order, with the entities replaced by [X] and [Y], followed by the
+ * lexicographically sorted edges, which refer to the tokens by their position. Besides the string the encoder returns
+ * a 64 bit FNV-1a hash of the pattern, see {@link PatternHash}.
+ * <p>
+ * An encoder reuses its buffers and is not thread-safe, {@link #get()} returns the encoder of the current thread.
+ */
+public final class PatternEncoder {
+
+	private static final ThreadLocal<PatternEncoder> ENCODERS = ThreadLocal.withInitial(PatternEncoder::new);
+
+	private final StringBuilder pattern = new StringBuilder(128);
+
+	private final StringBuilder edgeLabels = new StringBuilder(128);
+
+	/** the position of a vertex in the pattern, -1 for vertices that are not part of the current path */
+	private int[] positions = new int[0];
+
+	private int[] vertices = new int[16];
+
+	private int[] edgeOffsets = new int[17];
+
+	private int[] edgeOrder = new int[16];
+
+	private long hash;
+
+	private PatternEncoder() {
+	}
+
+	/**
+	 * @return the encoder of the current thread
+	 */
+	public static PatternEncoder get() {
+		return ENCODERS.get();
+	}
+
+	/**
+	 * Encodes a path between the heads of two entities.
+	 *
+	 * @param path      the path
+	 * @param graph     the dependency graph of the path
+	 * @param x         the vertex of the first entity
+	 * @param y         the vertex of the second entity
+	 * @param lemmatize use the lemmas instead of the covered text
+	 * @return the pattern, its hash is available from {@link #hash()}
+	 */
+	public String encode(DependencyPath path, CompactDependencyGraph graph, int x, int y, boolean lemmatize) {
+		int[] pathVertices = path.getVertices();
+		int[] pathEdges = path.getEdges();
+		ensureCapacity(graph.size(), pathVertices.length, pathEdges.length);
+
+		// vertex ids follow the text order
+		int length = pathVertices.length;
+		System.arraycopy(pathVertices, 0, vertices, 0, length);
+		Arrays.sort(vertices, 0, length);
+		for (int i = 0; i < length; i++) {
+			positions[vertices[i]] = i;
+		}
+
+		pattern.setLength(0);
+		for (int i = 0; i < length; i++) {
+			int vertex = vertices[i];
+			int start = pattern.length();
+			if (start > 0) {
+				pattern.append(' ');
+			}
+			if (vertex == x) {
+				pattern.append("[X]");
+			} else if (vertex == y) {
+				pattern.append("[Y]");
+			} else if (lemmatize) {
+				String lemma = graph.lemma(vertex);
+				if (lemma == null) {
+					pattern.setLength(start);
+				} else {
+					pattern.append(lemma);
+				}
+			} else {
+				String text = graph.getDocumentText();
+				for (int c = graph.begin(vertex); c < graph.end(vertex); c++) {
+					char character = text.charAt(c);
+					pattern.append(character == '\n' ? ' ' : character);
+				}
+			}
+		}
+
+		// write the edge labels one after another and sort their offsets
+		edgeLabels.setLength(0);
+		for (int i = 0; i < pathEdges.length; i++) {
+			int edge = pathEdges[i];
+			edgeOffsets[i] = edgeLabels.length();
+			edgeLabels.append(positions[graph.governor(edge)]).append('-').append(graph.label(edge)).append('-').append(positions[graph.dependent(edge)]);
+			edgeOrder[i] = i;
+		}
+		edgeOffsets[pathEdges.length] = edgeLabels.length();
+		sortEdges(pathEdges.length);
+
+		pattern.append(" [");
+		for (int i = 0; i < pathEdges.length; i++) {
+			if (i > 0) {
+				pattern.append(',');
+			}
+			int edge = edgeOrder[i];
+			pattern.append(edgeLabels, edgeOffsets[edge], edgeOffsets[edge + 1]);
+		}
+		pattern.append(']');
+
+		for (int i = 0; i < length; i++) {
+			positions[vertices[i]] = -1;
+		}
+
+		hash = PatternHash.hash(pattern);
+		return pattern.toString();
+	}
+
+	/**
+	 * @return the hash of the last encoded pattern
+	 */
+	public long hash() {
+		return hash;
+	}
+
+	private void ensureCapacity(int graphSize, int pathVertices, int pathEdges) {
+		if (positions.length < graphSize) {
+			positions = new int[Math.max(graphSize, positions.length * 2)];
+			Arrays.fill(positions, -1);
+		}
+		if (vertices.length < pathVertices) {
+			vertices = new int[pathVertices * 2];
+		}
+		if (edgeOrder.length < pathEdges) {
+			edgeOrder = new int[pathEdges * 2];
+			edgeOffsets = new int[pathEdges * 2 + 1];
+		}
+	}
+
+	/** insertion sort, paths are short */
+	private void sortEdges(int count) {
+		for (int i = 1; i < count; i++) {
+			int edge = edgeOrder[i];
+			int j = i - 1;
+			while (j >= 0 && compareEdges(edgeOrder[j], edge) > 0) {
+				edgeOrder[j + 1] = edgeOrder[j];
+				j--;
+			}
+			edgeOrder[j + 1] = edge;
+		}
+	}
+
+	/** compares two edge labels like {@link String#compareTo(String)} */
+	private int compareEdges(int a, int b) {
+		int offsetA = edgeOffsets[a];
+		int offsetB = edgeOffsets[b];
+		int lengthA = edgeOffsets[a + 1] - offsetA;
+		int lengthB = edgeOffsets[b + 1] - offsetB;
+		for (int i = 0; i < Math.min(lengthA, lengthB); i++) {
+			int compare = edgeLabels.charAt(offsetA + i) - edgeLabels.charAt(offsetB + i);
+			if (compare != 0) {
+				return compare;
+			}
+		}
+		return lengthA - lengthB;
+	}
+}
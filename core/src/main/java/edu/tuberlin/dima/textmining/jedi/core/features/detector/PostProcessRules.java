@@ -0,0 +1,392 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Resources;
+import com.google.common.primitives.Ints;
+import edu.tuberlin.dima.textmining.jedi.core.model.FoundFeature;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Drop and rewrite rules for found features, loaded from a rule file like {@code freepal/postprocess-rules.txt}.
+ * <p>
+ * The rules apply in the order of the file. Every rule on patterns is indexed by a word its pattern must contain,
+ * so for a feature only the rules indexed by one of its words are considered. A candidate rule first checks that
+ * the pattern contains all literal parts of its expression, the regular expression only runs after that.
+ */
+public class PostProcessRules {
+
+	private static final String DEFAULT_RULES = "freepal/postprocess-rules.txt";
+
+	private static PostProcessRules defaults;
+
+	/**
+	 * What happened to a feature.
+	 */
+	public enum Outcome {
+		/** no rule ended the processing, the feature may have been changed by a replace rule */
+		KEEP,
+		/** the feature has to be removed */
+		DROP,
+		/** the pattern has been rewritten and must not be processed further */
+		REWRITTEN
+	}
+
+	private enum Action {
+		DROP, REWRITE, REPLACE
+	}
+
+	private static final class Rule {
+		final Action action;
+		final boolean entity;
+		final String literal;
+		final Pattern regex;
+		final String replacement;
+		final String[] required;
+
+		Rule(Action action, boolean entity, String literal, Pattern regex, String replacement, String[] required) {
+			this.action = action;
+			this.entity = entity;
+			this.literal = literal;
+			this.regex = regex;
+			this.replacement = replacement;
+			this.required = required;
+		}
+
+		boolean matches(String text) {
+			for (String part : required) {
+				if (!text.contains(part)) {
+					return false;
+				}
+			}
+			return regex == null ? text.equals(literal) : regex.matcher(text).find();
+		}
+	}
+
+	private final List<Rule> rules;
+
+	/** the rules that need to be checked for every feature */
+	private final BitSet unindexed = new BitSet();
+
+	/** open addressing table of the words the rules are indexed by, looked up on ranges of the pattern */
+	private final String[] words;
+
+	/** rules by a word the pattern needs to contain, at the slot of the word */
+	private final int[][] wordRules;
+
+	/** the candidate rules of the feature the current thread is processing */
+	private final ThreadLocal<BitSet> candidates = ThreadLocal.withInitial(BitSet::new);
+
+	/**
+	 * @return the rules shipped in {@value #DEFAULT_RULES}
+	 */
+	public static synchronized PostProcessRules defaults() {
+		if (defaults == null) {
+			try {
+				defaults = new PostProcessRules(Resources.getResource(DEFAULT_RULES));
+			} catch (IOException e) {
+				throw new RuntimeException("Can't read the post processing rules " + DEFAULT_RULES, e);
+			}
+		}
+		return defaults;
+	}
+
+	/**
+	 * Compiles the rules of a rule file.
+	 *
+	 * @param rulesFile the rule file
+	 * @throws IOException              if the file can not be read
+	 * @throws IllegalArgumentException if a rule is malformed
+	 */
+	public PostProcessRules(URL rulesFile) throws IOException {
+		this(Resources.readLines(rulesFile, Charsets.UTF_8));
+	}
+
+	PostProcessRules(List<String> lines) {
+		ImmutableList.Builder<Rule> compiled = ImmutableList.builder();
+		Map<String, List<Integer>> byWord = Maps.newHashMap();
+
+		int number = 0;
+		int count = 0;
+		for (String line : lines) {
+			number++;
+			if (line.trim().isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			List<String> columns = Lists.newArrayList(Splitter.on('\t').split(line));
+			if (columns.size() < 4) {
+				throw new IllegalArgumentException("Rule " + number + " needs an action, target, match and expression: " + line);
+			}
+
+			Action action = Action.valueOf(columns.get(0).toUpperCase());
+			boolean entity = target(columns.get(1), number);
+			boolean regex = match(columns.get(2), number);
+			String expression = columns.get(3);
+			String replacement = columns.size() > 4 ? columns.get(4) : null;
+			if ((action != Action.DROP) != (replacement != null)) {
+				throw new IllegalArgumentException("Rule " + number + " needs a replacement only for rewrite and replace: " + line);
+			}
+			if (entity && action != Action.DROP) {
+				throw new IllegalArgumentException("Rule " + number + " can only drop features by their entities: " + line);
+			}
+
+			List<String> literals = regex ? requiredLiterals(expression) : ImmutableList.of(expression);
+			int id = count++;
+			compiled.add(new Rule(action, entity, regex ? null : expression, regex ? Pattern.compile(expression) : null,
+				replacement, literals.toArray(new String[literals.size()])));
+
+			String word = entity ? null : longestWord(literals, !regex);
+			if (word == null) {
+				unindexed.set(id);
+			} else {
+				if (!byWord.containsKey(word)) {
+					byWord.put(word, Lists.<Integer>newArrayList());
+				}
+				byWord.get(word).add(id);
+			}
+		}
+
+		this.rules = compiled.build();
+
+		// at most half full, so a lookup of a word that is not indexed ends at an empty slot soon
+		int capacity = Integer.highestOneBit(Math.max(1, byWord.size()) * 2) * 2;
+		this.words = new String[capacity];
+		this.wordRules = new int[capacity][];
+		for (Map.Entry<String, List<Integer>> entry : byWord.entrySet()) {
+			String word = entry.getKey();
+			int slot = hash(word, 0, word.length()) & (capacity - 1);
+			while (words[slot] != null) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			words[slot] = word;
+			wordRules[slot] = Ints.toArray(entry.getValue());
+		}
+	}
+
+	private static boolean target(String target, int number) {
+		switch (target) {
+			case "pattern":
+				return false;
+			case "entity":
+				return true;
+			default:
+				throw new IllegalArgumentException("Rule " + number + " has an unknown target " + target);
+		}
+	}
+
+	private static boolean match(String match, int number) {
+		switch (match) {
+			case "equals":
+				return false;
+			case "regex":
+				return true;
+			default:
+				throw new IllegalArgumentException("Rule " + number + " has an unknown match " + match);
+		}
+	}
+
+	/**
+	 * Applies the rules to a feature, in the order of the rule file.
+	 *
+	 * @param feature the feature, replace and rewrite rules change its pattern
+	 * @return what happened to the feature
+	 */
+	public Outcome apply(FoundFeature<Annotation> feature) {
+		String pattern = feature.getPattern();
+		BitSet candidates = this.candidates.get();
+		candidates(pattern, candidates);
+
+		for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+			Rule rule = rules.get(id);
+
+			if (rule.entity) {
+				if (rule.matches(feature.getEntity1().getCoveredText()) || rule.matches(feature.getEntity2().getCoveredText())) {
+					return Outcome.DROP;
+				}
+				continue;
+			}
+
+			if (!rule.matches(pattern)) {
+				continue;
+			}
+			switch (rule.action) {
+				case DROP:
+					return Outcome.DROP;
+				case REWRITE:
+					feature.setPattern(rule.regex == null ? rule.replacement : rule.regex.matcher(pattern).replaceFirst(rule.replacement));
+					return Outcome.REWRITTEN;
+				case REPLACE:
+					pattern = rule.regex == null ? rule.replacement : rule.regex.matcher(pattern).replaceFirst(rule.replacement);
+					feature.setPattern(pattern);
+					// the following rules are dispatched on the new pattern
+					candidates(pattern, candidates);
+					break;
+			}
+		}
+		return Outcome.KEEP;
+	}
+
+	/**
+	 * Sets the rules that need to be checked for a pattern: the unindexed ones and those indexed by one of its words.
+	 */
+	private void candidates(String pattern, BitSet candidates) {
+		candidates.clear();
+		candidates.or(unindexed);
+		int start = 0;
+		while (start <= pattern.length()) {
+			int end = pattern.indexOf(' ', start);
+			if (end < 0) {
+				end = pattern.length();
+			}
+			int[] ids = rules(pattern, start, end);
+			if (ids != null) {
+				for (int id : ids) {
+					candidates.set(id);
+				}
+			}
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * @return the rules indexed by the word between start and end of the pattern, null if there are none
+	 */
+	private int[] rules(String pattern, int start, int end) {
+		int length = end - start;
+		for (int slot = hash(pattern, start, end) & (words.length - 1); words[slot] != null; slot = (slot + 1) & (words.length - 1)) {
+			String word = words[slot];
+			if (word.length() == length && pattern.regionMatches(start, word, 0, length)) {
+				return wordRules[slot];
+			}
+		}
+		return null;
+	}
+
+	/** the {@link String#hashCode()} of a range, spread over the low bits */
+	private static int hash(String text, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + text.charAt(i);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Picks the longest word, delimited by spaces on both sides, of the literal parts.
+	 *
+	 * @param literals the literal parts of an expression
+	 * @param complete true if the literal is the whole text, so its first and last word are words as well
+	 * @return the word, null if there is none
+	 */
+	private static String longestWord(List<String> literals, boolean complete) {
+		String longest = null;
+		for (String literal : literals) {
+			List<String> words = Lists.newArrayList(Splitter.on(' ').split(literal));
+			int first = complete ? 0 : 1;
+			int last = complete ? words.size() : words.size() - 1;
+			for (int i = first; i < last; i++) {
+				String word = words.get(i);
+				if (!word.isEmpty() && (longest == null || word.length() > longest.length())) {
+					longest = word;
+				}
+			}
+		}
+		return longest;
+	}
+
+	/**
+	 * Collects the literal parts every match of a regular expression contains.
+	 * <p>
+	 * Only the top level of the expression is considered: groups, character classes and optional characters end a
+	 * literal part. Expressions with flags or a top level alternation have no required parts.
+	 *
+	 * @param regex the regular expression
+	 * @return the literal parts
+	 */
+	static List<String> requiredLiterals(String regex) {
+		if (regex.contains("(?")) {
+			return ImmutableList.of();
+		}
+
+		List<String> literals = Lists.newArrayList();
+		StringBuilder run = new StringBuilder();
+		int depth = 0;
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			char literal;
+			if (c == '\\' && i + 1 < regex.length()) {
+				literal = regex.charAt(++i);
+				if (Character.isLetterOrDigit(literal)) {
+					// character classes like \d and back references
+					flush(run, literals);
+					continue;
+				}
+			} else if (c == '[') {
+				// skip the character class, a leading ] is part of it
+				i++;
+				if (i < regex.length() && regex.charAt(i) == '^') {
+					i++;
+				}
+				if (i < regex.length() && regex.charAt(i) == ']') {
+					i++;
+				}
+				while (i < regex.length() && regex.charAt(i) != ']') {
+					if (regex.charAt(i) == '\\') {
+						i++;
+					}
+					i++;
+				}
+				flush(run, literals);
+				continue;
+			} else if (c == '(' || c == ')') {
+				depth += c == '(' ? 1 : -1;
+				flush(run, literals);
+				continue;
+			} else if (c == '|') {
+				if (depth == 0) {
+					return ImmutableList.of();
+				}
+				flush(run, literals);
+				continue;
+			} else if (c == '*' || c == '?' || c == '{') {
+				// the preceding character is optional
+				if (run.length() > 0) {
+					run.setLength(run.length() - 1);
+				}
+				flush(run, literals);
+				if (c == '{') {
+					i = Math.max(i, regex.indexOf('}', i));
+				}
+				continue;
+			} else if (c == '+' || c == '.' || c == '^' || c == '$') {
+				flush(run, literals);
+				continue;
+			} else {
+				literal = c;
+			}
+
+			if (depth == 0) {
+				run.append(literal);
+			}
+		}
+		flush(run, literals);
+		return literals;
+	}
+
+	private static void flush(StringBuilder run, List<String> literals) {
+		if (run.length() > 0) {
+			literals.add(run.toString());
+			run.setLength(0);
+		}
+	}
+}
@@ -18,38 +18,51 @@
  */
 package edu.tuberlin.dima.textmining.jedi.core.features.detector;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import de.tudarmstadt.ukp.dkpro.core.api.coref.type.CoreferenceChain;
 import de.tudarmstadt.ukp.dkpro.core.api.coref.type.CoreferenceLink;
 import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
-import de.tudarmstadt.ukp.dkpro.core.api.resources.CasConfigurableProviderBase;
 import de.tudarmstadt.ukp.dkpro.core.api.resources.MappingProvider;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
 import edu.stanford.nlp.dcoref.CorefChain;
 import edu.stanford.nlp.dcoref.CorefChain.CorefMention;
 import edu.stanford.nlp.dcoref.CorefCoreAnnotations.CorefChainAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.*;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.DeterministicCorefAnnotator;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations.BasicDependenciesAnnotation;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
 import edu.stanford.nlp.util.CoreMap;
+import edu.tuberlin.dima.textmining.jedi.core.util.SharedResources;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Type;
 import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
 
-import java.io.IOException;
-import java.net.URL;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Adapted from
@@ -59,15 +72,55 @@ import java.util.Properties;
  * Copyright (c) 2011, Regents of the University of Colorado <br>
  * All rights reserved.
  *
- * This uses the Stanford NER suite to parse an english document - copying over all annotations except the dependency parse
+ * This uses the Stanford NER suite to parse an english document - copying over all annotations,
+ * the dependency parse only if {@link #PARAM_WRITE_DEPENDENCIES} is set
+ *
+ * The thread-safe Stanford pipelines and the sentence pool are shared by all instances, see {@link SharedResources}.
+ * Co-reference resolution is not thread-safe, so every instance has its own co-reference annotator.
  *
  * @author Steven Bethard
  */
 public class StanfordUIMAAnnotator extends JCasAnnotator_ImplBase {
 
+    /**
+     * The Stanford CoreNLP annotators to run, see {@link AnnotationLayer#stanfordAnnotators(java.util.Set)}.
+     */
+    public static final String PARAM_ANNOTATORS = "annotators";
+    @ConfigurationParameter(name = PARAM_ANNOTATORS, mandatory = true, defaultValue = "tokenize, ssplit, pos, lemma, ner, parse, dcoref")
+    private String annotators;
+
+    /**
+     * Convert the basic dependencies of the Stanford parser into {@link Dependency} annotations.
+     */
+    public static final String PARAM_WRITE_DEPENDENCIES = "writeDependencies";
+    @ConfigurationParameter(name = PARAM_WRITE_DEPENDENCIES, mandatory = true, defaultValue = "false")
+    private boolean writeDependencies;
+
+    /**
+     * Split the document into sentences first and run the sentence level annotators on the sentences in parallel.
+     */
+    public static final String PARAM_PARALLEL_SENTENCES = "parallelSentences";
+    @ConfigurationParameter(name = PARAM_PARALLEL_SENTENCES, mandatory = true, defaultValue = "false")
+    private boolean parallelSentences;
+
+    /**
+     * Number of threads used to annotate sentences in parallel, values < 1 use one per available core.
+     * All instances with the same number of threads share one pool.
+     */
+    public static final String PARAM_SENTENCE_THREADS = "sentenceThreads";
+    @ConfigurationParameter(name = PARAM_SENTENCE_THREADS, mandatory = true, defaultValue = "0")
+    private int sentenceThreads;
+
     private MappingProvider posMappingProvider;
     private MappingProvider nerMappingProvider;
-    private CasConfigurableProviderBase<StanfordCoreNLP> modelProvider;
+
+    private final List<SharedResources.Handle<StanfordCoreNLP>> handles = Lists.newArrayList();
+
+    // the segmenter runs all annotators up to dcoref, unless the sentences are annotated in parallel
+    private StanfordCoreNLP segmenter;
+    private StanfordCoreNLP sentenceAnnotator;
+    private Annotator documentAnnotator;
+    private SharedResources.Handle<ForkJoinPool> sentencePool;
 
     public static AnalysisEngineDescription getDescription() throws ResourceInitializationException {
         return AnalysisEngineFactory.createEngineDescription(StanfordUIMAAnnotator.class);
@@ -77,22 +130,6 @@ public class StanfordUIMAAnnotator extends JCasAnnotator_ImplBase {
     public void initialize(UimaContext context) throws ResourceInitializationException {
         super.initialize(context);
 
-        modelProvider = new CasConfigurableProviderBase<StanfordCoreNLP>() {
-
-            {
-                setDefault(LOCATION, "classpath:/mappings/combined-ner.crf.map");
-            }
-
-            @Override
-            protected StanfordCoreNLP produceResource(URL aUrl) throws IOException {
-                Properties properties = new Properties();
-                properties.put("annotators", "tokenize, ssplit, pos, lemma, ner, parse, dcoref");
-
-                return new StanfordCoreNLP(properties);
-            }
-        };
-
-
         posMappingProvider = new MappingProvider();
         posMappingProvider.setDefaultVariantsLocation(
                 "de/tudarmstadt/ukp/dkpro/core/stanfordnlp/lib/tagger-default-variants.map");
@@ -107,6 +144,162 @@ public class StanfordUIMAAnnotator extends JCasAnnotator_ImplBase {
                 .setDefaultVariantsLocation("de/tudarmstadt/ukp/dkpro/core/stanfordnlp/lib/ner-default-variants.map");
         nerMappingProvider.setDefault(MappingProvider.LOCATION, "classpath:/mappings/combined-ner.crf.map");
         nerMappingProvider.setDefault(MappingProvider.BASE_TYPE, NamedEntity.class.getName());
+
+        List<String> segmentation = Lists.newArrayList();
+        List<String> sentenceLevel = Lists.newArrayList();
+        boolean coreferences = false;
+        for (String annotator : Splitter.on(',').trimResults().omitEmptyStrings().split(annotators)) {
+            switch (annotator) {
+                case "tokenize":
+                case "ssplit":
+                    segmentation.add(annotator);
+                    break;
+                case "dcoref":
+                    coreferences = true;
+                    break;
+                default:
+                    if (parallelSentences) {
+                        sentenceLevel.add(annotator);
+                    } else {
+                        segmentation.add(annotator);
+                    }
+            }
+        }
+
+        // the sentence level annotators work on the tokens and sentences of the segmenter,
+        // the pipelines are loaded in parallel
+        Map<String, PipelineLoader> loaders = Maps.newLinkedHashMap();
+        String segmenterKey = addLoader(loaders, segmentation, true);
+        String sentenceKey = addLoader(loaders, sentenceLevel, false);
+
+        Map<String, SharedResources.Handle<StanfordCoreNLP>> pipelines = SharedResources.acquireAll(loaders);
+        handles.addAll(pipelines.values());
+        segmenter = sharedPipeline(pipelines, segmenterKey);
+        sentenceAnnotator = sharedPipeline(pipelines, sentenceKey);
+
+        // created directly, StanfordCoreNLP would hand out the annotator cached in its static pool
+        if (coreferences) {
+            documentAnnotator = new DeterministicCorefAnnotator(new Properties());
+        }
+
+        if (parallelSentences) {
+            final int threads = sentenceThreads > 0 ? sentenceThreads : Runtime.getRuntime().availableProcessors();
+            sentencePool = SharedResources.acquire(ForkJoinPool.class.getName() + ":sentences:" + threads,
+                    () -> new ForkJoinPool(threads));
+        }
+    }
+
+    private static String addLoader(Map<String, PipelineLoader> loaders, List<String> annotators, boolean enforceRequirements) {
+        if (annotators.isEmpty()) {
+            return null;
+        }
+        PipelineLoader loader = new PipelineLoader(Joiner.on(", ").join(annotators), enforceRequirements);
+        String key = StanfordCoreNLP.class.getName() + ":" + loader.annotators + ":" + enforceRequirements;
+        loaders.put(key, loader);
+        return key;
+    }
+
+    private static StanfordCoreNLP sharedPipeline(Map<String, SharedResources.Handle<StanfordCoreNLP>> pipelines, String key) {
+        return key != null ? pipelines.get(key).get() : null;
+    }
+
+    private static class PipelineLoader implements Callable<StanfordCoreNLP> {
+        final String annotators;
+        final boolean enforceRequirements;
+
+        PipelineLoader(String annotators, boolean enforceRequirements) {
+            this.annotators = annotators;
+            this.enforceRequirements = enforceRequirements;
+        }
+
+        @Override
+        public StanfordCoreNLP call() {
+            Properties properties = new Properties();
+            properties.put("annotators", annotators);
+            return new StanfordCoreNLP(properties, enforceRequirements);
+        }
+    }
+
+    /**
+     * Annotates each sentence on its own in the sentence pool.
+     * The sentence annotators work on the tokens of the document, so all character offsets stay document offsets.
+     * Co-references span sentences and are resolved on the merged document afterwards.
+     *
+     * @param text the document text
+     * @return the annotated document
+     */
+    private Annotation annotateSentencesInParallel(String text) throws AnalysisEngineProcessException {
+        Annotation document = new Annotation(text);
+        segmenter.annotate(document);
+
+        final List<CoreMap> sentences = document.get(SentencesAnnotation.class);
+        if (sentenceAnnotator != null) {
+            try {
+                sentencePool.get().submit(() -> sentences.parallelStream().forEach(sentence -> {
+                    Annotation sentenceDocument = new Annotation(sentence.get(TextAnnotation.class));
+                    sentenceDocument.set(TokensAnnotation.class, sentence.get(TokensAnnotation.class));
+                    sentenceDocument.set(SentencesAnnotation.class, Collections.singletonList(sentence));
+                    sentenceAnnotator.annotate(sentenceDocument);
+                })).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AnalysisEngineProcessException(e);
+            } catch (ExecutionException e) {
+                throw new AnalysisEngineProcessException(e.getCause());
+            }
+        }
+
+        annotateDocument(document);
+        return document;
+    }
+
+    /**
+     * Runs the document level annotators, which belong to this instance.
+     */
+    private void annotateDocument(Annotation document) {
+        if (documentAnnotator != null) {
+            documentAnnotator.annotate(document);
+        }
+    }
+
+    /**
+     * Converts the basic dependencies of a sentence, the root is not part of the edges.
+     *
+     * @param jCas        the document
+     * @param sentenceAnn the parsed sentence
+     * @param tokens      all tokens of the document in order
+     */
+    private void addDependencies(JCas jCas, CoreMap sentenceAnn, List<Token> tokens) {
+        SemanticGraph dependencies = sentenceAnn.get(BasicDependenciesAnnotation.class);
+        if (dependencies == null) {
+            return;
+        }
+
+        // word indices are 1-based within the sentence
+        int tokenOffset = sentenceAnn.get(TokenBeginAnnotation.class) - 1;
+        for (SemanticGraphEdge edge : dependencies.edgeIterable()) {
+            Token governor = tokens.get(tokenOffset + edge.getGovernor().index());
+            Token dependent = tokens.get(tokenOffset + edge.getDependent().index());
+
+            Dependency dependency = new Dependency(jCas, dependent.getBegin(), dependent.getEnd());
+            dependency.setGovernor(governor);
+            dependency.setDependent(dependent);
+            dependency.setDependencyType(edge.getRelation().toString());
+            dependency.addToIndexes();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (sentencePool != null) {
+            sentencePool.release();
+            sentencePool = null;
+        }
+        for (SharedResources.Handle<StanfordCoreNLP> handle : handles) {
+            handle.release();
+        }
+        handles.clear();
+        super.destroy();
     }
 
     @Override
@@ -116,9 +309,16 @@ public class StanfordUIMAAnnotator extends JCasAnnotator_ImplBase {
         posMappingProvider.configure(cas);
         nerMappingProvider.configure(cas);
 
-        modelProvider.configure(cas);
+        Annotation document;
+        if (parallelSentences) {
+            document = annotateSentencesInParallel(jCas.getDocumentText());
+        } else {
+            document = new Annotation(jCas.getDocumentText());
+            segmenter.annotate(document);
+            annotateDocument(document);
+        }
 
-        Annotation document = modelProvider.getResource().process(jCas.getDocumentText());
+        List<Token> tokens = Lists.newArrayList();
 
         String lastNETag = "O";
         int lastNEBegin = -1;
@@ -133,20 +333,24 @@ public class StanfordUIMAAnnotator extends JCasAnnotator_ImplBase {
 
             Token token = new Token(jCas, begin, end);
 
-            Type posTag = posMappingProvider.getTagType(pos);
-            POS posAnno = (POS) cas.createAnnotation(posTag, begin, end);
-            posAnno.setStringValue(posTag.getFeatureByBaseName("PosValue"), pos.intern());
-            posAnno.addToIndexes();
-            token.setPos(posAnno);
-
-
-            Lemma dkproLemma = new Lemma(jCas, begin, end);
-            dkproLemma.setValue(lemma);
-            dkproLemma.addToIndexes();
+            // pos and lemma are missing if their annotators did not run
+            if (pos != null) {
+                Type posTag = posMappingProvider.getTagType(pos);
+                POS posAnno = (POS) cas.createAnnotation(posTag, begin, end);
+                posAnno.setStringValue(posTag.getFeatureByBaseName("PosValue"), pos.intern());
+                posAnno.addToIndexes();
+                token.setPos(posAnno);
+            }
 
+            if (lemma != null) {
+                Lemma dkproLemma = new Lemma(jCas, begin, end);
+                dkproLemma.setValue(lemma);
+                dkproLemma.addToIndexes();
 
-            token.setLemma(dkproLemma);
+                token.setLemma(dkproLemma);
+            }
             token.addToIndexes();
+            tokens.add(token);
 
             // hackery to convert token-level named entity tag into phrase-level tag
             String neTag = tokenAnn.get(NamedEntityTagAnnotation.class);
@@ -195,6 +399,10 @@ public class StanfordUIMAAnnotator extends JCasAnnotator_ImplBase {
             Sentence sentence = new Sentence(jCas, sentBegin, sentEnd);
             sentence.addToIndexes();
 
+            if (writeDependencies) {
+                addDependencies(jCas, sentenceAnn, tokens);
+            }
+
         }
 
         Map<Integer, CorefChain> corefChains = document.get(CorefChainAnnotation.class);
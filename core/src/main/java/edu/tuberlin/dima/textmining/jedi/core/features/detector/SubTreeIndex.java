@@ -0,0 +1,176 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Numbers the vertices of a dependency graph in depth first order, following only selected edges from governor to
+ * dependent.
+ * <p>
+ * Every vertex gets the interval [entry, exit) of the positions of its descendants, so whether a vertex lies below
+ * another is a comparison of two numbers. This only works if the selected edges form a forest, which is the case for
+ * basic dependencies; {@link #isForest()} tells if the index can be used.
+ */
+public class SubTreeIndex {
+
+	private final int[] entry;
+
+	private final int[] exit;
+
+	/** the vertex at each depth first position */
+	private final int[] order;
+
+	/** the edges that are followed */
+	private final boolean[] selected;
+
+	private final boolean forest;
+
+	/**
+	 * Runs one depth first search per tree.
+	 *
+	 * @param graph  the dependency graph
+	 * @param follow selects the edges to follow
+	 */
+	public SubTreeIndex(CompactDependencyGraph graph, IntPredicate follow) {
+		int size = graph.size();
+		entry = new int[size];
+		exit = new int[size];
+		order = new int[size];
+
+		// the selected edges of the vertices, a vertex with two parents is no forest anymore
+		int[] parents = new int[size];
+		boolean multipleParents = false;
+		selected = new boolean[graph.edgeCount()];
+		for (int edge = 0; edge < graph.edgeCount(); edge++) {
+			if (follow.test(edge)) {
+				selected[edge] = true;
+				multipleParents |= ++parents[graph.dependent(edge)] > 1;
+			}
+		}
+
+		Arrays.fill(entry, -1);
+		int position = 0;
+		int[] stack = new int[size];
+		int[] next = new int[size];
+		for (int root = 0; root < size && !multipleParents; root++) {
+			if (parents[root] > 0) {
+				continue;
+			}
+			int depth = 0;
+			stack[depth] = root;
+			next[depth] = graph.edgeStart(root);
+			entry[root] = position;
+			order[position++] = root;
+			while (depth >= 0) {
+				int vertex = stack[depth];
+				if (next[depth] == graph.edgeEnd(vertex)) {
+					exit[vertex] = position;
+					depth--;
+					continue;
+				}
+				int edge = graph.edgeAt(next[depth]++);
+				if (selected[edge] && graph.governor(edge) == vertex) {
+					int child = graph.dependent(edge);
+					depth++;
+					stack[depth] = child;
+					next[depth] = graph.edgeStart(child);
+					entry[child] = position;
+					order[position++] = child;
+				}
+			}
+		}
+
+		// vertices on a cycle are never reached from a root
+		forest = !multipleParents && position == size;
+	}
+
+	/**
+	 * @return true if the selected edges form a forest, otherwise the index must not be used
+	 */
+	public boolean isForest() {
+		return forest;
+	}
+
+	/**
+	 * @return true if the edge is followed from its governor to its dependent
+	 */
+	public boolean follows(int edge) {
+		return selected[edge];
+	}
+
+	/**
+	 * @return the depth first position of the vertex
+	 */
+	public int entry(int vertex) {
+		return entry[vertex];
+	}
+
+	/**
+	 * @return the position after the last descendant of the vertex
+	 */
+	public int exit(int vertex) {
+		return exit[vertex];
+	}
+
+	/**
+	 * @return the vertex at a depth first position
+	 */
+	public int vertexAt(int position) {
+		return order[position];
+	}
+
+	/**
+	 * @return true if the vertex is the ancestor itself or one of its descendants
+	 */
+	public boolean isDescendant(int vertex, int ancestor) {
+		return entry[vertex] >= entry[ancestor] && entry[vertex] < exit[ancestor];
+	}
+
+	/**
+	 * Merges the subtrees of some vertices into disjoint intervals of depth first positions.
+	 *
+	 * @param roots the vertices
+	 * @return the sorted start and end positions of the intervals, alternating
+	 */
+	public int[] intervals(int[] roots) {
+		// sort the roots by their entry
+		Integer[] byEntry = new Integer[roots.length];
+		for (int i = 0; i < roots.length; i++) {
+			byEntry[i] = roots[i];
+		}
+		Arrays.sort(byEntry, (a, b) -> Integer.compare(entry[a], entry[b]));
+
+		int[] merged = new int[2 * roots.length];
+		int count = 0;
+		for (int root : byEntry) {
+			if (count > 0 && entry[root] < merged[count - 1]) {
+				// nested in the previous subtree
+				continue;
+			}
+			merged[count++] = entry[root];
+			merged[count++] = exit[root];
+		}
+		return Arrays.copyOf(merged, count);
+	}
+
+	/**
+	 * @param intervals intervals as returned by {@link #intervals(int[])}
+	 * @param vertex    a vertex
+	 * @return true if the vertex lies in one of the intervals
+	 */
+	public boolean contains(int[] intervals, int vertex) {
+		int position = entry[vertex];
+		// the last interval starting at or before the position
+		int low = 0;
+		int high = intervals.length / 2 - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (intervals[2 * middle] <= position) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return high >= 0 && position < intervals[2 * high + 1];
+	}
+}
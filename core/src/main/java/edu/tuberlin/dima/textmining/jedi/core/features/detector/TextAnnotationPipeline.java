@@ -3,18 +3,31 @@ package edu.tuberlin.dima.textmining.jedi.core.features.detector;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import de.tudarmstadt.ukp.dkpro.core.clearnlp.ClearNlpDependencyParser;
-import de.tudarmstadt.ukp.dkpro.core.stanfordnlp.*;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.resource.ResourceInitializationException;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
 
 /**
  * Text annotation UIMA pipeline.
  */
 public class TextAnnotationPipeline extends AbstractPipeline {
+	private static final Log LOG = LogFactory
+		.getLog(TextAnnotationPipeline.class);
 
 	@Parameter(names = {"-lang"}, description = "Language of input data", required = false)
 	private String language = "en";
@@ -29,6 +42,25 @@ public class TextAnnotationPipeline extends AbstractPipeline {
 		description = "annotateCoreferences using Stanford", required = false)
 	private boolean annotateCoreferences = false;
 
+	@Parameter(names = {"-parallelSentences"},
+		description = "Annotate the sentences of a document in parallel", required = false)
+	private boolean parallelSentences = false;
+
+	@Parameter(names = {"-sentenceThreads"},
+		description = "Number of threads used to annotate sentences in parallel (default: one per core)", required = false)
+	private int sentenceThreads = 0;
+
+	@Parameter(names = {"-dependencies"},
+		description = "The dependency parser, stanford or clearnlp", required = false)
+	private String dependencies = "clearnlp";
+
+	private DependencySource dependencySource;
+
+	/**
+	 * Engines by the layers they produce, created lazily, a pipeline is used by one thread at a time.
+	 */
+	private final Map<Set<AnnotationLayer>, AnalysisEngine> engines = Maps.newHashMap();
+
 	public TextAnnotationPipeline() throws Throwable {
 		this(""); // no options
 	}
@@ -62,81 +94,72 @@ public class TextAnnotationPipeline extends AbstractPipeline {
 			throw new RuntimeException("Error initializing GermanPipeline", e);
 		}
 
-
 		try {
+			dependencySource = DependencySource.valueOf(dependencies.toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown dependency parser " + dependencies + ", use one of " + Arrays.toString(DependencySource.values()), e);
+		}
+
+
+		// the engines are created on first use for the requested layers, see getAnalysisEngine
+		init(
+			null,
+			true,
+			this.language,
+			this.enableReporting,
+			this.reportCSV,
+			false);
+
+	}
 
-			AnalysisEngineDescription parser;
-			parser = createEngineDescription(
-				createEngineDescription(ClearNlpDependencyParser.class,
-					ClearNlpDependencyParser.PARAM_VARIANT, null,
-					ClearNlpDependencyParser.PARAM_PRINT_TAGSET, true),
-				createEngineDescription(StanfordParser.class,
-					StanfordParser.PARAM_MODE, StanfordParser.DependenciesMode.NON_COLLAPSED,
-					StanfordParser.PARAM_WRITE_CONSTITUENT, true,
-					StanfordParser.PARAM_WRITE_DEPENDENCY, false,
-					StanfordParser.PARAM_WRITE_PENN_TREE, false,
-					StanfordParser.PARAM_WRITE_POS, false));
-
-			AnalysisEngineDescription ner;
-			if (language.equals("en")) {
-
-				ner = createEngineDescription(
-					StanfordNamedEntityRecognizer.class,
-					StanfordNamedEntityRecognizer.PARAM_PRINT_TAGSET, false,
-					StanfordNamedEntityRecognizer.PARAM_VARIANT, "muc.7class.distsim.crf");
-			} else {
-
-				ner = createEngineDescription(
-					StanfordNamedEntityRecognizer.class,
-					StanfordNamedEntityRecognizer.PARAM_PRINT_TAGSET, false);
-			}
-
-			AnalysisEngineDescription aggregate;
-			if (annotateCoreferences) {
-				aggregate = createEngineDescription(
-					createEngineDescription(StanfordSegmenter.class),
-//                                createEngineDescription(MatePosTagger.class),
-//                                createEngineDescription(MateLemmatizer.class),
-//                                createEngineDescription(MateParser.class),
-					//        createEngineDescription(ClearNlpPosTagger.class),
-					//createEngineDescription(ClearNlpLemmatizer.class),
-					//createEngineDescription(ClearNlpDependencyParser.class),
-					// createEngineDescription(TreeTaggerChunkerTT4J.class),
-					//createEngineDescription(ExternalParserUIMA.class,
-					//       ExternalParserUIMA.PARAM_PARSER_TYPE, ExternalParserUIMA.TYPE.ENJU,
-					//       ExternalParserUIMA.PARAM_PARSER_LOCATION, parserLocation,
-					//       ExternalParserUIMA.PARAM_MODEL_LOCATION, "none"),
-					createEngineDescription(StanfordLemmatizer.class),
-					createEngineDescription(StanfordPosTagger.class),
-					parser,
-					ner,
-					createEngineDescription(StanfordCoreferenceResolver.class)
-				);
-
-			} else {
-				aggregate = createEngineDescription(
-					createEngineDescription(StanfordSegmenter.class),
-					createEngineDescription(StanfordLemmatizer.class),
-					createEngineDescription(StanfordPosTagger.class),
-					parser
-				);
-
-			}
-
-
-			init(
-				AnalysisEngineFactory.createEngine(
-					createEngineDescription(createEngineDescription(StanfordUIMAAnnotator.class),
-						createEngineDescription(ClearNlpDependencyParser.class))),
-				true,
-				this.language,
-				this.enableReporting,
-				this.reportCSV,
-				false);
-		} catch (ResourceInitializationException e) {
-			throw new IllegalArgumentException(e);
+	/**
+	 * Builds an engine that only runs the annotators needed for the given layers.
+	 * Dependencies are parsed once, either by the Stanford parser or by ClearNLP.
+	 *
+	 * @param layers the layers including their requirements
+	 * @return the engine
+	 * @throws ResourceInitializationException in case of errors
+	 */
+	private AnalysisEngine createEngine(Set<AnnotationLayer> layers) throws ResourceInitializationException {
+		List<AnalysisEngineDescription> components = Lists.newArrayList();
+		components.add(createEngineDescription(StanfordUIMAAnnotator.class,
+			StanfordUIMAAnnotator.PARAM_ANNOTATORS, AnnotationLayer.stanfordAnnotators(layers, dependencySource),
+			StanfordUIMAAnnotator.PARAM_WRITE_DEPENDENCIES, layers.contains(AnnotationLayer.DEPENDENCIES) && dependencySource == DependencySource.STANFORD,
+			StanfordUIMAAnnotator.PARAM_PARALLEL_SENTENCES, parallelSentences,
+			StanfordUIMAAnnotator.PARAM_SENTENCE_THREADS, sentenceThreads));
+
+		if (layers.contains(AnnotationLayer.DEPENDENCIES) && dependencySource == DependencySource.CLEARNLP) {
+			components.add(createEngineDescription(ClearNlpDependencyParser.class));
 		}
 
+		return AnalysisEngineFactory.createEngine(
+			createEngineDescription(components.toArray(new AnalysisEngineDescription[components.size()])));
+	}
+
+	@Override
+	protected AnalysisEngine getAnalysisEngine(Set<AnnotationLayer> layers) throws ResourceInitializationException {
+		Set<AnnotationLayer> required = Sets.immutableEnumSet(AnnotationLayer.withRequirements(layers));
+
+		AnalysisEngine engine = engines.get(required);
+		if (engine == null) {
+			LOG.info("Creating annotation engine for " + required);
+			engine = createEngine(required);
+			engines.put(required, engine);
+		}
+		return engine;
+	}
+
+	@Override
+	public void destroy() {
+		for (AnalysisEngine engine : engines.values()) {
+			engine.destroy();
+		}
+		engines.clear();
+	}
+
+	@Override
+	protected String getFingerprint(Set<AnnotationLayer> layers) {
+		return super.getFingerprint(layers) + ":" + dependencySource;
 	}
 
 }
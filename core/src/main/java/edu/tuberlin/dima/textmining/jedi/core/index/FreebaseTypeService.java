@@ -65,6 +65,25 @@ public class FreebaseTypeService {
 			);
 	}
 
+	/** the types of the default files, a failed load is retried by the next caller */
+	private static final Supplier<FreebaseTypeService> DEFAULTS = Suppliers.memoize(() -> {
+		try {
+			return new FreebaseTypeService();
+		} catch (IOException e) {
+			throw new IllegalStateException("Can't load the default freebase types", e);
+		}
+	});
+
+	/**
+	 * The instance using the default files, loaded once and kept for the lifetime of the JVM.
+	 * It is a plain singleton and never released, unlike the models in {@link edu.tuberlin.dima.textmining.jedi.core.util.SharedResources}.
+	 *
+	 * @return the shared instance
+	 */
+	public static FreebaseTypeService shared() {
+		return DEFAULTS.get();
+	}
+
 	public FreebaseTypeService(URL relationTypes, URL relationHierarchyFile, URL relationInverseFile, URL normalizedTypesFile) throws IOException {
 
 		typeHierarchy = Resources.readLines(relationHierarchyFile, Charsets.UTF_8, new LineProcessor<Map<String, List<String>>>() {
@@ -0,0 +1,552 @@
+package edu.tuberlin.dima.textmining.jedi.core.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import edu.tuberlin.dima.textmining.jedi.core.util.PatternHash;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only pattern database, memory mapped from a single file.
+ * <p>
+ * The patterns are addressed by a minimal perfect hash of their {@link PatternHash#hash(CharSequence)}: the
+ * hashes are spread over buckets and every bucket stores the seed that moves its patterns to free slots (hash and
+ * displace). A lookup is a bucket probe, a slot probe and a comparison with the stored pattern, as a perfect hash
+ * maps unknown patterns to arbitrary slots.
+ * <p>
+ * Every entry holds the pattern in UTF-8, its global count and entropy followed by its (relation id, count) pairs
+ * sorted by relation id. The entries come first in the order they were added, the relation names, the seeds and
+ * the 64 bit offsets of the slots follow. The file is mapped in segments of 1GB, so it may exceed 2GB.
+ */
+public class PatternDictionary {
+
+	private static final int MAGIC = 0x4a504432; // JPD2
+
+	/** bytes of the header: magic, patterns, buckets, relations and the starts of the names, seeds and offsets */
+	private static final int HEADER = 40;
+
+	private static final int SEGMENT_SHIFT = 30;
+
+	private final MappedByteBuffer[] segments;
+
+	private final int segmentShift;
+
+	private final long segmentMask;
+
+	private final int size;
+
+	private final int buckets;
+
+	private final String[] relations;
+
+	private final long seedsStart;
+
+	private final long offsetsStart;
+
+	private PatternDictionary(MappedByteBuffer[] segments, int segmentShift) {
+		this.segments = segments;
+		this.segmentShift = segmentShift;
+		this.segmentMask = (1L << segmentShift) - 1;
+		if (getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("Not a pattern dictionary");
+		}
+		this.size = getInt(4);
+		this.buckets = getInt(8);
+		this.relations = new String[getInt(12)];
+		this.seedsStart = getLong(24);
+		this.offsetsStart = getLong(32);
+
+		long position = getLong(16);
+		for (int i = 0; i < relations.length; i++) {
+			int length = getInt(position);
+			byte[] bytes = new byte[length];
+			for (int j = 0; j < length; j++) {
+				bytes[j] = getByte(position + 4 + j);
+			}
+			relations[i] = new String(bytes, Charsets.UTF_8);
+			position += 4 + length;
+		}
+	}
+
+	/**
+	 * Maps a dictionary written by a {@link Builder}.
+	 *
+	 * @param file the dictionary file
+	 * @return the dictionary
+	 * @throws IOException in case of errors
+	 */
+	public static PatternDictionary open(File file) throws IOException {
+		return open(file, SEGMENT_SHIFT);
+	}
+
+	/**
+	 * @param segmentShift the log2 of the segment size, smaller segments let tests read across their boundaries
+	 */
+	static PatternDictionary open(File file, int segmentShift) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+			 FileChannel channel = randomAccessFile.getChannel()) {
+			long length = channel.size();
+			long segmentSize = 1L << segmentShift;
+			MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((length + segmentSize - 1) >>> segmentShift)];
+			for (int i = 0; i < segments.length; i++) {
+				long start = (long) i << segmentShift;
+				// the mappings stay valid after the channel is closed
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, length - start));
+			}
+			return new PatternDictionary(segments, segmentShift);
+		}
+	}
+
+	/**
+	 * @return the number of patterns
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param pattern the pattern
+	 * @return the entry of the pattern, null if it is unknown
+	 */
+	public Entry get(String pattern) {
+		return get(pattern, PatternHash.hash(pattern));
+	}
+
+	/**
+	 * @param pattern the pattern
+	 * @param hash    the hash of the pattern, e.g. {@link edu.tuberlin.dima.textmining.jedi.core.model.FoundFeature#getPatternHash()}
+	 * @return the entry of the pattern, null if it is unknown
+	 */
+	public Entry get(String pattern, long hash) {
+		if (size == 0) {
+			return null;
+		}
+		int seed = getInt(seedsStart + 4L * bucket(hash, buckets));
+		int slot = seed < 0 ? -seed - 1 : slot(hash, seed, size);
+		long offset = getLong(offsetsStart + 8L * slot);
+
+		if (getLong(offset) != hash) {
+			return null;
+		}
+		int length = getInt(offset + 8);
+		if (!matches(offset + 12, length, pattern)) {
+			return null;
+		}
+		return new Entry(offset + 12 + length);
+	}
+
+	/**
+	 * Compares the stored UTF-8 bytes with the pattern without encoding it first.
+	 */
+	private boolean matches(long position, int length, String pattern) {
+		long end = position + length;
+		for (int i = 0; i < pattern.length(); ) {
+			int c = pattern.codePointAt(i);
+			i += Character.charCount(c);
+			if (Character.isSurrogate((char) c) && c < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+				// unpaired surrogates are written as '?' by the encoder
+				c = '?';
+			}
+
+			int bytes = c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+			if (position + bytes > end) {
+				return false;
+			}
+			if (bytes == 1) {
+				if (getByte(position) != (byte) c) {
+					return false;
+				}
+			} else {
+				// the lead byte carries the length, the continuation bytes 6 bits each
+				int lead = (0xff00 >> bytes) & 0xff;
+				if (getByte(position) != (byte) (lead | (c >> (6 * (bytes - 1))))) {
+					return false;
+				}
+				for (int j = 1; j < bytes; j++) {
+					if (getByte(position + j) != (byte) (0x80 | ((c >> (6 * (bytes - 1 - j))) & 0x3f))) {
+						return false;
+					}
+				}
+			}
+			position += bytes;
+		}
+		return position == end;
+	}
+
+	/**
+	 * The statistics of a pattern, read from the mapped file on access.
+	 */
+	public class Entry {
+
+		private final long offset;
+
+		private Entry(long offset) {
+			this.offset = offset;
+		}
+
+		public int getGlobalCount() {
+			return getInt(offset);
+		}
+
+		public float getEntropy() {
+			return Float.intBitsToFloat(getInt(offset + 4));
+		}
+
+		/**
+		 * @return the number of relations of the pattern
+		 */
+		public int size() {
+			return getInt(offset + 8);
+		}
+
+		public String getRelation(int index) {
+			return relations[getInt(offset + 12 + 8L * index)];
+		}
+
+		public int getCount(int index) {
+			return getInt(offset + 16 + 8L * index);
+		}
+	}
+
+	private byte getByte(long position) {
+		return segments[(int) (position >>> segmentShift)].get((int) (position & segmentMask));
+	}
+
+	private int getInt(long position) {
+		MappedByteBuffer segment = segments[(int) (position >>> segmentShift)];
+		int offset = (int) (position & segmentMask);
+		if (offset <= segment.capacity() - 4) {
+			return segment.getInt(offset);
+		}
+		// the value continues in the next segment
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | (getByte(position + i) & 0xff);
+		}
+		return value;
+	}
+
+	private long getLong(long position) {
+		MappedByteBuffer segment = segments[(int) (position >>> segmentShift)];
+		int offset = (int) (position & segmentMask);
+		if (offset <= segment.capacity() - 8) {
+			return segment.getLong(offset);
+		}
+		return ((long) getInt(position) << 32) | (getInt(position + 4) & 0xffffffffL);
+	}
+
+	private static int bucket(long hash, int buckets) {
+		return (int) Long.remainderUnsigned(mix(hash ^ 0x5851f42d4c957f2dL), buckets);
+	}
+
+	private static int slot(long hash, int seed, int size) {
+		return (int) Long.remainderUnsigned(mix(hash + (seed + 1) * 0x9e3779b97f4a7c15L), size);
+	}
+
+	/** the finalizer of MurmurHash3 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb93f53fe1a85L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * Writes the dictionary file while the patterns are added, only their hashes and offsets are kept in memory
+	 * until {@link #finish()} computes the perfect hash.
+	 * <p>
+	 * A file that was not finished is deleted on {@link #close()}.
+	 */
+	public static class Builder implements Closeable {
+
+		private final File file;
+
+		private final DataOutputStream out;
+
+		private long position = HEADER;
+
+		private final Map<String, Integer> relationIds = Maps.newHashMap();
+
+		private final List<String> relations = Lists.newArrayList();
+
+		private long[] hashes = new long[1024];
+
+		private long[] offsets = new long[1024];
+
+		private int count;
+
+		private boolean finished;
+
+		/**
+		 * @param file the target file, written from the start
+		 * @throws IOException in case of errors
+		 */
+		public Builder(File file) throws IOException {
+			this.file = file;
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			// the header is written last, until then the file is not a dictionary
+			out.write(new byte[HEADER]);
+		}
+
+		/**
+		 * Adds a pattern, later additions of the same pattern are ignored.
+		 *
+		 * @param pattern     the pattern
+		 * @param globalCount the number of observations of the pattern
+		 * @param entropy     the entropy of the relations of the pattern
+		 * @param relations   the relations of the pattern with their counts
+		 * @throws IOException in case of errors
+		 */
+		public void add(String pattern, int globalCount, float entropy, List<PatternIndexer.PatternSearchResult.SubRelation> relations) throws IOException {
+			add(pattern, PatternHash.hash(pattern), globalCount, entropy, relations);
+		}
+
+		void add(String pattern, long hash, int globalCount, float entropy, List<PatternIndexer.PatternSearchResult.SubRelation> relations) throws IOException {
+			long[] pairs = new long[relations.size()];
+			for (int i = 0; i < pairs.length; i++) {
+				PatternIndexer.PatternSearchResult.SubRelation relation = relations.get(i);
+				pairs[i] = ((long) relationId(relation.getRelation()) << 32) | (relation.getCount() & 0xffffffffL);
+			}
+			// sorted by relation id
+			Arrays.sort(pairs);
+
+			if (count == hashes.length) {
+				hashes = Arrays.copyOf(hashes, 2 * count);
+				offsets = Arrays.copyOf(offsets, 2 * count);
+			}
+			hashes[count] = hash;
+			offsets[count] = position;
+			count++;
+
+			byte[] bytes = pattern.getBytes(Charsets.UTF_8);
+			out.writeLong(hash);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			out.writeInt(globalCount);
+			out.writeFloat(entropy);
+			out.writeInt(pairs.length);
+			for (long pair : pairs) {
+				out.writeLong(pair);
+			}
+			position += 8 + 4 + bytes.length + 12 + 8L * pairs.length;
+		}
+
+		private int relationId(String relation) {
+			Integer id = relationIds.get(relation);
+			if (id == null) {
+				id = relations.size();
+				relationIds.put(relation, id);
+				relations.add(relation);
+			}
+			return id;
+		}
+
+		/**
+		 * Computes the perfect hash and completes the dictionary.
+		 *
+		 * @return the number of distinct patterns
+		 * @throws IOException in case of errors
+		 */
+		public int finish() throws IOException {
+			out.flush();
+			int buckets = Math.max(1, count / 2);
+
+			// the patterns grouped by bucket in the order they were added
+			int[] start = new int[buckets + 1];
+			for (int i = 0; i < count; i++) {
+				start[bucket(hashes[i], buckets) + 1]++;
+			}
+			for (int bucket = 0; bucket < buckets; bucket++) {
+				start[bucket + 1] += start[bucket];
+			}
+			int[] members = new int[count];
+			int[] lengths = new int[buckets];
+			for (int i = 0; i < count; i++) {
+				int bucket = bucket(hashes[i], buckets);
+				members[start[bucket] + lengths[bucket]++] = i;
+			}
+
+			int size = 0;
+			try (RandomAccessFile written = new RandomAccessFile(file, "r")) {
+				for (int bucket = 0; bucket < buckets; bucket++) {
+					int kept = 0;
+					for (int k = start[bucket]; k < start[bucket + 1]; k++) {
+						if (!checkDistinct(written, members, start[bucket], start[bucket] + kept, members[k])) {
+							members[start[bucket] + kept++] = members[k];
+						}
+					}
+					lengths[bucket] = kept;
+					size += kept;
+				}
+			}
+
+			int[] seeds = new int[buckets];
+			int[] slots = place(members, start, lengths, size, seeds);
+
+			long relationsStart = position;
+			for (String relation : relations) {
+				byte[] bytes = relation.getBytes(Charsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+				position += 4 + bytes.length;
+			}
+			long seedsStart = position;
+			for (int seed : seeds) {
+				out.writeInt(seed);
+			}
+			long offsetsStart = seedsStart + 4L * buckets;
+			for (int slot = 0; slot < size; slot++) {
+				out.writeLong(offsets[slots[slot]]);
+			}
+			out.close();
+
+			try (RandomAccessFile header = new RandomAccessFile(file, "rw")) {
+				header.writeInt(MAGIC);
+				header.writeInt(size);
+				header.writeInt(buckets);
+				header.writeInt(relations.size());
+				header.writeLong(relationsStart);
+				header.writeLong(seedsStart);
+				header.writeLong(offsetsStart);
+			}
+			finished = true;
+			return size;
+		}
+
+		/**
+		 * Patterns with the same hash always land in the same slot, no seed would separate them.
+		 *
+		 * @param written the file written so far
+		 * @param members the patterns of the bucket, the ones kept so far between from and to
+		 * @param pattern the pattern to check
+		 * @return true if the pattern was added before
+		 */
+		private boolean checkDistinct(RandomAccessFile written, int[] members, int from, int to, int pattern) throws IOException {
+			for (int k = from; k < to; k++) {
+				if (hashes[members[k]] == hashes[pattern]) {
+					byte[] kept = readPattern(written, offsets[members[k]]);
+					byte[] added = readPattern(written, offsets[pattern]);
+					if (Arrays.equals(kept, added)) {
+						return true;
+					}
+					throw new IllegalArgumentException("The patterns " + new String(kept, Charsets.UTF_8) + " and "
+						+ new String(added, Charsets.UTF_8) + " have the same hash");
+				}
+			}
+			return false;
+		}
+
+		private static byte[] readPattern(RandomAccessFile written, long offset) throws IOException {
+			written.seek(offset + 8);
+			byte[] bytes = new byte[written.readInt()];
+			written.readFully(bytes);
+			return bytes;
+		}
+
+		/**
+		 * Finds a seed for every bucket, the largest buckets first while there are many free slots.
+		 * Buckets of a single pattern take any free slot, which is stored as a negative seed.
+		 *
+		 * @return the index of the pattern of every slot
+		 */
+		private int[] place(int[] members, int[] start, int[] lengths, int size, int[] seeds) {
+			int buckets = seeds.length;
+
+			// the buckets by descending length, bucket lengths are small
+			int longest = 0;
+			for (int length : lengths) {
+				longest = Math.max(longest, length);
+			}
+			int[] byLength = new int[longest + 2];
+			for (int length : lengths) {
+				byLength[longest - length + 1]++;
+			}
+			for (int i = 0; i <= longest; i++) {
+				byLength[i + 1] += byLength[i];
+			}
+			int[] order = new int[buckets];
+			for (int bucket = 0; bucket < buckets; bucket++) {
+				order[byLength[longest - lengths[bucket]]++] = bucket;
+			}
+
+			int[] slots = new int[size];
+			Arrays.fill(slots, -1);
+			int free = 0;
+			int[] candidate = new int[longest];
+
+			for (int bucket : order) {
+				int length = lengths[bucket];
+				if (length == 0) {
+					break;
+				}
+
+				if (length == 1) {
+					while (slots[free] >= 0) {
+						free++;
+					}
+					slots[free] = members[start[bucket]];
+					seeds[bucket] = -free - 1;
+					continue;
+				}
+
+				for (int seed = 0; ; seed++) {
+					if (fits(members, start[bucket], length, seed, size, slots, candidate)) {
+						for (int i = 0; i < length; i++) {
+							slots[candidate[i]] = members[start[bucket] + i];
+						}
+						seeds[bucket] = seed;
+						break;
+					}
+				}
+			}
+			return slots;
+		}
+
+		private boolean fits(int[] members, int from, int length, int seed, int size, int[] slots, int[] candidate) {
+			for (int i = 0; i < length; i++) {
+				int slot = slot(hashes[members[from + i]], seed, size);
+				if (slots[slot] >= 0) {
+					return false;
+				}
+				for (int j = 0; j < i; j++) {
+					if (candidate[j] == slot) {
+						return false;
+					}
+				}
+				candidate[i] = slot;
+			}
+			return true;
+		}
+
+		/**
+		 * @return the patterns added so far, including repeated ones
+		 */
+		public int size() {
+			return count;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!finished) {
+				out.close();
+				if (!file.delete()) {
+					throw new IOException("Can't delete the unfinished dictionary " + file);
+				}
+			}
+		}
+	}
+}
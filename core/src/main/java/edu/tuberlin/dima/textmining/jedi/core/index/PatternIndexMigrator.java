@@ -0,0 +1,92 @@
+package edu.tuberlin.dima.textmining.jedi.core.index;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Bits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Converts a pattern index that only stores the relations of a pattern into the doc values layout written by
+ * {@link PatternIndexer#buildIndex(String)}.
+ * <p>
+ * Usage: {@code PatternIndexMigrator <source index> <target index>}, e.g. {@code freepal-index freepal-index-dv}.
+ * The documents are copied in the order of the source index.
+ */
+public class PatternIndexMigrator {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PatternIndexMigrator.class);
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			throw new IllegalArgumentException("Usage: PatternIndexMigrator <source index> <target index>");
+		}
+		migrate(new File(args[0]), new File(args[1]));
+	}
+
+	/**
+	 * @param sourceDirectory an index with stored fields
+	 * @param targetDirectory the directory of the new index, must not contain an index
+	 * @throws IOException in case of errors
+	 */
+	public static void migrate(File sourceDirectory, File targetDirectory) throws IOException {
+
+		if (sourceDirectory.getCanonicalFile().equals(targetDirectory.getCanonicalFile())) {
+			throw new IllegalArgumentException("The index cannot be converted in place: " + sourceDirectory);
+		}
+
+		try (Directory source = MMapDirectory.open(sourceDirectory.toPath());
+			 Directory target = MMapDirectory.open(targetDirectory.toPath());
+			 DirectoryReader reader = DirectoryReader.open(source)) {
+
+			if (PatternIndexer.hasDocValues(reader)) {
+				throw new IllegalArgumentException("The index already uses doc values: " + sourceDirectory);
+			}
+
+			IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer((CharArraySet) null));
+			config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+
+			long counter = 0;
+			try (IndexWriter writer = new IndexWriter(target, config)) {
+				for (LeafReaderContext context : reader.leaves()) {
+					LeafReader leaf = context.reader();
+					Bits liveDocs = leaf.getLiveDocs();
+
+					for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+						if (liveDocs != null && !liveDocs.get(doc)) {
+							continue;
+						}
+						Document d = leaf.document(doc);
+						PatternIndexer.addDocumentToIndex(writer,
+							d.get(PatternIndexer.PATTERN_FIELD),
+							d.get(PatternIndexer.RELATION_FIELD),
+							d.getField(PatternIndexer.COUNT_FIELD).numericValue().intValue(),
+							d.getField(PatternIndexer.GLOBALCOUNT_FIELD).numericValue().intValue(),
+							d.getField(PatternIndexer.ENTROPY_FIELD).numericValue().floatValue());
+
+						counter++;
+						if (counter % 100000 == 0) {
+							LOG.info(String.format("converted %8d", counter));
+						}
+					}
+				}
+
+				// the index is read only from now on
+				writer.forceMerge(1);
+			}
+
+			LOG.info("Converted {} documents from {} to {}", counter, sourceDirectory, targetDirectory);
+		}
+	}
+}
@@ -11,6 +11,7 @@ import com.google.gson.JsonParser;
 import edu.tuberlin.dima.textmining.jedi.core.freebase.FreebaseHelper;
 import edu.tuberlin.dima.textmining.jedi.core.model.FreebaseRelation;
 import edu.tuberlin.dima.textmining.jedi.core.util.CompressionHelper;
+import edu.tuberlin.dima.textmining.jedi.core.util.PatternHash;
 import org.apache.commons.compress.archivers.ArchiveException;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.LineIterator;
@@ -18,13 +19,16 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.util.CharArraySet;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FloatDocValuesField;
 import org.apache.lucene.document.FloatField;
-import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.*;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.annotation.Cacheable;
@@ -32,6 +36,7 @@ import org.springframework.cache.annotation.Cacheable;
 import javax.annotation.Nullable;
 import java.io.*;
 import java.net.URL;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 /**
@@ -42,17 +47,29 @@ public class PatternIndexer {
 	private static final Logger LOG = LoggerFactory.getLogger(PatternIndexer.class);
 
 	// Field Definitions
-	private static final String ENTROPY_FIELD = "entropy";
-	private static final String GLOBALCOUNT_FIELD = "globalcount";
-	private static final String RELATION_FIELD = "relation";
-	private static final String COUNT_FIELD = "count";
-	private static final String PATTERN_FIELD = "pattern";
+	static final String ENTROPY_FIELD = "entropy";
+	static final String GLOBALCOUNT_FIELD = "globalcount";
+	static final String RELATION_FIELD = "relation";
+	static final String COUNT_FIELD = "count";
+	static final String PATTERN_FIELD = "pattern";
+
+	/** the pattern dictionary in the index directory, used instead of the Lucene index if present */
+	static final String DICTIONARY_FILE = "patterns.dict";
+
+	/** the number of relations a search considers per pattern */
+	private static final int MAX_RELATIONS = 200;
 
 	private final Directory index;
+	private final File indexDirectory;
 	private final StandardAnalyzer analyzer;
 
 	private IndexSearcher searcher;
 
+	/** true if the index keeps the relations in doc values, older indexes only store them */
+	private boolean docValues;
+
+	private PatternDictionary dictionary;
+
 	Table<String, String, Integer> additionalPattern = HashBasedTable.create();
 
 	private final JsonParser jsonParser = new JsonParser();
@@ -63,11 +80,7 @@ public class PatternIndexer {
 	 * @throws IOException in case of errors
      */
 	public PatternIndexer() throws IOException {
-		this(true, new File("freepal-index"),
-			Resources.getResource("freepal/relation-types.txt"),
-			Resources.getResource("freepal/typeHierarchy.txt"),
-			Resources.getResource("freepal/inversetypes.txt"),
-			Resources.getResource("freepal/normalizedtypes.map"));
+		this(true, new File("freepal-index"), FreebaseTypeService.shared());
 	}
 
 	public PatternIndexer(boolean initSearch, File indexDirectory, URL relationTypes, URL relationHierarchyFile, URL inverseTypesFile, URL normalizedTypesFile) throws IOException {
@@ -85,12 +98,23 @@ public class PatternIndexer {
 		analyzer = new StandardAnalyzer((CharArraySet) null);
 		//index = new RAMDirectory(new MMapDirectory(new File(indexDirectory)), IOContext.READ);
 		index = MMapDirectory.open(indexDirectory.toPath());
+		this.indexDirectory = indexDirectory;
 
 		this.freebaseTypeService = freebaseTypeService;
 
 		if (initSearch) {
-			IndexReader reader = DirectoryReader.open(index);
-			searcher = new IndexSearcher(reader);
+			File dictionaryFile = new File(indexDirectory, DICTIONARY_FILE);
+			if (dictionaryFile.exists()) {
+				dictionary = PatternDictionary.open(dictionaryFile);
+				LOG.info("Using the pattern dictionary {} with {} pattern", dictionaryFile, dictionary.size());
+			} else {
+				IndexReader reader = DirectoryReader.open(index);
+				searcher = new IndexSearcher(reader);
+				docValues = hasDocValues(reader);
+				if (!docValues) {
+					LOG.info("The index {} has no doc values, convert it with the PatternIndexMigrator", indexDirectory);
+				}
+			}
 		}
 
 		reRanker.put("ns:people.person.nationality", 0.7f);
@@ -181,6 +205,13 @@ public class PatternIndexer {
 
     public void buildIndex(String sourceFile) throws IOException {
 
+		// a dictionary of an earlier source would take precedence over the new index
+		File dictionaryFile = new File(indexDirectory, DICTIONARY_FILE);
+		if (java.nio.file.Files.deleteIfExists(dictionaryFile.toPath())) {
+			LOG.info("Deleted the outdated pattern dictionary {}, rebuild it with buildDictionary", dictionaryFile);
+		}
+		dictionary = null;
+
         // building the index
 		IndexWriterConfig config = new IndexWriterConfig(analyzer);
 		final IndexWriter w = new IndexWriter(index, config);
@@ -228,9 +259,60 @@ public class PatternIndexer {
         LOG.info("Done indexing ...");
         IndexReader reader = DirectoryReader.open(index);
         searcher = new IndexSearcher(reader);
+        docValues = true;
 
     }
 
+	/**
+	 * Builds the pattern dictionary from the same source as {@link #buildIndex(String)}.
+	 * Once it exists in the index directory, searches use it instead of the Lucene index.
+	 *
+	 * @param sourceFile the pattern statistics, one json object per line
+	 * @throws IOException in case of errors
+	 */
+	public void buildDictionary(String sourceFile) throws IOException {
+
+		final Gson gson = new GsonBuilder().create();
+		File dictionaryFile = new File(indexDirectory, DICTIONARY_FILE);
+		// write to a temporary file first, the current dictionary may still be mapped
+		File temporary = File.createTempFile(DICTIONARY_FILE, ".tmp", indexDirectory);
+		int size;
+
+		try (final PatternDictionary.Builder builder = new PatternDictionary.Builder(temporary);
+			 InputStream decompressionStream = CompressionHelper.getDecompressionStream(new FileInputStream(sourceFile))) {
+			CharStreams.readLines(new InputStreamReader(decompressionStream, Charsets.UTF_8), new LineProcessor<Object>() {
+
+				@Override
+				public boolean processLine(String line) throws IOException {
+					final PatternSearchResult element = gson.fromJson(line, PatternSearchResult.class);
+					if (element.feature.startsWith("[X] [Y] [")
+						|| element.feature.startsWith("[X] [Y] ( [")
+						|| element.counts < 3) {
+						// skip meaningless pattern
+						return true;
+					}
+					// the index search only looks at the first hits
+					builder.add(element.feature, element.counts, element.entropy, Lists.newArrayList(Iterables.limit(element.relationCount, MAX_RELATIONS)));
+					if (builder.size() % 10000 == 0) {
+						LOG.info(String.format("added %6d", builder.size()));
+					}
+					return true;
+				}
+
+				@Override
+				public Object getResult() {
+					return null;
+				}
+			});
+			size = builder.finish();
+		}
+
+		java.nio.file.Files.move(temporary.toPath(), dictionaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOG.info("Wrote {} pattern to {}", size, dictionaryFile);
+
+		dictionary = PatternDictionary.open(dictionaryFile);
+	}
+
     public void getListOfRelations(String sourceFile) throws IOException {
         FileInputStream fin = new FileInputStream(sourceFile);
         final Gson gson = new GsonBuilder().create();
@@ -310,6 +392,19 @@ public class PatternIndexer {
 
     @Cacheable("lucene")
     public PatternSearchResult search(String query, float maxEntropy) {
+		return search(query, PatternHash.hash(query), maxEntropy);
+	}
+
+	/**
+	 * Searches a pattern whose hash is already known, the dictionary then does not hash it again.
+	 *
+	 * @param query      the pattern
+	 * @param queryHash  the hash of the pattern, see {@link PatternHash#hash(CharSequence)}
+	 * @param maxEntropy the maximal entropy of the pattern
+	 * @return the relations of the pattern, null if there are none within the entropy
+	 */
+	@Cacheable("lucene")
+	public PatternSearchResult search(String query, long queryHash, float maxEntropy) {
 
 		try {
 
@@ -323,6 +418,7 @@ public class PatternIndexer {
 
 			if (query.equals("[X] name after [Y] [1-npadvmod-0,1-prep-2,2-pobj-3]")) {
 				query = "[X] name after [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]";
+				queryHash = PatternHash.hash(query);
 			}
 
 			PatternSearchResult patternSearchResult = new PatternSearchResult();
@@ -349,45 +445,56 @@ public class PatternIndexer {
 
         }        */
 
-			TermQuery patternQuery = new TermQuery(new Term(PATTERN_FIELD, query));
-
-			BooleanQuery booleanClauses = new BooleanQuery();
-			booleanClauses.add(patternQuery, BooleanClause.Occur.MUST);
-			booleanClauses.add(NumericRangeQuery.newFloatRange(ENTROPY_FIELD, 0f, maxEntropy, true, true), BooleanClause.Occur.MUST);
-			int hitsPerPage = 200;
-
-			// search
-			ScoreDoc[] hits = searcher.search(booleanClauses, hitsPerPage).scoreDocs;
-
-			//System.out.println("Found " + hits.length + " hits.");
-			if (hits.length == 0) return null;
-
-			for (ScoreDoc hit : hits) {
-				int docId = hit.doc;
-				Document d = searcher.doc(docId);
-
-				int count = d.getField(COUNT_FIELD).numericValue().intValue();
-				final int globalcount = d.getField(GLOBALCOUNT_FIELD).numericValue().intValue();
-				float entropy = d.getField(ENTROPY_FIELD).numericValue().floatValue();
-
-				// global count needs to be at least X
-				if (globalcount < 9) break;
-
-				// individual count needs to be at least X
-				if (count <= 3) continue;
-				// demand that feature accounts for at least .1% for that relation
-				//if(count / (float) globalcount < 0.02f) continue;
+			if (dictionary != null) {
+				// a single probe, no documents
+				final PatternDictionary.Entry entry = dictionary.get(query, queryHash);
+				// same as the entropy range of the index query, which has no hit without relations
+				if (entry == null || entry.size() == 0 || !(entry.getEntropy() >= 0f && entry.getEntropy() <= maxEntropy)) return null;
 
-
-				patternSearchResult.counts = globalcount;
-				String subrelation = d.get(RELATION_FIELD);
-
-				patternSearchResult.entropy = entropy;
-
-				count = (int) (Objects.firstNonNull(reRanker.get(subrelation), 1.0f) * count);
-
-				results.add(new PatternSearchResult.SubRelation(subrelation, count));
-				//return d.get("relation");
+				for (int i = 0; i < entry.size(); i++) {
+					if (!addRelation(patternSearchResult, results, entry.getRelation(i), entry.getCount(i), entry.getGlobalCount(), entry.getEntropy())) {
+						break;
+					}
+				}
+			} else {
+				TermQuery patternQuery = new TermQuery(new Term(PATTERN_FIELD, query));
+
+				BooleanQuery booleanClauses = new BooleanQuery();
+				booleanClauses.add(patternQuery, BooleanClause.Occur.MUST);
+				booleanClauses.add(NumericRangeQuery.newFloatRange(ENTROPY_FIELD, 0f, maxEntropy, true, true), BooleanClause.Occur.MUST);
+
+				if (docValues) {
+					// all hits score the same, so the collector sees them in the order of the top hits
+					RelationCollector collector = new RelationCollector();
+					searcher.search(booleanClauses, collector);
+
+					if (collector.size == 0) return null;
+
+					for (int i = 0; i < collector.size; i++) {
+						if (!addRelation(patternSearchResult, results, collector.relations[i], collector.counts[i], collector.globalcounts[i], collector.entropies[i])) {
+							break;
+						}
+					}
+				} else {
+					// search
+					ScoreDoc[] hits = searcher.search(booleanClauses, MAX_RELATIONS).scoreDocs;
+
+					//System.out.println("Found " + hits.length + " hits.");
+					if (hits.length == 0) return null;
+
+					for (ScoreDoc hit : hits) {
+						int docId = hit.doc;
+						Document d = searcher.doc(docId);
+
+						int count = d.getField(COUNT_FIELD).numericValue().intValue();
+						final int globalcount = d.getField(GLOBALCOUNT_FIELD).numericValue().intValue();
+						float entropy = d.getField(ENTROPY_FIELD).numericValue().floatValue();
+
+						if (!addRelation(patternSearchResult, results, d.get(RELATION_FIELD), count, globalcount, entropy)) {
+							break;
+						}
+					}
+				}
 			}
 
 			// sort
@@ -425,21 +532,105 @@ public class PatternIndexer {
 
 	private Map<String, Float> reRanker = Maps.newHashMap();
 
+	/**
+	 * Adds a relation of a pattern to the search result.
+	 *
+	 * @return false if the pattern is too rare and no further relation should be added
+	 */
+	private boolean addRelation(PatternSearchResult patternSearchResult, List<PatternSearchResult.SubRelation> results,
+								String subrelation, int count, int globalcount, float entropy) {
+
+		// global count needs to be at least X
+		if (globalcount < 9) return false;
+
+		// individual count needs to be at least X
+		if (count <= 3) return true;
+		// demand that feature accounts for at least .1% for that relation
+		//if(count / (float) globalcount < 0.02f) continue;
+
+
+		patternSearchResult.counts = globalcount;
+
+		patternSearchResult.entropy = entropy;
+
+		count = (int) (Objects.firstNonNull(reRanker.get(subrelation), 1.0f) * count);
+
+		results.add(new PatternSearchResult.SubRelation(subrelation, count));
+		//return d.get("relation");
+		return true;
+	}
+
 	private static void addDocumentToIndex(IndexWriter w, PatternSearchResult element) throws IOException {
 
 		for (PatternSearchResult.SubRelation subRelation : element.relationCount) {
-			Document doc = new Document();
+			addDocumentToIndex(w, element.feature, subRelation.relation, subRelation.count, element.counts, element.entropy);
+		}
 
-			String relation = subRelation.relation;
+	}
+
+	/**
+	 * Adds a relation of a pattern. Only the pattern and the entropy are indexed, everything the search reads is kept
+	 * in doc values.
+	 */
+	static void addDocumentToIndex(IndexWriter w, String pattern, String relation, int count, int globalcount, float entropy) throws IOException {
+		Document doc = new Document();
+
+		doc.add(new StringField(PATTERN_FIELD, pattern, org.apache.lucene.document.Field.Store.YES));
+		doc.add(new SortedDocValuesField(RELATION_FIELD, new BytesRef(relation)));
+		doc.add(new NumericDocValuesField(COUNT_FIELD, count));
+		doc.add(new NumericDocValuesField(GLOBALCOUNT_FIELD, globalcount));
+		doc.add(new FloatField(ENTROPY_FIELD, entropy, org.apache.lucene.document.Field.Store.NO));
+		doc.add(new FloatDocValuesField(ENTROPY_FIELD, entropy));
+		w.addDocument(doc);
+	}
+
+	static boolean hasDocValues(IndexReader reader) {
+		FieldInfo count = MultiFields.getMergedFieldInfos(reader).fieldInfo(COUNT_FIELD);
+		return count != null && count.getDocValuesType() != DocValuesType.NONE;
+	}
+
+	/**
+	 * Reads the relations of the hits column-wise from the doc values, in the order of the documents.
+	 */
+	private static class RelationCollector extends SimpleCollector {
+
+		final String[] relations = new String[MAX_RELATIONS];
+		final int[] counts = new int[MAX_RELATIONS];
+		final int[] globalcounts = new int[MAX_RELATIONS];
+		final float[] entropies = new float[MAX_RELATIONS];
+		int size;
 
-			doc.add(new StringField(PATTERN_FIELD, element.feature, org.apache.lucene.document.Field.Store.YES));
-			doc.add(new StringField(RELATION_FIELD, relation, org.apache.lucene.document.Field.Store.YES));
-			doc.add(new IntField(COUNT_FIELD, subRelation.count, org.apache.lucene.document.Field.Store.YES));
-			doc.add(new IntField(GLOBALCOUNT_FIELD, element.counts, org.apache.lucene.document.Field.Store.YES));
-			doc.add(new FloatField(ENTROPY_FIELD, element.entropy, org.apache.lucene.document.Field.Store.YES));
-			w.addDocument(doc);
+		private SortedDocValues relation;
+		private NumericDocValues count;
+		private NumericDocValues globalcount;
+		private NumericDocValues entropy;
+
+		@Override
+		protected void doSetNextReader(LeafReaderContext context) throws IOException {
+			LeafReader reader = context.reader();
+			relation = DocValues.getSorted(reader, RELATION_FIELD);
+			count = DocValues.getNumeric(reader, COUNT_FIELD);
+			globalcount = DocValues.getNumeric(reader, GLOBALCOUNT_FIELD);
+			entropy = DocValues.getNumeric(reader, ENTROPY_FIELD);
+		}
+
+		@Override
+		public void collect(int doc) throws IOException {
+			if (size == MAX_RELATIONS) {
+				// the same limit as the top hits of the stored field search
+				throw new CollectionTerminatedException();
+			}
+			relations[size] = relation.get(doc).utf8ToString();
+			counts[size] = (int) count.get(doc);
+			globalcounts[size] = (int) globalcount.get(doc);
+			entropies[size] = Float.intBitsToFloat((int) entropy.get(doc));
+			size++;
 		}
 
+		@Override
+		public boolean needsScores() {
+			return false;
+		}
 	}
 
 	public static class PatternSearchResult {
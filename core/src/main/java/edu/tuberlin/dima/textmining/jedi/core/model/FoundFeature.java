@@ -1,5 +1,6 @@
 package edu.tuberlin.dima.textmining.jedi.core.model;
 
+import edu.tuberlin.dima.textmining.jedi.core.util.PatternHash;
 import org.apache.uima.jcas.tcas.Annotation;
 
 /**
@@ -10,12 +11,21 @@ public class FoundFeature<T> {
     T entity2;
 
     String pattern;
+    long patternHash;
     String relation;
 
     public FoundFeature(T entity1, T entity2, String pattern) {
+        this(entity1, entity2, pattern, PatternHash.hash(pattern));
+    }
+
+    /**
+     * @param patternHash the hash of the pattern, as computed by {@link PatternHash#hash(CharSequence)}
+     */
+    public FoundFeature(T entity1, T entity2, String pattern, long patternHash) {
         this.entity1 = entity1;
         this.entity2 = entity2;
         this.pattern = pattern;
+        this.patternHash = patternHash;
     }
 
 
@@ -49,6 +59,14 @@ public class FoundFeature<T> {
 
 	public void setPattern(String pattern) {
 		this.pattern = pattern;
+		this.patternHash = PatternHash.hash(pattern);
+	}
+
+	/**
+	 * @return the 64 bit hash of the pattern
+	 */
+	public long getPatternHash() {
+		return patternHash;
 	}
 
 	@Override
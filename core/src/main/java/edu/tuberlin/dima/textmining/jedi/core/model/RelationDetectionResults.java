@@ -83,7 +83,8 @@ public class RelationDetectionResults<T> {
 			new FoundFeature<>(
 				transformToString(feature.getEntity1()),
 				transformToString(feature.getEntity2()),
-				feature.getPattern()), null)).collect(Collectors.toList());;
+				feature.getPattern(),
+				feature.getPatternHash()), null)).collect(Collectors.toList());;
 
         return new RelationDetectionResults<>(transformedFeatures, transform, detectorType, graph, stdout, annovis);
 
@@ -1,11 +1,72 @@
 package edu.tuberlin.dima.textmining.jedi.core.util;
 
+import java.util.Arrays;
+
+/**
+ * Levenshtein edit distance.
+ * <p>
+ * If one of the strings has at most 64 chars, the distance is computed bit-parallel (Myers 1999, in the formulation
+ * of Hyyro 2001) with one machine word per column, otherwise with the dynamic programming matrix.
+ */
 public class LevenshteinDistance {
+
+    private static final int WORD_SIZE = 64;
+
+    /** open addressing table of the match masks of the pattern chars, reused per thread */
+    static final class PatternMasks {
+        final char[] chars = new char[2 * WORD_SIZE];
+        final long[] masks = new long[2 * WORD_SIZE];
+        final int[] stamps = new int[2 * WORD_SIZE];
+        int stamp = 0;
+
+        void init(String pattern) {
+            if (++stamp == 0) {
+                // the counter wrapped, older stamps would be taken as current again
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            for (int i = 0; i < pattern.length(); i++) {
+                int slot = slot(pattern.charAt(i));
+                if (stamps[slot] != stamp) {
+                    stamps[slot] = stamp;
+                    chars[slot] = pattern.charAt(i);
+                    masks[slot] = 0;
+                }
+                masks[slot] |= 1L << i;
+            }
+        }
+
+        long mask(char c) {
+            int slot = c & (chars.length - 1);
+            while (stamps[slot] == stamp) {
+                if (chars[slot] == c) {
+                    return masks[slot];
+                }
+                slot = (slot + 1) & (chars.length - 1);
+            }
+            return 0;
+        }
+
+        private int slot(char c) {
+            int slot = c & (chars.length - 1);
+            while (stamps[slot] == stamp && chars[slot] != c) {
+                slot = (slot + 1) & (chars.length - 1);
+            }
+            return slot;
+        }
+    }
+
+    private static final ThreadLocal<PatternMasks> MASKS = ThreadLocal.withInitial(PatternMasks::new);
+
     private static int minimum(int a, int b, int c) {                            
         return Math.min(Math.min(a, b), c);                                      
     }                                                                            
  
     public static int computeLevenshteinDistance(String s0,String s1) {
+        if (Math.min(s0.length(), s1.length()) <= WORD_SIZE) {
+            return bitParallel(s0, s1, Integer.MAX_VALUE);
+        }
+
         int len0 = s0.length() + 1;
         int len1 = s1.length() + 1;
 
@@ -43,5 +104,91 @@ public class LevenshteinDistance {
 
         // the distance is the cost for transforming all letters in both strings
         return cost[len0 - 1];
-    }                                                                            
-}
\ No newline at end of file
+    }
+
+    /**
+     * Computes the distance up to a limit, stopping as soon as the limit can not be met anymore.
+     *
+     * @param s0    the first string
+     * @param s1    the second string
+     * @param limit the largest distance of interest
+     * @return the distance if it is at most the limit, limit + 1 otherwise
+     */
+    public static int computeLevenshteinDistance(String s0, String s1, int limit) {
+        if (Math.abs(s0.length() - s1.length()) > limit) {
+            return limit + 1;
+        }
+        if (Math.min(s0.length(), s1.length()) <= WORD_SIZE) {
+            return Math.min(bitParallel(s0, s1, limit), limit + 1);
+        }
+
+        int[] cost = new int[s0.length() + 1];
+        int[] newcost = new int[s0.length() + 1];
+        for (int i = 0; i < cost.length; i++) cost[i] = i;
+
+        for (int j = 1; j <= s1.length(); j++) {
+            newcost[0] = j;
+            int rowMinimum = j;
+            for (int i = 1; i < cost.length; i++) {
+                int match = (s0.charAt(i - 1) == s1.charAt(j - 1)) ? 0 : 1;
+                newcost[i] = minimum(cost[i - 1] + match, cost[i] + 1, newcost[i - 1] + 1);
+                rowMinimum = Math.min(rowMinimum, newcost[i]);
+            }
+            // the distances never shrink from one row to the next
+            if (rowMinimum > limit) {
+                return limit + 1;
+            }
+            int[] swap = cost; cost = newcost; newcost = swap;
+        }
+        return Math.min(cost[s0.length()], limit + 1);
+    }
+
+    /**
+     * Myers' algorithm, the shorter string is the pattern and must have at most 64 chars.
+     *
+     * @return the distance, or any value above the limit once the limit can not be met anymore
+     */
+    private static int bitParallel(String s0, String s1, int limit) {
+        String pattern = s0.length() <= s1.length() ? s0 : s1;
+        String text = pattern == s0 ? s1 : s0;
+
+        int m = pattern.length();
+        if (m == 0) {
+            return text.length();
+        }
+
+        PatternMasks peq = MASKS.get();
+        peq.init(pattern);
+
+        long last = 1L << (m - 1);
+        long pv = -1L;
+        long mv = 0L;
+        int score = m;
+
+        for (int j = 0; j < text.length(); j++) {
+            long eq = peq.mask(text.charAt(j));
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+
+            if ((ph & last) != 0) {
+                score++;
+            } else if ((mh & last) != 0) {
+                score--;
+            }
+
+            // every remaining char lowers the score by one at most
+            if (score - (text.length() - j - 1) > limit) {
+                return score - (text.length() - j - 1);
+            }
+
+            // the first row grows by one per char of the text
+            ph = (ph << 1) | 1L;
+            mh = mh << 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+        }
+        return score;
+    }
+}
@@ -0,0 +1,216 @@
+package edu.tuberlin.dima.textmining.jedi.core.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.uima.jcas.JCas;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Disk backed cache of annotated documents.
+ * <p>
+ * Entries are addressed by the hash of the pipeline configuration and the document text and hold the CAS in
+ * UIMA's compressed binary form. The least recently used entries are deleted once the cache exceeds its size.
+ * All pipelines using the same directory share one instance, see {@link #forDirectory(File, long)}.
+ */
+public class ParseCache {
+
+	private static final Log LOG = LogFactory.getLog(ParseCache.class);
+
+	private static final String SUFFIX = ".cas";
+
+	private static final Map<File, ParseCache> CACHES = Maps.newHashMap();
+
+	private final File directory;
+
+	private final long maxBytes;
+
+	/**
+	 * Access ordered entries and their size in bytes.
+	 */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long size = 0;
+
+	/**
+	 * Returns the cache for a directory, creating it on first use.
+	 *
+	 * @param directory the cache directory
+	 * @param maxBytes  the maximal size of all entries, only used when the cache is created
+	 * @return the shared cache instance
+	 * @throws IOException if the directory can not be used
+	 */
+	public static synchronized ParseCache forDirectory(File directory, long maxBytes) throws IOException {
+		File canonical = directory.getCanonicalFile();
+		ParseCache cache = CACHES.get(canonical);
+		if (cache == null) {
+			cache = new ParseCache(canonical, maxBytes);
+			CACHES.put(canonical, cache);
+		}
+		return cache;
+	}
+
+	ParseCache(File directory, long maxBytes) throws IOException {
+		Preconditions.checkArgument(maxBytes > 0, "The cache size must be positive");
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create the parse cache directory " + directory);
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+
+		// pick up the entries of earlier runs, oldest first
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if (files != null) {
+			Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+			for (File file : files) {
+				entries.put(file.getName().substring(0, file.getName().length() - SUFFIX.length()), file.length());
+				size += file.length();
+			}
+		}
+		synchronized (this) {
+			evict();
+		}
+		LOG.info("Using parse cache " + directory + " with " + entries.size() + " entries (" + size + " bytes)");
+	}
+
+	/**
+	 * Computes the key of a document.
+	 *
+	 * @param fingerprint describes the pipeline configuration producing the annotations
+	 * @param text        the document text
+	 * @return the cache key
+	 */
+	public static String key(String fingerprint, String text) {
+		return Hashing.sha1().newHasher()
+			.putString(fingerprint, Charsets.UTF_8)
+			.putByte((byte) 0)
+			.putString(text, Charsets.UTF_8)
+			.hash().toString();
+	}
+
+	/**
+	 * Restores a cached document into the given JCas.
+	 *
+	 * @param key  the cache key
+	 * @param jCas the JCas to fill, it is reset before
+	 * @return true if the document was found, false if it is missing or its entry can not be read
+	 */
+	public boolean restore(String key, JCas jCas) {
+		synchronized (this) {
+			// also marks the entry as recently used
+			if (entries.get(key) == null) {
+				return false;
+			}
+		}
+
+		InputStream input;
+		try {
+			input = new BufferedInputStream(new FileInputStream(file(key)));
+		} catch (FileNotFoundException e) {
+			// evicted in the meantime
+			synchronized (this) {
+				remove(key);
+			}
+			return false;
+		}
+
+		try {
+			UIMAXMLConverterHelper.deserializeBinary(input, jCas);
+			return true;
+		} catch (IOException e) {
+			// a corrupt or truncated entry, the document is parsed and stored again
+			LOG.warn("Dropping unreadable parse cache entry " + key, e);
+			jCas.reset();
+			synchronized (this) {
+				remove(key);
+				if (!file(key).delete()) {
+					LOG.warn("Can't delete parse cache entry " + key);
+				}
+			}
+			return false;
+		} finally {
+			IOUtils.closeQuietly(input);
+		}
+	}
+
+	/**
+	 * Stores an annotated document.
+	 *
+	 * @param key  the cache key
+	 * @param jCas the annotated document
+	 * @throws IOException in case of error
+	 */
+	public void store(String key, JCas jCas) throws IOException {
+		// write to a temporary file first, so readers never see partial entries
+		File temporary = File.createTempFile(key, ".tmp", directory);
+		try {
+			OutputStream output = new BufferedOutputStream(new FileOutputStream(temporary));
+			try {
+				UIMAXMLConverterHelper.serializeBinary(jCas, output);
+			} finally {
+				IOUtils.closeQuietly(output);
+			}
+			Files.move(temporary.toPath(), file(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception e) {
+			Files.deleteIfExists(temporary.toPath());
+			throw new IOException("Can't store parse cache entry " + key, e);
+		}
+
+		long length = file(key).length();
+		synchronized (this) {
+			Long previous = entries.put(key, length);
+			size += length - (previous != null ? previous : 0);
+			evict();
+		}
+	}
+
+	/**
+	 * @return the number of cached documents
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+		while (size > maxBytes && iterator.hasNext()) {
+			Map.Entry<String, Long> eldest = iterator.next();
+			iterator.remove();
+			size -= eldest.getValue();
+			if (!file(eldest.getKey()).delete()) {
+				LOG.warn("Can't delete parse cache entry " + eldest.getKey());
+			}
+		}
+	}
+
+	private void remove(String key) {
+		Long length = entries.remove(key);
+		if (length != null) {
+			size -= length;
+		}
+	}
+
+	private File file(String key) {
+		return new File(directory, key + SUFFIX);
+	}
+}
@@ -0,0 +1,154 @@
+package edu.tuberlin.dima.textmining.jedi.core.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams a corpus of pre-parsed documents.
+ * <p>
+ * The corpus is a JSON array of records or a sequence of records (e.g. one per line), optionally gzipped.
+ * Each record holds the serialized CAS, XCAS or Base64 encoded binary, in a configurable field;
+ * plain string records are taken as the serialized CAS itself.
+ * Records are read lazily and deserialized on a worker pool into a fixed set of recycled JCas instances,
+ * so at most one record per worker is held in memory, independent of the size of the corpus.
+ */
+public class ParsedCorpusReader {
+
+	private static final Log LOG = LogFactory.getLog(ParsedCorpusReader.class);
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final JsonFactory jsonFactory = new JsonFactory(MAPPER);
+
+	private final UIMAXMLConverterHelper converterHelper = new UIMAXMLConverterHelper(false);
+
+	private final String casField;
+
+	private final int threads;
+
+	/**
+	 * Receives the deserialized documents.
+	 */
+	public interface Handler {
+
+		/**
+		 * Called concurrently by the worker threads.
+		 * The JCas is reused for other records once the call returns.
+		 *
+		 * @param record the JSON record
+		 * @param jCas   the deserialized document
+		 * @throws Exception in case of error, the record is skipped
+		 */
+		void process(JsonNode record, JCas jCas) throws Exception;
+	}
+
+	/**
+	 * @param casField the field of a record holding the serialized CAS
+	 * @param threads  the number of worker threads, values &lt; 1 use one per available core
+	 */
+	public ParsedCorpusReader(String casField, int threads) {
+		this.casField = Preconditions.checkNotNull(casField);
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Reads the corpus and passes all documents to the handler, returns after the last record is processed.
+	 *
+	 * @param input   the corpus, closed afterwards, may be empty
+	 * @param handler receives the documents
+	 * @return the number of successfully processed records
+	 * @throws IOException          if the corpus can not be read
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public long read(InputStream input, final Handler handler) throws IOException, InterruptedException {
+
+		final BlockingQueue<JCas> available = new ArrayBlockingQueue<>(threads);
+		try {
+			for (int i = 0; i < threads; i++) {
+				available.add(JCasFactory.createJCas());
+			}
+		} catch (UIMAException e) {
+			throw new IllegalStateException("Can't create the JCas instances", e);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+			new ThreadFactoryBuilder().setNameFormat("corpus-reader-%d").setDaemon(true).build());
+
+		final AtomicLong processed = new AtomicLong();
+		long records = 0;
+
+		try (JsonParser parser = jsonFactory.createParser(decompress(input))) {
+
+			JsonToken token = parser.nextToken();
+			boolean array = token == JsonToken.START_ARRAY;
+			if (array) {
+				token = parser.nextToken();
+			}
+
+			while (token != null && token != JsonToken.END_ARRAY) {
+				// waits for a free JCas, which limits the records in flight
+				final JCas jCas = available.take();
+				final JsonNode record = parser.readValueAsTree();
+				final long number = records++;
+
+				executor.execute(() -> {
+					try {
+						JsonNode cas = record.isTextual() ? record : record.get(casField);
+						if (cas == null) {
+							LOG.warn("Record " + number + " has no field " + casField);
+							return;
+						}
+						converterHelper.deserialize(cas.asText(), jCas);
+						handler.process(record, jCas);
+						processed.incrementAndGet();
+					} catch (Exception e) {
+						LOG.error("Can't process record " + number, e);
+					} finally {
+						available.add(jCas);
+					}
+				});
+
+				token = parser.nextToken();
+			}
+		} finally {
+			IOUtils.closeQuietly(input);
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+
+		LOG.info("Processed " + processed.get() + " of " + records + " records");
+		return processed.get();
+	}
+
+	/**
+	 * The compression is detected on the first two bytes, shorter input can only be plain text.
+	 */
+	private static InputStream decompress(InputStream input) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(input);
+		buffered.mark(2);
+		boolean shortInput = buffered.read() < 0 || buffered.read() < 0;
+		buffered.reset();
+		return shortInput ? buffered : CompressionHelper.getDecompressionStream(buffered);
+	}
+}
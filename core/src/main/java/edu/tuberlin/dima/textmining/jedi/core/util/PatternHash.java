@@ -0,0 +1,29 @@
+package edu.tuberlin.dima.textmining.jedi.core.util;
+
+/**
+ * The 64 bit FNV-1a hash of a pattern, shared by the extractors, the found features and the pattern dictionary.
+ */
+public final class PatternHash {
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private PatternHash() {
+	}
+
+	/**
+	 * Computes the 64 bit FNV-1a hash of a pattern over its UTF-16 chars.
+	 *
+	 * @param pattern the pattern
+	 * @return the hash
+	 */
+	public static long hash(CharSequence pattern) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < pattern.length(); i++) {
+			hash ^= pattern.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,157 @@
+package edu.tuberlin.dima.textmining.jedi.core.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * JVM wide registry of immutable resources, like models and type maps.
+ * <p>
+ * A resource is loaded once per key and shared by everyone acquiring the same key.
+ * The registry counts the handles given out and drops a resource once all handles are released.
+ * Shared resources must be thread-safe, or their users need to synchronize on them.
+ * Executors are shut down when they are dropped.
+ */
+public final class SharedResources {
+
+	private static final Log LOG = LogFactory.getLog(SharedResources.class);
+
+	private static final Map<String, Entry<?>> RESOURCES = Maps.newHashMap();
+
+	private static final ExecutorService LOADER = Executors.newCachedThreadPool(
+		new ThreadFactoryBuilder().setNameFormat("resource-loader-%d").setDaemon(true).build());
+
+	private SharedResources() {
+	}
+
+	/**
+	 * A reference to a shared resource.
+	 */
+	public static final class Handle<T> {
+
+		private final String key;
+
+		private final T resource;
+
+		private boolean released = false;
+
+		private Handle(String key, T resource) {
+			this.key = key;
+			this.resource = resource;
+		}
+
+		public T get() {
+			Preconditions.checkState(!released, "The handle of %s has been released", key);
+			return resource;
+		}
+
+		/**
+		 * Gives the reference back, the resource is dropped once no handle references it anymore.
+		 */
+		public void release() {
+			synchronized (RESOURCES) {
+				if (released) {
+					return;
+				}
+				released = true;
+				Entry<?> entry = RESOURCES.get(key);
+				if (entry != null && --entry.references == 0) {
+					RESOURCES.remove(key);
+					if (resource instanceof ExecutorService) {
+						((ExecutorService) resource).shutdown();
+					}
+					LOG.info("Released shared resource " + key);
+				}
+			}
+		}
+	}
+
+	private static final class Entry<T> {
+		final FutureTask<T> loader;
+		int references = 0;
+
+		Entry(Callable<T> loader) {
+			this.loader = new FutureTask<>(loader);
+		}
+	}
+
+	/**
+	 * Returns the resource registered under the key, loading it if needed.
+	 * Concurrent callers of the same key wait for a single load.
+	 *
+	 * @param key    identifies the resource and its configuration
+	 * @param loader loads the resource
+	 * @return a handle, which needs to be released once the resource is not used anymore
+	 * @throws IllegalStateException if the resource can not be loaded
+	 */
+	public static <T> Handle<T> acquire(String key, Callable<T> loader) {
+		return acquireAll(ImmutableMap.of(key, loader)).get(key);
+	}
+
+	/**
+	 * Returns the resources registered under the keys, missing resources are loaded in parallel.
+	 *
+	 * @param loaders the loaders by key
+	 * @return the handles by key, which need to be released once the resources are not used anymore
+	 * @throws IllegalStateException if a resource can not be loaded
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Map<String, Handle<T>> acquireAll(Map<String, ? extends Callable<T>> loaders) {
+		Map<String, Entry<T>> entries = Maps.newLinkedHashMap();
+
+		synchronized (RESOURCES) {
+			for (Map.Entry<String, ? extends Callable<T>> loader : loaders.entrySet()) {
+				Entry<T> entry = (Entry<T>) RESOURCES.get(loader.getKey());
+				if (entry == null) {
+					entry = new Entry<>(loader.getValue());
+					RESOURCES.put(loader.getKey(), entry);
+					LOG.info("Loading shared resource " + loader.getKey());
+					LOADER.execute(entry.loader);
+				}
+				entry.references++;
+				entries.put(loader.getKey(), entry);
+			}
+		}
+
+		ImmutableMap.Builder<String, Handle<T>> handles = ImmutableMap.builder();
+		for (Map.Entry<String, Entry<T>> entry : entries.entrySet()) {
+			try {
+				handles.put(entry.getKey(), new Handle<>(entry.getKey(), entry.getValue().loader.get()));
+			} catch (InterruptedException | ExecutionException e) {
+				// give up all references of this call, a failed load is retried by the next caller
+				synchronized (RESOURCES) {
+					for (Map.Entry<String, Entry<T>> acquired : entries.entrySet()) {
+						Entry<T> current = acquired.getValue();
+						if (--current.references == 0 || current.loader.isDone() && !succeeded(current)) {
+							RESOURCES.remove(acquired.getKey(), current);
+						}
+					}
+				}
+				if (e instanceof InterruptedException) {
+					Thread.currentThread().interrupt();
+				}
+				throw new IllegalStateException("Can't load shared resource " + entry.getKey(), e instanceof ExecutionException ? e.getCause() : e);
+			}
+		}
+		return handles.build();
+	}
+
+	private static boolean succeeded(Entry<?> entry) {
+		try {
+			entry.loader.get();
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package edu.tuberlin.dima.textmining.jedi.core.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the pairs of similar mentions, as decided by {@link StringComparision#determineSimilar(String, String)},
+ * without comparing every pair.
+ * <p>
+ * Similar mentions share a prefix or suffix of at least {@link #shared(int)} characters of the shorter mention, so
+ * every mention is indexed by the hashes of its prefixes and suffixes up to that length. A mention looks up the
+ * others by the prefix and suffix of its own shared length, and only mentions found this way are compared.
+ */
+public class SimilarMentionIndex {
+
+	/** determineSimilar demands 0.85 of the shorter mention for prefix and suffix, so one of them has at least 0.425 */
+	private static final double MIN_SHARED = 0.4;
+
+	private final List<String> mentions;
+
+	/** mentions by the hash of a prefix or suffix, collisions only cost a comparison */
+	private final Map<Long, List<Integer>> blocks = Maps.newHashMap();
+
+	/**
+	 * @param mentions the texts of the mentions
+	 */
+	public SimilarMentionIndex(List<String> mentions) {
+		this.mentions = mentions;
+		for (int i = 0; i < mentions.size(); i++) {
+			String mention = mentions.get(i);
+			// shorter mentions query with shorter lengths, longer ones are never queried
+			int lengths = shared(mention.length());
+			long prefix = 0;
+			long suffix = 0;
+			for (int length = 1; length <= lengths; length++) {
+				prefix = extend(prefix, mention.charAt(length - 1));
+				suffix = extend(suffix, mention.charAt(mention.length() - length));
+				add(prefixKey(prefix), i);
+				add(suffixKey(suffix), i);
+			}
+		}
+	}
+
+	/**
+	 * The number of characters similar mentions share at the start or the end, if the shorter one has the given length.
+	 * <p>
+	 * Either prefix and suffix cover 0.85 of the shorter mention, or they differ from the other mention by a
+	 * Levenshtein distance below 3 and therefore cover all but two of its characters.
+	 *
+	 * @param length the length of the shorter mention
+	 * @return the length of the shared prefix or suffix, 0 for empty mentions
+	 */
+	static int shared(int length) {
+		if (length == 0) {
+			return 0;
+		}
+		return Math.max(1, Math.min((int) Math.ceil(MIN_SHARED * length), (length - 1) / 2));
+	}
+
+	private void add(long key, int mention) {
+		List<Integer> block = blocks.get(key);
+		if (block == null) {
+			block = Lists.newArrayList();
+			blocks.put(key, block);
+		}
+		block.add(mention);
+	}
+
+	/**
+	 * Compares the mentions sharing a blocking key.
+	 *
+	 * @return the pairs of indexes {i, j} with i &lt; j of similar mentions, ordered by i and j
+	 */
+	public List<int[]> findSimilar() {
+		Set<Long> compared = Sets.newHashSet();
+		List<int[]> similar = Lists.newArrayList();
+
+		for (int i = 0; i < mentions.size(); i++) {
+			String mention = mentions.get(i);
+			int shared = shared(mention.length());
+			if (shared == 0) {
+				continue;
+			}
+
+			long prefix = 0;
+			long suffix = 0;
+			for (int length = 1; length <= shared; length++) {
+				prefix = extend(prefix, mention.charAt(length - 1));
+				suffix = extend(suffix, mention.charAt(mention.length() - length));
+			}
+
+			for (long key : new long[]{prefixKey(prefix), suffixKey(suffix)}) {
+				for (int j : blocks.get(key)) {
+					if (j == i || !compared.add(((long) Math.min(i, j) << 32) | Math.max(i, j))) {
+						continue;
+					}
+					int left = Math.min(i, j);
+					int right = Math.max(i, j);
+					if (StringComparision.determineSimilar(mentions.get(left), mentions.get(right))) {
+						similar.add(new int[]{left, right});
+					}
+				}
+			}
+		}
+
+		Collections.sort(similar, (o1, o2) -> o1[0] != o2[0] ? Integer.compare(o1[0], o2[0]) : Integer.compare(o1[1], o2[1]));
+		return similar;
+	}
+
+	/** a polynomial hash, extended by one character */
+	private static long extend(long hash, char character) {
+		return hash * 1000003L + character + 1;
+	}
+
+	private static long prefixKey(long hash) {
+		return hash << 1;
+	}
+
+	private static long suffixKey(long hash) {
+		return (hash << 1) | 1;
+	}
+}
@@ -1,7 +1,5 @@
 package edu.tuberlin.dima.textmining.jedi.core.util;
 
-import org.apache.commons.lang.StringUtils;
-
 /**
  * Simple string comparision based on LevenshteinDistance.
  */
@@ -9,12 +7,26 @@ public class StringComparision {
 
     public static boolean determineSimilar(String left, String right) {
 
-        final String commonPrefix = StringUtils.getCommonPrefix(new String[]{left, right});
-        final String commonSuffix = StringUtils.getCommonPrefix(new String[]{StringUtils.reverse(left), StringUtils.reverse(right)});
+        int commonPrefix = 0;
+        while (commonPrefix < left.length() && commonPrefix < right.length() && left.charAt(commonPrefix) == right.charAt(commonPrefix)) {
+            commonPrefix++;
+        }
+        int commonSuffix = 0;
+        while (commonSuffix < left.length() && commonSuffix < right.length()
+                && left.charAt(left.length() - 1 - commonSuffix) == right.charAt(right.length() - 1 - commonSuffix)) {
+            commonSuffix++;
+        }
 
-        final int commonLength = commonPrefix.length() + commonSuffix.length();
+        final int commonLength = commonPrefix + commonSuffix;
         final double weightedSimilar = Math.sqrt((commonLength / (float) left.length()) * (commonLength / (float) right.length()));
-        int distance = LevenshteinDistance.computeLevenshteinDistance(right, commonPrefix + StringUtils.reverse(commonSuffix));
-        return weightedSimilar >= 0.85 || (distance < 3 && (commonPrefix.length() > 0) && (commonSuffix.length() > 0));
+        if (weightedSimilar >= 0.85) {
+            return true;
+        }
+        if (commonPrefix == 0 || commonSuffix == 0) {
+            return false;
+        }
+        // only distances below 3 are of interest
+        String common = left.substring(0, commonPrefix) + left.substring(left.length() - commonSuffix);
+        return LevenshteinDistance.computeLevenshteinDistance(right, common, 2) < 3;
     }
 }
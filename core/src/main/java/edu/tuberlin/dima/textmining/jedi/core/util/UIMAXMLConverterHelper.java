@@ -1,10 +1,13 @@
 package edu.tuberlin.dima.textmining.jedi.core.util;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.CharMatcher;
+import com.google.common.io.BaseEncoding;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.uima.UIMAException;
+import org.apache.uima.cas.impl.Serialization;
 import org.apache.uima.cas.impl.XCASDeserializer;
 import org.apache.uima.cas.impl.XCASSerializer;
 import org.apache.uima.fit.factory.JCasFactory;
@@ -12,19 +15,28 @@ import org.apache.uima.jcas.JCas;
 import org.apache.uima.util.XMLSerializer;
 import org.xml.sax.SAXException;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.io.StringWriter;
 
 /**
  * XMI Cas serializer / de-serializer Helper.
- *
+ * <p>
+ * Besides XCAS XML, documents can be stored in UIMA's compressed binary form, which is much smaller and faster to read.
+ * The format is detected when reading.
  */
 public class UIMAXMLConverterHelper {
 
     private static final Log LOG = LogFactory.getLog(UIMAXMLConverterHelper.class);
 
+    /** whitespace and the byte order mark, which may precede the XML */
+    private static final CharMatcher LEADING = CharMatcher.WHITESPACE.or(CharMatcher.is('\ufeff'));
+
 
     private final XCASSerializer ser;
     private final boolean formattedOutput;
@@ -60,12 +72,69 @@ public class UIMAXMLConverterHelper {
         return true;
     }
 
+    /**
+     * Writes the CAS in the compressed binary form.
+     *
+     * @param jCas         the document
+     * @param outputStream the target, not closed
+     * @throws IOException in case of errors
+     */
+    public static void serializeBinary(JCas jCas, OutputStream outputStream) throws IOException {
+        try {
+            Serialization.serializeWithCompression(jCas.getCas(), outputStream);
+        } catch (Exception e) {
+            throw new IOException("Can't serialize the CAS", e);
+        }
+    }
+
+    /**
+     * Reads a CAS in one of UIMA's binary forms.
+     *
+     * @param inputStream the serialized document, not closed
+     * @param newElement  the JCas to fill, it is reset before
+     * @throws IOException in case of errors
+     */
+    public static void deserializeBinary(InputStream inputStream, JCas newElement) throws IOException {
+        newElement.reset();
+        try {
+            Serialization.deserializeCAS(newElement.getCas(), inputStream);
+        } catch (Exception e) {
+            throw new IOException("Can't deserialize the CAS", e);
+        }
+    }
+
+    /**
+     * Encodes the compressed binary form as Base64, to embed it in text formats.
+     *
+     * @param jCas the document
+     * @return the Base64 encoded binary CAS
+     * @throws IOException in case of errors
+     */
+    public static String serializeBase64(JCas jCas) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        serializeBinary(jCas, outputStream);
+        return BaseEncoding.base64().encode(outputStream.toByteArray());
+    }
+
+    /**
+     * Reads a CAS in the binary or XCAS form, optionally gzipped.
+     *
+     * @param inputStream the serialized document, closed afterwards
+     * @param newElement  the JCas to fill, it is reset before
+     * @return the filled JCas
+     */
     public JCas deserialize(InputStream inputStream, JCas newElement) throws IOException, UIMAException, InterruptedException, SAXException {
 
         try {
             newElement.reset();
+            PushbackInputStream input = new PushbackInputStream(
+                    CompressionHelper.getDecompressionStream(new BufferedInputStream(inputStream)), 4);
             // deserialize CAS
-            XCASDeserializer.deserialize(inputStream, newElement.getCas());
+            if (isBinary(input)) {
+                deserializeBinary(input, newElement);
+            } else {
+                XCASDeserializer.deserialize(input, newElement.getCas());
+            }
             //XmiCasDeserializer.deserialize(inputStream, newElement.getCas());
             return newElement;
         } finally {
@@ -74,6 +143,25 @@ public class UIMAXMLConverterHelper {
 
     }
 
+    /**
+     * Binary CASes start with the key "UIMA", written in either byte order.
+     */
+    private static boolean isBinary(PushbackInputStream input) throws IOException {
+        byte[] signature = new byte[4];
+        int read = 0;
+        while (read < signature.length) {
+            int count = input.read(signature, read, signature.length - read);
+            if (count < 0) {
+                break;
+            }
+            read += count;
+        }
+        input.unread(signature, 0, read);
+
+        String key = new String(signature, 0, read, Charsets.US_ASCII);
+        return "UIMA".equals(key) || "AMIU".equals(key);
+    }
+
     public static String sanitizeString(String input) {
         // sanitize the content
         // get document text
@@ -105,8 +193,20 @@ public class UIMAXMLConverterHelper {
         }
     }
 
+    /**
+     * Reads a CAS given as XCAS XML or as Base64 encoded binary form.
+     *
+     * @param input      the serialized document
+     * @param newElement the JCas to fill, it is reset before
+     * @return the filled JCas
+     */
     public JCas deserialize(String input, JCas newElement) throws IOException, UIMAException, InterruptedException, SAXException {
-        return deserialize(IOUtils.toInputStream(input, Charsets.UTF_8.name()), newElement);
+        // XML starts with '<' after an optional byte order mark and whitespace
+        String trimmed = LEADING.trimLeadingFrom(input);
+        if (!trimmed.isEmpty() && trimmed.charAt(0) != '<') {
+            return deserialize(new ByteArrayInputStream(BaseEncoding.base64().decode(CharMatcher.WHITESPACE.trimTrailingFrom(trimmed))), newElement);
+        }
+        return deserialize(IOUtils.toInputStream(trimmed, Charsets.UTF_8.name()), newElement);
     }
 
 }
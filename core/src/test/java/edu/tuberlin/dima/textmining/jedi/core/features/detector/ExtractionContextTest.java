@@ -0,0 +1,113 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+
+public class ExtractionContextTest {
+
+	private JCas jCas;
+
+	private List<Sentence> sentences;
+
+	@Before
+	public void setUp() throws Exception {
+		jCas = JCasFactory.createJCas();
+		jCas.setDocumentText("Barack Obama was born in Hawaii . He lives in Berlin .");
+
+		int begin = 0;
+		for (String sentence : new String[]{"Barack Obama was born in Hawaii .", "He lives in Berlin ."}) {
+			new Sentence(jCas, begin, begin + sentence.length()).addToIndexes();
+			for (String token : sentence.split(" ")) {
+				new Token(jCas, begin, begin + token.length()).addToIndexes();
+				begin += token.length() + 1;
+			}
+		}
+		new NamedEntity(jCas, 0, 12).addToIndexes();
+		sentences = Lists.newArrayList(JCasUtil.select(jCas, Sentence.class));
+	}
+
+	@Test
+	public void testSentenceContextAgreesWithTheCas() throws Exception {
+		for (Sentence sentence : sentences) {
+			ExtractionContext context = context(sentence);
+			List<Token> tokens = JCasUtil.selectCovered(Token.class, sentence);
+
+			Assert.assertThat(Lists.newArrayList(context.select(Token.class)), is(tokens));
+			for (Token token : tokens) {
+				for (int count = 1; count <= ExtractionContext.FOLLOWING; count++) {
+					// the last tokens of the first sentence reach into the second
+					Assert.assertThat(context.selectFollowing(Token.class, token, count), is(JCasUtil.selectFollowing(Token.class, token, count)));
+				}
+				for (Token other : tokens) {
+					Assert.assertThat(context.selectBetween(Token.class, token, other), is(JCasUtil.selectBetween(Token.class, token, other)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSelectsWithinSpans() throws Exception {
+		ExtractionContext context = context(sentences.get(0));
+		Annotation span = new Annotation(jCas, 7, 21);
+
+		Assert.assertThat(context.selectCovered(Token.class, span), is(JCasUtil.selectCovered(Token.class, span)));
+		Assert.assertThat(context.selectCovered(Token.class, span).size(), is(3));
+		Annotation within = new Annotation(jCas, 8, 10);
+		Assert.assertThat(context.selectCovering(Token.class, within), is(JCasUtil.selectCovering(Token.class, within)));
+		Assert.assertThat(context.selectCovering(Token.class, within).get(0).getCoveredText(), is("Obama"));
+		Assert.assertThat(context.select(NamedEntity.class).size(), is(1));
+		// the scope itself is not within the scope
+		Assert.assertThat(context.select(Sentence.class).isEmpty(), is(true));
+	}
+
+	@Test
+	public void testSelectsLikeTheCasForSpans() throws Exception {
+		ExtractionContext context = context(sentences.get(0));
+		Token token = JCasUtil.selectCovered(Token.class, sentences.get(0)).get(1);
+		// like JCasUtil, a token covers itself
+		Assert.assertThat(context.selectCovering(Token.class, token), is(JCasUtil.selectCovering(Token.class, token)));
+		Assert.assertThat(context.selectCovering(Token.class, token).contains(token), is(true));
+
+		EntitySpan span = context.newSpan(0, 12);
+		Assert.assertThat(span.getAnnotation() == null, is(true));
+		Assert.assertThat(context.getCoveredText(span), is("Barack Obama"));
+		Annotation annotation = new Annotation(jCas, 0, 12);
+		Assert.assertThat(context.selectCovered(Token.class, span), is(JCasUtil.selectCovered(Token.class, annotation)));
+		Assert.assertThat(context.selectCovering(NamedEntity.class, span), is(JCasUtil.selectCovering(NamedEntity.class, annotation)));
+
+		Assert.assertThat(context.annotate(span).getCoveredText(), is("Barack Obama"));
+		Assert.assertThat(context.annotate(span), is(span.getAnnotation()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsTypesNotRead() throws Exception {
+		context(sentences.get(0)).select(Annotation.class);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsFollowingBeyondWhatWasRead() throws Exception {
+		ExtractionContext context = context(sentences.get(0));
+		context.selectFollowing(Token.class, JCasUtil.selectCovered(Token.class, sentences.get(0)).get(0), ExtractionContext.FOLLOWING + 1);
+	}
+
+	private ExtractionContext context(Sentence sentence) {
+		return new ExtractionContext(jCas, new CompactDependencyGraph(Collections.<Dependency>emptyList()), sentence,
+			ImmutableList.<Class<? extends Annotation>>of(Token.class, Sentence.class, NamedEntity.class));
+	}
+}
@@ -5,10 +5,13 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.ADJ;
 import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.N;
 import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.PR;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import edu.tuberlin.dima.textmining.jedi.core.model.FoundFeature;
 import edu.tuberlin.dima.textmining.jedi.core.util.UIMAXMLConverterHelper;
+import org.apache.uima.UIMAException;
 import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
@@ -18,7 +21,9 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.core.Is.is;
 
@@ -428,6 +433,47 @@ public class FindShortestPathFeatureExtractorTest {
 
 	}
 
+	@Test
+	public void testSentenceModesAgreeWithWholeDocument() throws Exception {
+		JCas cas = uimaxmlConverterHelper.deserialize(Resources.toString(Resources.getResource("sampleCAS/sampleSentenceCAS.xml"), Charsets.UTF_8), JCasFactory.createJCas());
+
+		// without coreferences the sentences are extracted on their own
+		List<String> features = assertModesAgree(cas, FindShortestPathFeatureExtractor::new,
+			"-lemmatize -pickupSimilar -selectionType " + N.class.getName() + " -additionalSelectionType " + PR.class.getName());
+		Assert.assertThat(features.isEmpty(), is(false));
+		// coreferences and collapsed mentions link the sentences, similar mentions create annotations
+		assertModesAgree(cas, FindShortestPathFeatureExtractor::new,
+			"-lemmatize -resolveCoreferences -pickupSimilar -selectionType " + N.class.getName() + " -additionalSelectionType " + PR.class.getName());
+		assertModesAgree(cas, FindShortestPathFeatureExtractor::new,
+			"-lemmatize -resolveCoreferences -collapseMentions -selectionType " + NamedEntity.class.getName());
+		assertModesAgree(cas, FindShortestPathFeatureExtractor::new,
+			"-lemmatize -collapseMentions -selectionType " + N.class.getName());
+		assertModesAgree(cas, AllPairsShortestPathFeatureExtractor::new,
+			"-lemmatize -resolveCoreferences -selectionType " + N.class.getName() + " -additionalSelectionType " + ADJ.class.getName());
+	}
+
+	private interface ExtractorFactory {
+		AbstractShortestPathFeatureExtractor create(String options) throws UIMAException;
+	}
+
+	private static List<String> assertModesAgree(JCas cas, ExtractorFactory factory, String options) throws UIMAException, IOException {
+		List<String> whole = describe(factory.create(options).exec(cas));
+		List<String> streamed = describe(factory.create(options).stream(cas).collect(Collectors.toList()));
+		List<String> parallel = describe(factory.create(options + " -parallel").exec(cas));
+
+		Assert.assertThat(options, streamed, is(whole));
+		Assert.assertThat(options, parallel, is(whole));
+		return whole;
+	}
+
+	private static List<String> describe(List<FoundFeature<Annotation>> features) {
+		List<String> described = Lists.newArrayList();
+		for (FoundFeature<Annotation> feature : features) {
+			described.add(feature.getEntity1().getCoveredText() + " | " + feature.getEntity2().getCoveredText() + " | " + feature.getPattern());
+		}
+		return described;
+	}
+
 	private void assertEntity(FoundFeature<Annotation> toCheck, String entity1, String entity2, String pattern) {
 		Assert.assertThat(toCheck.getEntity1().getCoveredText(), is(entity1));
 		Assert.assertThat(toCheck.getEntity2().getCoveredText(), is(entity2));
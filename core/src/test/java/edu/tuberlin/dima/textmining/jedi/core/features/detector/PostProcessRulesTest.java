@@ -0,0 +1,140 @@
+package edu.tuberlin.dima.textmining.jedi.core.features.detector;
+
+import com.google.common.collect.ImmutableList;
+import edu.tuberlin.dima.textmining.jedi.core.model.FoundFeature;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.core.Is.is;
+
+public class PostProcessRulesTest {
+
+	private static final List<String> PATTERNS = ImmutableList.of(
+		"[X] die at age of 54 in [Y] [1-nsubj-0,1-prep-2,2-pobj-3,3-prep-4,4-pobj-5,5-prep-6,6-pobj-7]",
+		"[X] die at age of 54 in [Y] [1-nsubj-0,1-prep-2,2-pobj-3]",
+		"[X] die on [Y] [1-nsubj-0,1-prep-2,2-pobj-3]",
+		"die on [X] in [Y] [0-prep-1,0-prep-3,1-pobj-2,3-pobj-4]",
+		"[X] die on [X] in [Y] [0-prep-1,0-prep-3,1-pobj-2,3-pobj-4]",
+		"[X] found and lead [Y] [1-nsubj-0,1-cc-2,1-conj-3,3-dobj-4]",
+		"[X] bear in and live [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3,1-conj-4]",
+		"[X] die and bear in [Y] [1-nsubj-0,1-conj-3,3-prep-4,4-pobj-5]",
+		"[X] die, 12 May 1990 in [Y] [1-nsubj-0,1-prep-5,5-pobj-6]",
+		"[X] die on January 5 at [Y] [1-nsubj-0,1-prep-2,2-pobj-3]",
+		"[X] die in [Y] [1-nsubj-0,1-prep-2,2-pobj-3]",
+		"[X] bear 14 September 1944 in [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]",
+		"[X] bear on May 3, 1950 to [Y] [0-appos-1,1-prep-2,2-pobj-3]",
+		"[X] bear  in [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]",
+		"[X] bear in [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]",
+		"[X] live in [Y] [1-nsubj-0,1-prep-2,2-pobj-3]",
+		"[X] September 1944 in [Y] [0-appos-1,1-prep-2,2-pobj-3]",
+		"[X] [Y] [0-appos-1]",
+		"[X] [Y] [0-conj-1]",
+		"");
+
+	private static final List<String> ENTITIES = ImmutableList.of(
+		"Barack Obama", "Berlin", "aged 45", "age of 30", "her age 7", "January", "january", "who", "1990", " years",
+		"years", "-", "\u201c", "", "Age");
+
+	@Test
+	public void testAgreesWithTheFormerHardCodedRules() throws Exception {
+		PostProcessRules rules = PostProcessRules.defaults();
+		JCas jCas = JCasFactory.createJCas();
+
+		for (String pattern : PATTERNS) {
+			for (String entity1 : ENTITIES) {
+				for (String entity2 : ENTITIES) {
+					jCas.reset();
+					jCas.setDocumentText(entity1 + " " + entity2);
+					FoundFeature<Annotation> feature = new FoundFeature<>(
+						new Annotation(jCas, 0, entity1.length()),
+						new Annotation(jCas, entity1.length() + 1, entity1.length() + 1 + entity2.length()),
+						pattern);
+
+					String expected = formerRules(pattern, entity1, entity2);
+					PostProcessRules.Outcome outcome = rules.apply(feature);
+					String actual = outcome == PostProcessRules.Outcome.DROP ? "DROP" : outcome + " " + feature.getPattern();
+
+					Assert.assertThat(pattern + " / " + entity1 + " / " + entity2, actual, is(expected));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRequiredLiterals() throws Exception {
+		Assert.assertThat(PostProcessRules.requiredLiterals("age(d)*( of)* \\d+"), is((List<String>) ImmutableList.of("age", " ")));
+		Assert.assertThat(PostProcessRules.requiredLiterals("\\[X\\] die on [Y]"), is((List<String>) ImmutableList.of("[X] die on ")));
+		Assert.assertThat(PostProcessRules.requiredLiterals("x{0,1}y"), is((List<String>) ImmutableList.of("y")));
+		Assert.assertThat(PostProcessRules.requiredLiterals("a|b"), is((List<String>) ImmutableList.<String>of()));
+		Assert.assertThat(PostProcessRules.requiredLiterals("(?i)abc"), is((List<String>) ImmutableList.<String>of()));
+		Assert.assertThat(PostProcessRules.requiredLiterals(""), is((List<String>) ImmutableList.<String>of()));
+	}
+
+	@Test
+	public void testIndexesRulesByTheirLongestWord() throws Exception {
+		PostProcessRules rules = new PostProcessRules(ImmutableList.of(
+			"drop\tpattern\tregex\t\\[X\\] found and lead \\[Y\\]",
+			"drop\tpattern\tequals\tsomething"));
+		JCas jCas = JCasFactory.createJCas();
+		jCas.setDocumentText("a b");
+
+		// "found" and "lead" are words of the first rule, but only the longest one is indexed
+		Assert.assertThat(rules.apply(feature(jCas, "[X] found and lead [Y] []")), is(PostProcessRules.Outcome.DROP));
+		Assert.assertThat(rules.apply(feature(jCas, "[X] found and led [Y] []")), is(PostProcessRules.Outcome.KEEP));
+		Assert.assertThat(rules.apply(feature(jCas, "something")), is(PostProcessRules.Outcome.DROP));
+		Assert.assertThat(rules.apply(feature(jCas, "something else")), is(PostProcessRules.Outcome.KEEP));
+		Assert.assertThat(rules.apply(feature(jCas, "")), is(PostProcessRules.Outcome.KEEP));
+	}
+
+	private static FoundFeature<Annotation> feature(JCas jCas, String pattern) {
+		return new FoundFeature<>(new Annotation(jCas, 0, 1), new Annotation(jCas, 2, 3), pattern);
+	}
+
+	private static final Pattern RENAMER = Pattern.compile("\\[X\\] die at age of \\d+ in \\[Y\\] \\[1-nsubj-0,1-prep-2,2-pobj-3,3-prep-4,4-pobj-5,5-prep-6,6-pobj-7\\]");
+	private static final Pattern DATE = Pattern.compile("(?i)^(-|\"|\u201c|\u201d|'|\u201e|\u201c|\u2018|\u2019|\u00ab|\u00bb|\u2039|\u203a|\u00a1|\u00bf||who|[\\d]+|year| years|post|life|age|January|February|March|April|May|June|July|August|September|October|November|December)$");
+	private static final Pattern DEATH = Pattern.compile("\\[X] die(,|\\s|on )+(January|February|March|April|May|June|July|August|September|October|November|December){0,1}[\\s\\d]* (in|at) \\[Y\\] \\[.*\\d+-prep-\\d+,\\d+-pobj-\\d+\\]");
+	private static final Pattern BIRTH = Pattern.compile("\\[X\\] bear(,|\\s|on |in )+(January|February|March|April|May|June|July|August|September|October|November|December){0,1}[,\\s\\d]* (to|in|at) \\[Y\\] \\[(\\d)*-(\\w*)-(\\d)*.*\\d+-(\\w+)-\\d+\\]");
+	private static final Pattern CONJUNCTION_AT_THE_END = Pattern.compile("\\[X\\]([\\w\\s]+) (\\w+) \\[Y\\] \\[(.*),\\d+-conj-\\d+\\]");
+	private static final Pattern AGE_OF = Pattern.compile("age(d)*( of)* \\d+");
+
+	/**
+	 * The rules as they were hard-coded in the post processing of the extractors.
+	 *
+	 * @return DROP, or the outcome followed by the resulting pattern
+	 */
+	private static String formerRules(String pattern, String entity1, String entity2) {
+		if (AGE_OF.matcher(entity1).find() || AGE_OF.matcher(entity2).find()) {
+			return "DROP";
+		}
+		if (RENAMER.matcher(pattern).find()) {
+			return "REWRITTEN [X] die in [Y] [1-nsubj-0,1-prep-2,2-pobj-3]";
+		}
+		if (pattern.equals("[X] die on [Y] [1-nsubj-0,1-prep-2,2-pobj-3]")
+			|| pattern.equals("die on [X] in [Y] [0-prep-1,0-prep-3,1-pobj-2,3-pobj-4]")) {
+			return "DROP";
+		}
+		Matcher conjunctionAtTheEnd = CONJUNCTION_AT_THE_END.matcher(pattern);
+		if (conjunctionAtTheEnd.find()) {
+			pattern = conjunctionAtTheEnd.replaceFirst("[X]$1 [Y] [$3]");
+		}
+		if (DATE.matcher(entity1).find() || DATE.matcher(entity2).find()) {
+			return "DROP";
+		}
+		Matcher death = DEATH.matcher(pattern);
+		if (death.find()) {
+			return "REWRITTEN " + death.replaceFirst("[X] die $3 [Y] [1-nsubj-0,1-prep-2,2-pobj-3]");
+		}
+		Matcher birth = BIRTH.matcher(pattern);
+		if (birth.find()) {
+			return "REWRITTEN " + birth.replaceFirst("[X] bear $3 [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]");
+		}
+		return "KEEP " + pattern;
+	}
+}
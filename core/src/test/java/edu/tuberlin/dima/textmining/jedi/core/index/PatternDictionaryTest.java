@@ -0,0 +1,181 @@
+package edu.tuberlin.dima.textmining.jedi.core.index;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+public class PatternDictionaryTest {
+
+	private static final List<PatternIndexer.PatternSearchResult.SubRelation> NO_RELATIONS = Collections.emptyList();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testLookup() throws Exception {
+		File file = folder.newFile();
+		try (PatternDictionary.Builder builder = new PatternDictionary.Builder(file)) {
+			builder.add("[X] base in [Y] [0-rcmod-1,1-prep-2,2-pobj-3]", 120, 0.5f, Lists.newArrayList(
+				new PatternIndexer.PatternSearchResult.SubRelation("ns:organization.organization.headquarters", 80),
+				new PatternIndexer.PatternSearchResult.SubRelation("ns:location.location.containedby", 40)));
+			builder.add("[X] bear in [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]", 50, 0.1f, Lists.newArrayList(
+				new PatternIndexer.PatternSearchResult.SubRelation("ns:people.person.place_of_birth", 30),
+				new PatternIndexer.PatternSearchResult.SubRelation("ns:location.location.containedby", 20)));
+			Assert.assertThat(builder.finish(), is(2));
+		}
+		PatternDictionary dictionary = PatternDictionary.open(file);
+
+		PatternDictionary.Entry entry = dictionary.get("[X] base in [Y] [0-rcmod-1,1-prep-2,2-pobj-3]");
+		Assert.assertThat(entry.getGlobalCount(), is(120));
+		Assert.assertThat(entry.getEntropy(), is(0.5f));
+		Assert.assertThat(entry.size(), is(2));
+		// sorted by relation id, which follows the order the relations were first seen
+		Assert.assertThat(entry.getRelation(0), is("ns:organization.organization.headquarters"));
+		Assert.assertThat(entry.getCount(0), is(80));
+		Assert.assertThat(entry.getRelation(1), is("ns:location.location.containedby"));
+		Assert.assertThat(entry.getCount(1), is(40));
+
+		entry = dictionary.get("[X] bear in [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]");
+		Assert.assertThat(entry.getRelation(0), is("ns:location.location.containedby"));
+		Assert.assertThat(entry.getCount(0), is(20));
+		Assert.assertThat(entry.getRelation(1), is("ns:people.person.place_of_birth"));
+		Assert.assertThat(entry.getCount(1), is(30));
+
+		Assert.assertThat(dictionary.get("[X] die in [Y] [1-nsubj-0,1-prep-2,2-pobj-3]"), is(nullValue()));
+	}
+
+	@Test
+	public void testEmptyDictionary() throws Exception {
+		File file = folder.newFile();
+		try (PatternDictionary.Builder builder = new PatternDictionary.Builder(file)) {
+			Assert.assertThat(builder.finish(), is(0));
+		}
+		PatternDictionary dictionary = PatternDictionary.open(file);
+
+		Assert.assertThat(dictionary.size(), is(0));
+		Assert.assertThat(dictionary.get(""), is(nullValue()));
+		Assert.assertThat(dictionary.get("[X] bear in [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]"), is(nullValue()));
+	}
+
+	@Test
+	public void testEmptyAndNonAsciiPatterns() throws Exception {
+		String[] patterns = {"", "[X] n\u00e9 \u00e0 [Y]", "[X] \u51fa\u751f\u4e8e [Y]", "[X] \ud83d\ude00 [Y]", "[X] \ud800 [Y]"};
+		File file = folder.newFile();
+		try (PatternDictionary.Builder builder = new PatternDictionary.Builder(file)) {
+			for (int i = 0; i < patterns.length; i++) {
+				builder.add(patterns[i], i, 0f, Lists.newArrayList(
+					new PatternIndexer.PatternSearchResult.SubRelation("ns:\u00fcber." + i, i)));
+			}
+			builder.finish();
+		}
+		PatternDictionary dictionary = PatternDictionary.open(file);
+
+		for (int i = 0; i < patterns.length; i++) {
+			Assert.assertThat(patterns[i], dictionary.get(patterns[i]).getGlobalCount(), is(i));
+			Assert.assertThat(dictionary.get(patterns[i]).getRelation(0), is("ns:\u00fcber." + i));
+		}
+		Assert.assertThat(dictionary.get("[X] ne a [Y]"), is(nullValue()));
+	}
+
+	@Test
+	public void testComparesTheStoredPattern() throws Exception {
+		File file = folder.newFile();
+		try (PatternDictionary.Builder builder = new PatternDictionary.Builder(file)) {
+			builder.add("[X] n\u00e9 [Y]", 42L, 1, 0f, NO_RELATIONS);
+			builder.finish();
+		}
+		PatternDictionary dictionary = PatternDictionary.open(file);
+
+		// unknown patterns with the hash of a known one
+		Assert.assertThat(dictionary.get("[X] n\u00e9 [Y]", 42L).getGlobalCount(), is(1));
+		Assert.assertThat(dictionary.get("[X] n\u00e9 [Y]", 43L), is(nullValue()));
+		Assert.assertThat(dictionary.get("[X] n\u00e9 [", 42L), is(nullValue()));
+		Assert.assertThat(dictionary.get("[X] n\u00e9 [Y] ", 42L), is(nullValue()));
+		Assert.assertThat(dictionary.get("[X] ne [Y]", 42L), is(nullValue()));
+		Assert.assertThat(dictionary.get("[X] n\u00e8 [Y]", 42L), is(nullValue()));
+		Assert.assertThat(dictionary.get("", 42L), is(nullValue()));
+	}
+
+	@Test
+	public void testKeepsTheFirstOfRepeatedPatterns() throws Exception {
+		File file = folder.newFile();
+		try (PatternDictionary.Builder builder = new PatternDictionary.Builder(file)) {
+			builder.add("[X] live in [Y]", 10, 0f, NO_RELATIONS);
+			builder.add("[X] die in [Y]", 20, 0f, NO_RELATIONS);
+			builder.add("[X] live in [Y]", 30, 0f, NO_RELATIONS);
+			Assert.assertThat(builder.size(), is(3));
+			Assert.assertThat(builder.finish(), is(2));
+		}
+		PatternDictionary dictionary = PatternDictionary.open(file);
+
+		Assert.assertThat(dictionary.size(), is(2));
+		Assert.assertThat(dictionary.get("[X] live in [Y]").getGlobalCount(), is(10));
+		Assert.assertThat(dictionary.get("[X] die in [Y]").getGlobalCount(), is(20));
+	}
+
+	@Test
+	public void testRejectsDistinctPatternsWithTheSameHash() throws Exception {
+		File file = folder.newFile();
+		try (PatternDictionary.Builder builder = new PatternDictionary.Builder(file)) {
+			builder.add("[X] live in [Y]", 7L, 10, 0f, NO_RELATIONS);
+			builder.add("[X] die in [Y]", 7L, 20, 0f, NO_RELATIONS);
+			builder.finish();
+			Assert.fail("The patterns share a hash");
+		} catch (IllegalArgumentException e) {
+			Assert.assertThat(e.getMessage(), is("The patterns [X] live in [Y] and [X] die in [Y] have the same hash"));
+		}
+		// no partial dictionary is left behind
+		Assert.assertThat(file.exists(), is(false));
+	}
+
+	@Test
+	public void testReadsAcrossSegments() throws Exception {
+		File file = folder.newFile();
+		try (PatternDictionary.Builder builder = new PatternDictionary.Builder(file)) {
+			for (int i = 0; i < 100; i++) {
+				builder.add("[X] pattern " + i + " [Y]", i, i / 10f, Lists.newArrayList(
+					new PatternIndexer.PatternSearchResult.SubRelation("ns:relation" + i % 7, i),
+					new PatternIndexer.PatternSearchResult.SubRelation("ns:relation" + (i + 1) % 7, 1)));
+			}
+			builder.finish();
+		}
+		// segments of 8 bytes, most values span two of them
+		PatternDictionary dictionary = PatternDictionary.open(file, 3);
+
+		for (int i = 0; i < 100; i++) {
+			PatternDictionary.Entry entry = dictionary.get("[X] pattern " + i + " [Y]");
+			Assert.assertThat(entry.getGlobalCount(), is(i));
+			Assert.assertThat(entry.getEntropy(), is(i / 10f));
+			Assert.assertThat(entry.size(), is(2));
+			Assert.assertThat(entry.getCount(i % 7 < (i + 1) % 7 ? 0 : 1), is(i));
+		}
+	}
+
+	@Test
+	public void testAllPatternsAreFound() throws Exception {
+		int patterns = 20000;
+		File file = folder.newFile();
+		try (PatternDictionary.Builder builder = new PatternDictionary.Builder(file)) {
+			for (int i = 0; i < patterns; i++) {
+				builder.add("[X] " + Integer.toString(i, 36) + " [Y] [0-prep-1,1-pobj-2]", i, 1f, NO_RELATIONS);
+			}
+			builder.finish();
+		}
+		PatternDictionary dictionary = PatternDictionary.open(file);
+
+		Assert.assertThat(dictionary.size(), is(patterns));
+		for (int i = 0; i < patterns; i++) {
+			Assert.assertThat(dictionary.get("[X] " + Integer.toString(i, 36) + " [Y] [0-prep-1,1-pobj-2]").getGlobalCount(), is(i));
+			Assert.assertThat(dictionary.get("[X] " + Integer.toString(i, 36) + " [Y] [0-prep-1,1-pobj-3]"), is(nullValue()));
+		}
+	}
+}
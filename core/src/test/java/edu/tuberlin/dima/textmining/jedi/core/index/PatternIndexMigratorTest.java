@@ -0,0 +1,151 @@
+package edu.tuberlin.dima.textmining.jedi.core.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FloatField;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+
+public class PatternIndexMigratorTest {
+
+	private static final List<String> QUERIES = ImmutableList.of(
+		"[X] bear in [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]",
+		"[X] base in [Y] [0-rcmod-1,1-prep-2,2-pobj-3]",
+		"[X] visit [Y] [1-nsubj-0,1-dobj-2]",
+		"[X] of [Y] [0-prep-1,1-pobj-2]",
+		"[X] die in [Y] [1-nsubj-0,1-prep-2,2-pobj-3]");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File source;
+
+	@Before
+	public void setUp() throws Exception {
+		List<PatternIndexer.PatternSearchResult> patterns = Lists.newArrayList(
+			pattern("[X] bear in [Y] [1-nsubjpass-0,1-prep-2,2-pobj-3]", 120, 0.5f,
+				"ns:people.person.place_of_birth", 80, "ns:location.location.containedby", 30, "ns:people.person.places_lived", 3),
+			pattern("[X] base in [Y] [0-rcmod-1,1-prep-2,2-pobj-3]", 60, 2.5f,
+				"ns:organization.organization.headquarters", 40, "ns:location.location.containedby", 20),
+			// too rare to be used by the search
+			pattern("[X] visit [Y] [1-nsubj-0,1-dobj-2]", 8, 0.1f, "ns:travel.travel_destination.tourist_attractions", 8),
+			// skipped when the index is built
+			pattern("[X] [Y] [0-appos-1]", 500, 0.1f, "ns:people.person.nationality", 500));
+
+		// more relations than the search reads
+		PatternIndexer.PatternSearchResult many = pattern("[X] of [Y] [0-prep-1,1-pobj-2]", 100000, 0.9f);
+		for (int i = 0; i < 250; i++) {
+			many.relationCount.add(new PatternIndexer.PatternSearchResult.SubRelation("ns:relation" + i, 10 + i % 17));
+		}
+		patterns.add(many);
+
+		Gson gson = new Gson();
+		List<String> lines = Lists.newArrayList();
+		for (PatternIndexer.PatternSearchResult pattern : patterns) {
+			lines.add(gson.toJson(pattern));
+		}
+		source = folder.newFile("patterns.json");
+		Files.asCharSink(source, Charsets.UTF_8).writeLines(lines);
+	}
+
+	@Test
+	public void testSearchAgreesOnAllLayouts() throws Exception {
+		File docValues = folder.newFolder("doc-values");
+		new PatternIndexer(false, docValues, FreebaseTypeService.shared()).buildIndex(source.getPath());
+
+		File storedFields = folder.newFolder("stored-fields");
+		writeStoredFieldsIndex(storedFields);
+		File migrated = folder.newFolder("migrated");
+		PatternIndexMigrator.migrate(storedFields, migrated);
+		// no Lucene index next to the dictionary, so the search cannot fall back to one
+		File dictionary = folder.newFolder("dictionary");
+		new PatternIndexer(false, dictionary, FreebaseTypeService.shared()).buildDictionary(source.getPath());
+
+		try (Directory directory = MMapDirectory.open(migrated.toPath()); DirectoryReader reader = DirectoryReader.open(directory)) {
+			Assert.assertThat(PatternIndexer.hasDocValues(reader), is(true));
+		}
+
+		PatternIndexer expected = new PatternIndexer(true, storedFields, FreebaseTypeService.shared());
+		List<PatternIndexer> indexers = ImmutableList.of(
+			new PatternIndexer(true, docValues, FreebaseTypeService.shared()),
+			new PatternIndexer(true, migrated, FreebaseTypeService.shared()),
+			new PatternIndexer(true, dictionary, FreebaseTypeService.shared()));
+
+		Assert.assertThat(expected.search(QUERIES.get(0), 1f).getRelationCount().size(), is(2));
+		Assert.assertThat(expected.search(QUERIES.get(3), 1f).getRelationCount().size(), is(200));
+		for (String query : QUERIES) {
+			for (float maxEntropy : new float[]{1f, 3f}) {
+				String result = String.valueOf(expected.search(query, maxEntropy));
+				for (PatternIndexer indexer : indexers) {
+					Assert.assertThat(query + " " + maxEntropy, String.valueOf(indexer.search(query, maxEntropy)), is(result));
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsDocValuesIndexes() throws Exception {
+		File docValues = folder.newFolder("doc-values");
+		new PatternIndexer(false, docValues, FreebaseTypeService.shared()).buildIndex(source.getPath());
+
+		PatternIndexMigrator.migrate(docValues, folder.newFolder("migrated"));
+	}
+
+	/**
+	 * Writes the patterns as the index did before it used doc values, every field stored.
+	 */
+	private void writeStoredFieldsIndex(File directory) throws Exception {
+		Gson gson = new Gson();
+		IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer((CharArraySet) null));
+		try (Directory index = MMapDirectory.open(directory.toPath()); IndexWriter writer = new IndexWriter(index, config)) {
+			for (String line : Files.readLines(source, Charsets.UTF_8)) {
+				PatternIndexer.PatternSearchResult element = gson.fromJson(line, PatternIndexer.PatternSearchResult.class);
+				if (element.feature.startsWith("[X] [Y] [") || element.feature.startsWith("[X] [Y] ( [") || element.counts < 3) {
+					continue;
+				}
+				for (PatternIndexer.PatternSearchResult.SubRelation subRelation : element.relationCount) {
+					Document doc = new Document();
+					doc.add(new StringField(PatternIndexer.PATTERN_FIELD, element.feature, Field.Store.YES));
+					doc.add(new StringField(PatternIndexer.RELATION_FIELD, subRelation.relation, Field.Store.YES));
+					doc.add(new IntField(PatternIndexer.COUNT_FIELD, subRelation.count, Field.Store.YES));
+					doc.add(new IntField(PatternIndexer.GLOBALCOUNT_FIELD, element.counts, Field.Store.YES));
+					doc.add(new FloatField(PatternIndexer.ENTROPY_FIELD, element.entropy, Field.Store.YES));
+					writer.addDocument(doc);
+				}
+			}
+		}
+	}
+
+	private static PatternIndexer.PatternSearchResult pattern(String feature, int counts, float entropy, Object... relations) {
+		PatternIndexer.PatternSearchResult pattern = new PatternIndexer.PatternSearchResult();
+		pattern.feature = feature;
+		pattern.counts = counts;
+		pattern.entropy = entropy;
+		for (int i = 0; i < relations.length; i += 2) {
+			pattern.relationCount.add(new PatternIndexer.PatternSearchResult.SubRelation((String) relations[i], (Integer) relations[i + 1]));
+		}
+		return pattern;
+	}
+}
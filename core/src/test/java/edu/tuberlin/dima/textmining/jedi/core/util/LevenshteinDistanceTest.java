@@ -0,0 +1,118 @@
+package edu.tuberlin.dima.textmining.jedi.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+
+public class LevenshteinDistanceTest {
+
+	@Test
+	public void testDistance() throws Exception {
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("kitten", "sitting"), is(3));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("", "abc"), is(3));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("Obama", "Obama"), is(0));
+	}
+
+	@Test
+	public void testBoundedDistance() throws Exception {
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("kitten", "sitting", 2), is(3));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("kitten", "sitting", 3), is(3));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("kitten", "kitchen sink", 2), is(3));
+	}
+
+	@Test
+	public void testEmptyStrings() throws Exception {
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("", ""), is(0));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("", "", 0), is(0));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("abc", ""), is(3));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("abc", "", 1), is(2));
+	}
+
+	@Test
+	public void testWordSizeBoundary() throws Exception {
+		String a64 = repeat('a', 64);
+		String a65 = repeat('a', 65);
+
+		// 64 chars are the largest pattern for the bit-parallel variant, 65 chars fall back to the matrix
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance(a64, repeat('a', 63) + "b"), is(1));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance(a64, "b" + a64), is(1));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance(a64, a64 + repeat('a', 100)), is(100));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance(a65, repeat('a', 64) + "b"), is(1));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance(a65, "b" + repeat('a', 64)), is(1));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance(repeat('b', 64), a64, 2), is(3));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance(repeat('b', 65), a65, 2), is(3));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("b" + a64, a64 + "b", 2), is(2));
+	}
+
+	@Test
+	public void testCharsSharingASlot() throws Exception {
+		// 'a' and '\u00e1' hash to the same slot of the match masks
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("a\u00e1a", "\u00e1a\u00e1"), is(2));
+		Assert.assertThat(LevenshteinDistance.computeLevenshteinDistance("a\u00e1", "a\u00e1"), is(0));
+	}
+
+	@Test
+	public void testRestartsTheStampWhenItWraps() throws Exception {
+		LevenshteinDistance.PatternMasks masks = new LevenshteinDistance.PatternMasks();
+		masks.init("ab");
+		masks.stamp = -1;
+		masks.init("c");
+		// the entries of "ab" must not count as current once the stamp starts over
+		masks.init("d");
+
+		Assert.assertThat(masks.mask('a'), is(0L));
+		Assert.assertThat(masks.mask('b'), is(0L));
+		Assert.assertThat(masks.mask('c'), is(0L));
+		Assert.assertThat(masks.mask('d'), is(1L));
+	}
+
+	@Test
+	public void testAgreesWithMatrix() throws Exception {
+		Random random = new Random(42);
+		for (int run = 0; run < 2000; run++) {
+			// strings beyond 64 chars use the matrix
+			String s0 = random(random, random.nextInt(run % 10 == 0 ? 100 : 70));
+			String s1 = random(random, random.nextInt(run % 10 == 0 ? 100 : 70));
+			int expected = matrix(s0, s1);
+
+			Assert.assertThat(s0 + " " + s1, LevenshteinDistance.computeLevenshteinDistance(s0, s1), is(expected));
+			Assert.assertThat(s0 + " " + s1, LevenshteinDistance.computeLevenshteinDistance(s0, s1, 2), is(Math.min(expected, 3)));
+		}
+	}
+
+	private static String random(Random random, int length) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			text.append((char) ('a' + random.nextInt(3)));
+		}
+		return text.toString();
+	}
+
+	private static String repeat(char c, int length) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			text.append(c);
+		}
+		return text.toString();
+	}
+
+	private static int matrix(String s0, String s1) {
+		int[][] distance = new int[s0.length() + 1][s1.length() + 1];
+		for (int i = 0; i <= s0.length(); i++) {
+			distance[i][0] = i;
+		}
+		for (int j = 0; j <= s1.length(); j++) {
+			distance[0][j] = j;
+		}
+		for (int i = 1; i <= s0.length(); i++) {
+			for (int j = 1; j <= s1.length(); j++) {
+				int match = s0.charAt(i - 1) == s1.charAt(j - 1) ? 0 : 1;
+				distance[i][j] = Math.min(Math.min(distance[i - 1][j] + 1, distance[i][j - 1] + 1), distance[i - 1][j - 1] + match);
+			}
+		}
+		return distance[s0.length()][s1.length()];
+	}
+}
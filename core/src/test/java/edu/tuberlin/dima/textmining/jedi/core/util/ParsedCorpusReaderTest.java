@@ -0,0 +1,90 @@
+package edu.tuberlin.dima.textmining.jedi.core.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+
+public class ParsedCorpusReaderTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final Map<String, String> DOCUMENTS = ImmutableMap.of(
+		"1", "Barack Obama was born in Hawaii.",
+		"2", "Angela Merkel lives in Berlin.",
+		"3", "Paris is the capital of France.");
+
+	@Test
+	public void testReadsGzippedRecords() throws Exception {
+		ByteArrayOutputStream corpus = new ByteArrayOutputStream();
+		try (GZIPOutputStream output = new GZIPOutputStream(corpus)) {
+			for (Map.Entry<String, String> document : DOCUMENTS.entrySet()) {
+				output.write(MAPPER.writeValueAsBytes(record(document.getKey(), document.getValue())));
+				output.write('\n');
+			}
+		}
+
+		ConcurrentMap<String, String> read = Maps.newConcurrentMap();
+		long processed = new ParsedCorpusReader("cas", 2).read(new ByteArrayInputStream(corpus.toByteArray()),
+			(record, jCas) -> read.put(record.get("id").asText(), jCas.getDocumentText() + " " + JCasUtil.select(jCas, Token.class).size()));
+
+		Assert.assertThat(processed, is(3L));
+		for (Map.Entry<String, String> document : DOCUMENTS.entrySet()) {
+			Assert.assertThat(read.get(document.getKey()), is(document.getValue() + " 2"));
+		}
+	}
+
+	@Test
+	public void testReadsArray() throws Exception {
+		ArrayNode records = MAPPER.createArrayNode();
+		for (Map.Entry<String, String> document : DOCUMENTS.entrySet()) {
+			records.add(record(document.getKey(), document.getValue()));
+		}
+
+		ConcurrentMap<String, String> read = Maps.newConcurrentMap();
+		long processed = new ParsedCorpusReader("cas", 1).read(new ByteArrayInputStream(MAPPER.writeValueAsBytes(records)),
+			(record, jCas) -> read.put(record.get("id").asText(), jCas.getDocumentText()));
+
+		Assert.assertThat(processed, is(3L));
+		Assert.assertThat(read, is((Map<String, String>) DOCUMENTS));
+	}
+
+	@Test
+	public void testReadsEmptyInput() throws Exception {
+		ParsedCorpusReader reader = new ParsedCorpusReader("cas", 1);
+
+		Assert.assertThat(reader.read(new ByteArrayInputStream(new byte[0]), (record, jCas) -> Assert.fail()), is(0L));
+		Assert.assertThat(reader.read(new ByteArrayInputStream("\n".getBytes(Charsets.UTF_8)), (record, jCas) -> Assert.fail()), is(0L));
+	}
+
+	/**
+	 * @return a record with the binary CAS of the text, annotated with its first and last token
+	 */
+	private static ObjectNode record(String id, String text) throws Exception {
+		JCas jCas = JCasFactory.createJCas();
+		jCas.setDocumentText(text);
+		new Token(jCas, 0, text.indexOf(' ')).addToIndexes();
+		new Token(jCas, text.length() - 1, text.length()).addToIndexes();
+
+		ObjectNode record = MAPPER.createObjectNode();
+		record.put("id", id);
+		record.put("cas", UIMAXMLConverterHelper.serializeBase64(jCas));
+		return record;
+	}
+}
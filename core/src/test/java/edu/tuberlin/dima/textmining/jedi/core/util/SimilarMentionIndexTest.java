@@ -0,0 +1,82 @@
+package edu.tuberlin.dima.textmining.jedi.core.util;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+
+public class SimilarMentionIndexTest {
+
+	@Test
+	public void testFindsSimilarMentions() throws Exception {
+		List<String> mentions = Lists.newArrayList("Barack Obama", "Obama", "Barack H. Obama", "Michelle Obama", "Chicago", "Barack Obama");
+
+		Assert.assertThat(pairs(new SimilarMentionIndex(mentions).findSimilar()), is(bruteForce(mentions)));
+	}
+
+	@Test
+	public void testSkipsEmptyMentions() throws Exception {
+		List<String> mentions = Lists.newArrayList("", "a", "", "a");
+
+		Assert.assertThat(pairs(new SimilarMentionIndex(mentions).findSimilar()), is((List<String>) Lists.newArrayList("1-3")));
+		Assert.assertThat(pairs(new SimilarMentionIndex(mentions).findSimilar()), is(bruteForce(mentions)));
+	}
+
+	@Test
+	public void testFindsShortMentions() throws Exception {
+		List<String> mentions = Lists.newArrayList("a", "b", "ab", "ba", "abc", "abd", "xbc", "abcd");
+
+		Assert.assertThat(pairs(new SimilarMentionIndex(mentions).findSimilar()), is((List<String>) Lists.newArrayList("4-7", "5-7")));
+		Assert.assertThat(pairs(new SimilarMentionIndex(mentions).findSimilar()), is(bruteForce(mentions)));
+	}
+
+	@Test
+	public void testFindsMentionsDifferingInTheMiddle() throws Exception {
+		// only the edit distance makes these similar, they share less than 0.85 at the start and the end
+		List<String> mentions = Lists.newArrayList("John Smith", "Jon Smith", "Jane Smith", "John Smyth");
+
+		Assert.assertThat(pairs(new SimilarMentionIndex(mentions).findSimilar()), is((List<String>) Lists.newArrayList("0-1", "0-3")));
+		Assert.assertThat(pairs(new SimilarMentionIndex(mentions).findSimilar()), is(bruteForce(mentions)));
+	}
+
+	@Test
+	public void testFindsMentionsSharingTheFirstCharacter() throws Exception {
+		List<String> mentions = Lists.newArrayList("Barack Obama", "Bill Clinton", "Berlin", "Boston", "Brooklyn");
+
+		Assert.assertThat(pairs(new SimilarMentionIndex(mentions).findSimilar()), is((List<String>) Lists.newArrayList("1-3")));
+		Assert.assertThat(pairs(new SimilarMentionIndex(mentions).findSimilar()), is(bruteForce(mentions)));
+	}
+
+	@Test
+	public void testSharedLength() throws Exception {
+		Assert.assertThat(SimilarMentionIndex.shared(0), is(0));
+		Assert.assertThat(SimilarMentionIndex.shared(1), is(1));
+		Assert.assertThat(SimilarMentionIndex.shared(2), is(1));
+		Assert.assertThat(SimilarMentionIndex.shared(5), is(2));
+		Assert.assertThat(SimilarMentionIndex.shared(10), is(4));
+		Assert.assertThat(SimilarMentionIndex.shared(100), is(40));
+	}
+
+	private static List<String> bruteForce(List<String> mentions) {
+		List<String> similar = Lists.newArrayList();
+		for (int i = 0; i < mentions.size(); i++) {
+			for (int j = i + 1; j < mentions.size(); j++) {
+				if (!mentions.get(i).isEmpty() && !mentions.get(j).isEmpty() && StringComparision.determineSimilar(mentions.get(i), mentions.get(j))) {
+					similar.add(i + "-" + j);
+				}
+			}
+		}
+		return similar;
+	}
+
+	private static List<String> pairs(List<int[]> similar) {
+		List<String> pairs = Lists.newArrayList();
+		for (int[] pair : similar) {
+			pairs.add(pair[0] + "-" + pair[1]);
+		}
+		return pairs;
+	}
+}
@@ -2,22 +2,32 @@ package edu.tuberlin.dima.textmining.jedi.core.util;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.net.URL;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.collection.IsEmptyCollection.empty;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.number.OrderingComparison.lessThan;
 
 public class UIMAXMLConverterHelperTest {
 
@@ -55,4 +65,83 @@ public class UIMAXMLConverterHelperTest {
 		Assert.assertThat(namedEntities, is(not(empty())));
 	}
 
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+
+        converterHelper.deserialize(Resources.toString(Resources.getResource("sampleCAS/sonofcas.xml"), Charsets.UTF_8), testCas);
+
+        JCas binaryCas = JCasFactory.createJCas();
+        converterHelper.deserialize(UIMAXMLConverterHelper.serializeBase64(testCas), binaryCas);
+
+        Assert.assertThat(binaryCas.getDocumentText(), is(testCas.getDocumentText()));
+        Assert.assertThat(describe(binaryCas), is(describe(testCas)));
+    }
+
+    @Test
+    public void testXMLWithByteOrderMark() throws Exception {
+
+        String xml = Resources.toString(Resources.getResource("sampleCAS/sonofcas.xml"), Charsets.UTF_8);
+        converterHelper.deserialize(xml, testCas);
+
+        JCas markedCas = JCasFactory.createJCas();
+        converterHelper.deserialize("\ufeff" + xml, markedCas);
+        Assert.assertThat(describe(markedCas), is(describe(testCas)));
+
+        converterHelper.deserialize("\ufeff \n" + UIMAXMLConverterHelper.serializeBase64(testCas), markedCas);
+        Assert.assertThat(describe(markedCas), is(describe(testCas)));
+    }
+
+    /**
+     * @return type and offsets of all annotations, sorted as annotations with equal offsets may be indexed in any order
+     */
+    private static List<String> describe(JCas jCas) {
+        List<String> annotations = Lists.newArrayList();
+        for (Annotation annotation : JCasUtil.select(jCas, Annotation.class)) {
+            annotations.add(annotation.getType().getName() + " " + annotation.getBegin() + " " + annotation.getEnd());
+        }
+        Collections.sort(annotations);
+        return annotations;
+    }
+
+    /**
+     * Compares the size and the round trip time of XCAS and the compressed binary form.
+     * Timings depend on the machine, so the benchmark is run by hand.
+     */
+    @Ignore("benchmark")
+    @Test
+    public void benchmarkBinaryAgainstXCAS() throws Exception {
+        int rounds = 50;
+
+        for (String sample : new String[]{"sampleCAS/websitesamplecas.xml", "sampleCAS/sonofcas.xml", "sampleCAS/sampleSentenceCAS.xml"}) {
+            converterHelper.deserialize(Resources.toString(Resources.getResource(sample), Charsets.UTF_8), testCas);
+            JCas target = JCasFactory.createJCas();
+
+            ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+
+            Stopwatch xcasTimer = new Stopwatch().start();
+            for (int i = 0; i < rounds; i++) {
+                xml.reset();
+                converterHelper.serialize(testCas, xml);
+                converterHelper.deserialize(new ByteArrayInputStream(xml.toByteArray()), target);
+            }
+            xcasTimer.stop();
+
+            Stopwatch binaryTimer = new Stopwatch().start();
+            for (int i = 0; i < rounds; i++) {
+                binary.reset();
+                UIMAXMLConverterHelper.serializeBinary(testCas, binary);
+                converterHelper.deserialize(new ByteArrayInputStream(binary.toByteArray()), target);
+            }
+            binaryTimer.stop();
+
+            System.out.println(String.format("%s: XCAS %d bytes %d ms, binary %d bytes %d ms (%d round trips)",
+                sample, xml.size(), xcasTimer.elapsed(TimeUnit.MILLISECONDS),
+                binary.size(), binaryTimer.elapsed(TimeUnit.MILLISECONDS), rounds));
+
+            Assert.assertThat(target.getDocumentText(), is(testCas.getDocumentText()));
+            Assert.assertThat(binary.size(), is(lessThan(xml.size())));
+        }
+    }
+
 }
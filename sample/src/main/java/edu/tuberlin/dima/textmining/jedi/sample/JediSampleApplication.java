@@ -7,7 +7,6 @@ import edu.tuberlin.dima.textmining.jedi.core.features.detector.AbstractShortest
 import edu.tuberlin.dima.textmining.jedi.core.features.detector.AllPairsShortestPathFeatureExtractor;
 import edu.tuberlin.dima.textmining.jedi.core.features.detector.TextAnnotationPipeline;
 import edu.tuberlin.dima.textmining.jedi.core.model.RelationDetectionResults;
-import org.apache.uima.jcas.tcas.Annotation;
 
 /**
  * Sample Application.
@@ -36,7 +35,7 @@ public class JediSampleApplication {
 		String sentence = "Bill Gothard received his B.A. in Biblical Studies from Wheaton College in 1957.";
 
 		// execute relation detection
-		RelationDetectionResults<Annotation> relations = jediService.detectRelations(sentence);
+		RelationDetectionResults<String> relations = jediService.detectRelations(sentence);
 
 		System.out.println("\n ------------   Input Sentence   ------------ \n");
 		System.out.println(sentence);
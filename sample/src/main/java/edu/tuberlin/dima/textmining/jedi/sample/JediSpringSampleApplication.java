@@ -3,7 +3,6 @@ package edu.tuberlin.dima.textmining.jedi.sample;
 import edu.tuberlin.dima.textmining.jedi.core.config.DetectorService;
 import edu.tuberlin.dima.textmining.jedi.core.features.detector.DetectorType;
 import edu.tuberlin.dima.textmining.jedi.core.model.RelationDetectionResults;
-import org.apache.uima.jcas.tcas.Annotation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
@@ -29,7 +28,7 @@ public class JediSpringSampleApplication implements CommandLineRunner {
 
 		String sentence = "Bill Gothard received his B.A. in Biblical Studies from Wheaton College in 1957.";
 
-		final RelationDetectionResults<Annotation> relations = detectorService.detectRelations(sentence, DetectorType.ALLPairs, true);
+		final RelationDetectionResults<String> relations = detectorService.detectRelations(sentence, DetectorType.ALLPairs, true);
 
 		System.out.println("\n ------------   Input Sentence   ------------ \n");
 		System.out.println(sentence);